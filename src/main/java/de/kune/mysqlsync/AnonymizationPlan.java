@@ -0,0 +1,137 @@
+package de.kune.mysqlsync;
+
+import de.kune.mysqlsync.anonymizer.FieldAnonymizer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The anonymizers of the columns of one table, resolved once from the anonymizer patterns. The columns are indexed in
+ * the order they are selected, so anonymizing a column of a {@link DatabaseUtil.Row} is a single array read.
+ */
+final class AnonymizationPlan {
+
+    private final String table;
+    private final String[] columns;
+    private final FieldAnonymizer[] anonymizers;
+    private final Pattern[] patterns;
+    private final int[] anonymizedColumns;
+    private final Map<String, FieldAnonymizer> anonymizersByColumn = new HashMap<>();
+    private volatile DatabaseUtil.Row verifiedRow;
+
+    private AnonymizationPlan(String table, String[] columns, FieldAnonymizer[] anonymizers, Pattern[] patterns) {
+        this.table = table;
+        this.columns = columns;
+        this.anonymizers = anonymizers;
+        this.patterns = patterns;
+        int count = 0;
+        for (int i = 0; i < columns.length; i++) {
+            if (anonymizers[i] != null) {
+                anonymizersByColumn.put(columns[i], anonymizers[i]);
+                count++;
+            }
+        }
+        this.anonymizedColumns = new int[count];
+        for (int i = 0, j = 0; i < columns.length; i++) {
+            if (anonymizers[i] != null) {
+                anonymizedColumns[j++] = i;
+            }
+        }
+    }
+
+    /**
+     * Resolves the anonymizer of each column, the first pattern matching <code>table.column</code> wins.
+     *
+     * @param columns the columns in the order they are selected
+     */
+    static AnonymizationPlan create(String table, Collection<String> columns, Map<Pattern, FieldAnonymizer> anonymizerMap) {
+        String[] names = columns.toArray(new String[0]);
+        FieldAnonymizer[] anonymizers = new FieldAnonymizer[names.length];
+        Pattern[] patterns = new Pattern[names.length];
+        for (int i = 0; i < names.length; i++) {
+            String candidate = table + "." + names[i];
+            for (Map.Entry<Pattern, FieldAnonymizer> e : anonymizerMap.entrySet()) {
+                if (e.getKey().matcher(candidate).matches()) {
+                    anonymizers[i] = e.getValue();
+                    patterns[i] = e.getKey();
+                    break;
+                }
+            }
+        }
+        return new AnonymizationPlan(table, names, anonymizers, patterns);
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * @return true if the columns of the row are in the order of the plan, so anonymizers can be looked up by index
+     */
+    boolean isIndexedLike(DatabaseUtil.Row row) {
+        DatabaseUtil.Row verified = verifiedRow;
+        if (row == verified || verified != null && row.hasSameColumns(verified)) {
+            return true;
+        }
+        if (row.getColumnCount() != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].equals(row.getColumnName(i))) {
+                return false;
+            }
+        }
+        // rows are reused for all rows of a result set and copies share their columns, so the check is done once per result set
+        verifiedRow = row;
+        return true;
+    }
+
+    int getColumnCount() {
+        return columns.length;
+    }
+
+    boolean isEmpty() {
+        return anonymizedColumns.length == 0;
+    }
+
+    /**
+     * @return the anonymizer of the column at the given position or null
+     */
+    FieldAnonymizer get(int index) {
+        return anonymizers[index];
+    }
+
+    /**
+     * @return the anonymizer of the named column or null
+     */
+    FieldAnonymizer get(String column) {
+        return anonymizersByColumn.get(column);
+    }
+
+    /**
+     * @return the positions of the anonymized columns
+     */
+    int[] getAnonymizedColumns() {
+        return anonymizedColumns;
+    }
+
+    Object anonymize(String column, Object value, Map<String, Object> row) {
+        FieldAnonymizer anonymizer = anonymizersByColumn.get(column);
+        return anonymizer == null ? value : anonymizer.anonymize(column, value, row);
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return table + ": no anonymized columns";
+        }
+        StringBuilder result = new StringBuilder(table).append(':');
+        for (int i : anonymizedColumns) {
+            result.append("\n  ").append(columns[i]).append(" <- ").append(FieldAnonymizer.nameOf(anonymizers[i]))
+                    .append(" (").append(patterns[i]).append(')');
+        }
+        return result.toString();
+    }
+}
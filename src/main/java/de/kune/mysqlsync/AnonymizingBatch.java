@@ -0,0 +1,94 @@
+package de.kune.mysqlsync;
+
+import de.kune.mysqlsync.anonymizer.FieldAnonymizer;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Collects rows of a result set into batches and anonymizes them column by column, calling
+ * {@link FieldAnonymizer#anonymizeColumn(String, Object[], Map[], int)} once per anonymized column of a batch. A batch is
+ * passed on when it is full and with the last row of a result set, so statements still end with their result set.
+ * Rows not in the column order of the plan are passed on one by one, to be anonymized by the consumer.
+ */
+final class AnonymizingBatch implements DatabaseUtil.RowConsumer {
+
+    @FunctionalInterface
+    interface Consumer {
+
+        /**
+         * @param anonymized the anonymized values by column index or null if the row is not anonymized yet
+         */
+        void accept(Map<String, Object> row, Object[] anonymized, DatabaseUtil.ResultContext context) throws SQLException;
+    }
+
+    private final AnonymizationPlan plan;
+    private final Consumer consumer;
+    private final DatabaseUtil.Row[] rows;
+    private final DatabaseUtil.ResultContext[] contexts;
+    private final Object[][] values;
+    private final Object[] anonymized;
+    private int count;
+
+    AnonymizingBatch(AnonymizationPlan plan, int size, Consumer consumer) {
+        this.plan = plan;
+        this.consumer = consumer;
+        this.rows = new DatabaseUtil.Row[size];
+        this.contexts = new DatabaseUtil.ResultContext[size];
+        this.values = new Object[plan.getAnonymizedColumns().length][size];
+        this.anonymized = new Object[plan.getColumnCount()];
+    }
+
+    /**
+     * @return a consumer anonymizing rows in batches of the given size, or anonymizing each row itself if the plan
+     * has no anonymized columns
+     */
+    static DatabaseUtil.RowConsumer of(AnonymizationPlan plan, int size, Consumer consumer) {
+        return plan.isEmpty() ? (row, context) -> consumer.accept(row, null, context) : new AnonymizingBatch(plan, size, consumer);
+    }
+
+    @Override
+    public void accept(Map<String, Object> row, DatabaseUtil.ResultContext context) throws SQLException {
+        if (!(row instanceof DatabaseUtil.Row) || !plan.isIndexedLike((DatabaseUtil.Row) row)) {
+            flush();
+            consumer.accept(row, null, context);
+            return;
+        }
+        DatabaseUtil.Row r = (DatabaseUtil.Row) row;
+        // rows are refilled by the result set, so they are copied into rows reused for every batch
+        if (rows[count] == null || !r.copyTo(rows[count])) {
+            rows[count] = r.copy();
+        }
+        contexts[count++] = context;
+        if (count == rows.length || context.isLastRow()) {
+            flush();
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (count == 0) {
+            return;
+        }
+        int[] columns = plan.getAnonymizedColumns();
+        for (int j = 0; j < columns.length; j++) {
+            Object[] column = values[j];
+            for (int i = 0; i < count; i++) {
+                column[i] = rows[i].get(columns[j]);
+            }
+            plan.get(columns[j]).anonymizeColumn(rows[0].getColumnName(columns[j]), column, rows, count);
+        }
+        int n = count;
+        count = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < columns.length; j++) {
+                anonymized[columns[j]] = values[j][i];
+            }
+            consumer.accept(rows[i], anonymized, contexts[i]);
+            contexts[i] = null;
+        }
+        for (Object[] column : values) {
+            Arrays.fill(column, 0, n, null);
+        }
+    }
+}
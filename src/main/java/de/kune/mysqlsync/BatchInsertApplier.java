@@ -0,0 +1,99 @@
+package de.kune.mysqlsync;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.Collections.nCopies;
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Inserts rows with a prepared statement in batches of <code>batchSize</code> rows. Combined with the Connector/J
+ * options <code>useServerPrepStmts</code> and <code>rewriteBatchedStatements</code> the statement is parsed once by
+ * the server and each batch is sent as a multi-row insert. Upserting appliers replace the values of rows with the same
+ * key with <code>ON DUPLICATE KEY UPDATE</code>.
+ * <p>
+ * Values are bound with the same textual representation {@link DatabaseUtil#toValue(Object)} produces, so the
+ * target receives the same data as from the generated SQL text.
+ */
+class BatchInsertApplier implements RowApplier {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchInsertApplier.class.getName());
+
+    private final Connection connection;
+    private final int batchSize;
+    private final boolean upsert;
+    private String table;
+    private PreparedStatement statement;
+    private int pending;
+
+    BatchInsertApplier(Connection connection, int batchSize, boolean upsert) {
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.upsert = upsert;
+    }
+
+    @Override
+    public void start(String table, Collection<String> columns) throws SQLException {
+        if (statement != null && table.equals(this.table)) {
+            return;
+        }
+        close();
+        this.table = table;
+        String sql = "INSERT INTO " + DatabaseUtil.armor(table)
+                + " (" + columns.stream().map(DatabaseUtil::armor).collect(joining(",")) + ")"
+                + " VALUES (" + String.join(",", nCopies(columns.size(), "?")) + ")"
+                + (upsert ? DataSourceSynchronizer.onDuplicateKeyUpdate(columns) : "");
+        LOGGER.fine("preparing " + sql);
+        statement = connection.prepareStatement(sql);
+    }
+
+    @Override
+    public void apply(List<Object> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            bind(i + 1, values.get(i));
+        }
+        statement.addBatch();
+        if (++pending >= batchSize) {
+            flush();
+        }
+    }
+
+    private void bind(int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.NULL);
+        } else if (value instanceof Long
+                || value instanceof Integer
+                || value instanceof Boolean
+                || value instanceof BigDecimal) {
+            statement.setObject(index, value);
+        } else if (value instanceof byte[]) {
+            statement.setBytes(index, (byte[]) value);
+        } else {
+            statement.setString(index, value.toString());
+        }
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (pending > 0) {
+            LOGGER.fine("executing batch of " + pending + " rows for " + table);
+            statement.executeBatch();
+            pending = 0;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (statement != null) {
+            flush();
+            statement.close();
+            statement = null;
+        }
+    }
+}
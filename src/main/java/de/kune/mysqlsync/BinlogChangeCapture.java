@@ -0,0 +1,609 @@
+package de.kune.mysqlsync;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.QueryEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.TransactionPayloadEventData;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows the row based binlog of the source database and passes the primary keys of the changed rows of the
+ * synchronized tables to an applier in micro-batches of complete transactions.
+ * <p>
+ * Only the keys are taken from the binlog; the applier reads the current rows by key from the source, so the values go
+ * through the same JDBC types and anonymizers as a regular sync, and replaying changes after a restart is harmless.
+ * The binlog position (and GTID set, if enabled on the source) of the last applied batch is kept in a state file, so a
+ * restarted capture continues where the last one stopped.
+ * <p>
+ * The source needs <code>binlog_format=ROW</code> and a user with the REPLICATION SLAVE and REPLICATION CLIENT
+ * privileges. Tables without a primary key are not captured.
+ */
+public final class BinlogChangeCapture implements ChangeCaptureMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(BinlogChangeCapture.class.getName());
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Applies the changed rows of a batch to the target and commits them.
+     */
+    @FunctionalInterface
+    interface Applier {
+        /**
+         * @param keysByTable the SQL literals of the primary keys of changed rows by table
+         */
+        void apply(Map<String, Set<List<String>>> keysByTable) throws SQLException;
+    }
+
+    public static class Factory {
+        private String hostname;
+        private int port = 3306;
+        private String user, password;
+        private long serverId = 65_535;
+        private Path stateFile;
+        private int batchRows = 1_000;
+        private long batchMillis = 1_000;
+
+        public BinlogChangeCapture build() {
+            if (hostname == null || stateFile == null) {
+                throw new IllegalStateException("The hostname and the state file are required");
+            }
+            return new BinlogChangeCapture(this);
+        }
+
+        public Factory hostname(String hostname) {
+            this.hostname = hostname;
+            return this;
+        }
+
+        public Factory port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Factory user(String user) {
+            this.user = user;
+            return this;
+        }
+
+        public Factory password(String password) {
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * @param serverId the id the capture registers with as a replica, unique among the replicas of the source
+         * @return this factory
+         */
+        public Factory serverId(long serverId) {
+            this.serverId = serverId;
+            return this;
+        }
+
+        /**
+         * @param stateFile the file keeping the binlog position of the last applied batch
+         * @return this factory
+         */
+        public Factory stateFile(Path stateFile) {
+            this.stateFile = stateFile;
+            return this;
+        }
+
+        /**
+         * Configures the micro-batches. A batch is applied when it holds the given number of changed rows or its
+         * first change is older than the given time; batches always end with a complete transaction.
+         *
+         * @param batchRows   the number of changed rows of a batch
+         * @param batchMillis the max age of a batch in milliseconds
+         * @return this factory
+         */
+        public Factory batch(int batchRows, long batchMillis) {
+            this.batchRows = batchRows;
+            this.batchMillis = batchMillis;
+            return this;
+        }
+    }
+
+    public static Factory builder() {
+        return new Factory();
+    }
+
+    /**
+     * A binlog position, with the executed GTID set if the source uses GTIDs.
+     */
+    static final class Position {
+        private final String file;
+        private final long position;
+        private final String gtidSet;
+
+        Position(String file, long position, String gtidSet) {
+            this.file = file;
+            this.position = position;
+            this.gtidSet = gtidSet == null || gtidSet.trim().isEmpty() ? null : gtidSet.trim();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Position)) {
+                return false;
+            }
+            Position other = (Position) o;
+            return position == other.position && Objects.equals(file, other.file) && Objects.equals(gtidSet, other.gtidSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, position, gtidSet);
+        }
+
+        @Override
+        public String toString() {
+            return file + ":" + position + (gtidSet == null ? "" : " (" + gtidSet + ")");
+        }
+    }
+
+    static final class Column {
+        private final String name;
+        private final String dataType;
+        private final boolean unsigned;
+
+        Column(String name, String dataType, boolean unsigned) {
+            this.name = name;
+            this.dataType = dataType;
+            this.unsigned = unsigned;
+        }
+    }
+
+    private final Factory config;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile BinaryLogClient client;
+
+    private DataSource source;
+    private String schema;
+    private Map<String, List<String>> keyColumnsByTable;
+    private Applier applier;
+    private final Map<String, List<Column>> columnsByTable = new HashMap<>();
+    private final Map<Long, String> tablesById = new HashMap<>();
+
+    private Map<String, Set<List<String>>> transaction = new LinkedHashMap<>();
+    private Map<String, Set<List<String>>> batch = new LinkedHashMap<>();
+    private int transactionRows, batchRows;
+    private long batchStarted, lastCommitTimestamp;
+    private Position committed, saved;
+    private long stateSaved;
+    private RuntimeException failure;
+
+    private volatile long lagMillis;
+    private volatile long appliedTransactions, appliedRows, appliedBatches;
+    private long batchTransactions;
+
+    private BinlogChangeCapture(Factory config) {
+        this.config = config;
+        this.saved = loadState();
+    }
+
+    /**
+     * @return true if the state file holds a position to continue at
+     */
+    public boolean hasState() {
+        return saved != null;
+    }
+
+    /**
+     * Records the current end of the binlog of the source as the position to start at, e.g. before the initial sync
+     * of the target, so changes made during the sync are applied afterwards.
+     */
+    public void markStart(DataSource source) throws SQLException {
+        List<Map<String, String>> status;
+        try {
+            status = DatabaseUtil.query(source, "SHOW MASTER STATUS");
+        } catch (RuntimeException e) {
+            // renamed in MySQL 8.4
+            status = DatabaseUtil.query(source, "SHOW BINARY LOG STATUS");
+        }
+        markStart(status.isEmpty() ? null : status.get(0));
+    }
+
+    /**
+     * Records a binlog position to start at, e.g. the position of the consistent snapshot the target was synchronized
+     * from.
+     *
+     * @param s the result of <code>SHOW MASTER STATUS</code>, null if the binlog is not enabled
+     */
+    void markStart(Map<String, String> s) {
+        if (s == null) {
+            throw new IllegalStateException("The binlog of the source is not enabled");
+        }
+        saveState(new Position(s.get("File"), Long.parseLong(s.get("Position")), s.get("Executed_Gtid_Set")));
+        LOGGER.info("Capturing changes from " + saved);
+    }
+
+    /**
+     * Follows the binlog until {@link #stop()} is called or applying a batch fails.
+     *
+     * @param source            the source database, to look up the columns of changed tables
+     * @param schema            the source schema
+     * @param keyColumnsByTable the primary key columns of the captured tables
+     * @param applier           applies the batches
+     */
+    void run(DataSource source, String schema, Map<String, List<String>> keyColumnsByTable, Applier applier) throws IOException {
+        if (saved == null) {
+            throw new IllegalStateException("No binlog position to start at, see markStart");
+        }
+        this.source = source;
+        this.schema = schema;
+        this.keyColumnsByTable = keyColumnsByTable;
+        this.applier = applier;
+        this.committed = saved;
+        BinaryLogClient client = new BinaryLogClient(config.hostname, config.port, config.user, config.password);
+        client.setServerId(config.serverId);
+        client.setBinlogFilename(saved.file);
+        client.setBinlogPosition(saved.position);
+        if (saved.gtidSet != null) {
+            client.setGtidSet(saved.gtidSet);
+        }
+        client.setHeartbeatInterval(Math.max(100, config.batchMillis));
+        EventDeserializer deserializer = new EventDeserializer();
+        // temporal values as microseconds, see toValue
+        deserializer.setCompatibilityMode(EventDeserializer.CompatibilityMode.CHAR_AND_BINARY_AS_BYTE_ARRAY,
+                EventDeserializer.CompatibilityMode.DATE_AND_TIME_AS_LONG_MICRO);
+        client.setEventDeserializer(deserializer);
+        client.registerEventListener(event -> {
+            try {
+                onEvent(event, event.getHeader());
+            } catch (RuntimeException e) {
+                failure = e;
+                LOGGER.log(Level.SEVERE, "Stopping change capture", e);
+                stop();
+            }
+        });
+        ObjectName name = registerMBean();
+        this.client = client;
+        try {
+            LOGGER.info("Following the binlog of " + config.hostname + ":" + config.port + " at " + saved + " for " + keyColumnsByTable.size() + " tables");
+            client.connect(10_000);
+            stopped.await();
+        } catch (TimeoutException e) {
+            throw new IOException("Could not connect to the binlog of " + config.hostname + ":" + config.port, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.client = null;
+            if (client.isConnected()) {
+                client.disconnect();
+            }
+            unregisterMBean(name);
+            LOGGER.info("Stopped following the binlog at " + saved + ", " + appliedTransactions + " transactions with "
+                    + appliedRows + " changed rows applied in " + appliedBatches + " batches");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stops following the binlog, changes not applied yet are applied by the next run.
+     */
+    public void stop() {
+        stopped.countDown();
+    }
+
+    private void onEvent(Event event, EventHeaderV4 header) {
+        EventType type = header.getEventType();
+        switch (type) {
+            case TABLE_MAP: {
+                TableMapEventData data = event.getData();
+                String table = schema.equals(data.getDatabase()) && keyColumnsByTable.containsKey(data.getTable()) ? data.getTable() : null;
+                tablesById.put(data.getTableId(), table);
+                if (table != null && columns(table).size() != data.getColumnTypes().length) {
+                    // the table has been altered since its columns were looked up
+                    columnsByTable.remove(table);
+                }
+                break;
+            }
+            case WRITE_ROWS:
+            case EXT_WRITE_ROWS: {
+                WriteRowsEventData data = event.getData();
+                String table = tablesById.get(data.getTableId());
+                if (table != null) {
+                    data.getRows().forEach(row -> changed(table, data.getIncludedColumns(), row));
+                }
+                break;
+            }
+            case UPDATE_ROWS:
+            case EXT_UPDATE_ROWS: {
+                UpdateRowsEventData data = event.getData();
+                String table = tablesById.get(data.getTableId());
+                if (table != null) {
+                    data.getRows().forEach(row -> {
+                        changed(table, data.getIncludedColumnsBeforeUpdate(), row.getKey());
+                        changed(table, data.getIncludedColumns(), row.getValue());
+                    });
+                }
+                break;
+            }
+            case DELETE_ROWS:
+            case EXT_DELETE_ROWS: {
+                DeleteRowsEventData data = event.getData();
+                String table = tablesById.get(data.getTableId());
+                if (table != null) {
+                    data.getRows().forEach(row -> changed(table, data.getIncludedColumns(), row));
+                }
+                break;
+            }
+            case TRANSACTION_PAYLOAD: {
+                // compressed transactions carry their events, positions are those of the payload
+                for (Event e : ((TransactionPayloadEventData) event.getData()).getUncompressedEvents()) {
+                    EventHeaderV4 inner = e.getHeader();
+                    if (inner.getEventType() == EventType.XID) {
+                        commit(header);
+                    } else {
+                        onEvent(e, header);
+                    }
+                }
+                break;
+            }
+            case XID:
+                commit(header);
+                break;
+            case QUERY: {
+                String sql = ((QueryEventData) event.getData()).getSql();
+                if ("COMMIT".equalsIgnoreCase(sql)) {
+                    // non-transactional tables
+                    commit(header);
+                } else if (!"BEGIN".equalsIgnoreCase(sql)) {
+                    // DDL, columns are looked up again when needed
+                    columnsByTable.clear();
+                    commit(header);
+                }
+                break;
+            }
+            case HEARTBEAT:
+                if (transaction.isEmpty() && batch.isEmpty()) {
+                    lagMillis = 0;
+                }
+                flushIfDue();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void changed(String table, BitSet includedColumns, Serializable[] row) {
+        List<Column> columns = columns(table);
+        Map<String, Serializable> values = new HashMap<>();
+        int i = 0;
+        for (int c = includedColumns.nextSetBit(0); c >= 0 && c < columns.size(); c = includedColumns.nextSetBit(c + 1)) {
+            values.put(columns.get(c).name, row[i++]);
+        }
+        List<String> keyColumns = keyColumnsByTable.get(table);
+        List<String> key = new ArrayList<>(keyColumns.size());
+        for (String keyColumn : keyColumns) {
+            if (!values.containsKey(keyColumn)) {
+                throw new IllegalStateException("The binlog event of " + table + " lacks the key column " + keyColumn);
+            }
+            key.add(toValue(columns.stream().filter(c -> c.name.equals(keyColumn)).findFirst().get(), values.get(keyColumn)));
+        }
+        if (transaction.computeIfAbsent(table, t -> new LinkedHashSet<>()).add(key)) {
+            transactionRows++;
+        }
+    }
+
+    /**
+     * Renders a key value of a binlog event as SQL literal. Temporal values arrive as microseconds since the epoch, for
+     * DATE, DATETIME and TIME as if the fields were UTC and for TIMESTAMP as the actual instant, which is compared in
+     * the time zone of the session like the column.
+     */
+    static String toValue(Column column, Serializable value) {
+        if (value instanceof Long) {
+            long micros = (Long) value;
+            switch (column.dataType) {
+                case "datetime":
+                    return "'" + DATE_TIME.format(toDateTime(micros)) + fraction(micros) + "'";
+                case "date":
+                    return "'" + DateTimeFormatter.ISO_LOCAL_DATE.format(toDateTime(micros)) + "'";
+                case "timestamp":
+                    return "FROM_UNIXTIME(" + BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString() + ")";
+                case "time":
+                    long abs = Math.abs(micros) / 1_000_000;
+                    return String.format("'%s%02d:%02d:%02d%s'", micros < 0 ? "-" : "", abs / 3600, abs / 60 % 60, abs % 60, fraction(Math.abs(micros)));
+                default:
+                    break;
+            }
+        }
+        if (value instanceof byte[] && !column.dataType.contains("binary") && !column.dataType.contains("blob")) {
+            return DatabaseUtil.toValue(new String((byte[]) value, StandardCharsets.UTF_8));
+        }
+        if (value instanceof Number && column.unsigned && ((Number) value).longValue() < 0) {
+            int bits = column.dataType.equals("tinyint") ? 8 : column.dataType.equals("smallint") ? 16
+                    : column.dataType.equals("mediumint") ? 24 : column.dataType.equals("int") ? 32 : 64;
+            return BigInteger.valueOf(((Number) value).longValue()).add(BigInteger.ONE.shiftLeft(bits)).toString();
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        }
+        if (value instanceof Number) {
+            return value.toString();
+        }
+        return DatabaseUtil.toValue(value);
+    }
+
+    private static LocalDateTime toDateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), 0, ZoneOffset.UTC);
+    }
+
+    private static String fraction(long micros) {
+        long fraction = Math.floorMod(micros, 1_000_000);
+        return fraction == 0 ? "" : String.format(".%06d", fraction);
+    }
+
+    private List<Column> columns(String table) {
+        return columnsByTable.computeIfAbsent(table, t -> {
+            try {
+                List<Column> result = new ArrayList<>();
+                for (Map<String, String> c : DatabaseUtil.query(source, "SELECT COLUMN_NAME, DATA_TYPE, COLUMN_TYPE FROM INFORMATION_SCHEMA.COLUMNS"
+                        + " WHERE TABLE_SCHEMA = " + DatabaseUtil.toValue(schema) + " AND TABLE_NAME = " + DatabaseUtil.toValue(t)
+                        + " ORDER BY ORDINAL_POSITION")) {
+                    result.add(new Column(c.get("COLUMN_NAME"), c.get("DATA_TYPE").toLowerCase(), c.get("COLUMN_TYPE").toLowerCase().contains("unsigned")));
+                }
+                return result;
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private void commit(EventHeaderV4 header) {
+        BinaryLogClient client = this.client;
+        committed = new Position(client == null ? committed.file : client.getBinlogFilename(), header.getNextPosition(),
+                client == null ? null : client.getGtidSet());
+        if (!transaction.isEmpty()) {
+            if (batch.isEmpty()) {
+                batchStarted = System.currentTimeMillis();
+            }
+            transaction.forEach((table, keys) -> batch.computeIfAbsent(table, t -> new LinkedHashSet<>()).addAll(keys));
+            batchRows += transactionRows;
+            batchTransactions++;
+            lastCommitTimestamp = header.getTimestamp();
+            transaction = new LinkedHashMap<>();
+            transactionRows = 0;
+        }
+        flushIfDue();
+    }
+
+    private void flushIfDue() {
+        long now = System.currentTimeMillis();
+        if (!batch.isEmpty() && (batchRows >= config.batchRows || now - batchStarted >= config.batchMillis)) {
+            try {
+                applier.apply(batch);
+            } catch (SQLException e) {
+                throw new RuntimeException("Could not apply changes up to " + committed, e);
+            }
+            lagMillis = Math.max(0, System.currentTimeMillis() - lastCommitTimestamp);
+            appliedTransactions += batchTransactions;
+            appliedRows += batchRows;
+            appliedBatches++;
+            LOGGER.fine("Applied " + batchRows + " changed rows of " + batchTransactions + " transactions, lag " + lagMillis + " ms");
+            batch = new LinkedHashMap<>();
+            batchRows = 0;
+            batchTransactions = 0;
+            saveState(committed);
+        } else if (batch.isEmpty() && !committed.equals(saved) && now - stateSaved >= config.batchMillis) {
+            // transactions of other tables, keeps the position from falling behind purged binlogs
+            saveState(committed);
+        }
+    }
+
+    private Position loadState() {
+        if (!Files.exists(config.stateFile)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(config.stateFile)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read binlog state " + config.stateFile, e);
+        }
+        Position result = new Position(properties.getProperty("file"), Long.parseLong(properties.getProperty("position")), properties.getProperty("gtidSet"));
+        LOGGER.info("Continuing change capture at " + result);
+        return result;
+    }
+
+    private void saveState(Position position) {
+        Properties properties = new Properties();
+        properties.setProperty("file", position.file);
+        properties.setProperty("position", Long.toString(position.position));
+        if (position.gtidSet != null) {
+            properties.setProperty("gtidSet", position.gtidSet);
+        }
+        PropertiesFiles.storeAtomically(config.stateFile, properties, "mysql-sync binlog position", "binlog state");
+        saved = position;
+        stateSaved = System.currentTimeMillis();
+    }
+
+    private ObjectName registerMBean() {
+        try {
+            ObjectName name = new ObjectName("de.kune.mysqlsync:type=BinlogChangeCapture");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+                return name;
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Could not register the change capture metrics", e);
+        }
+        return null;
+    }
+
+    private static void unregisterMBean(ObjectName name) {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                LOGGER.log(Level.FINE, "Could not unregister the change capture metrics", e);
+            }
+        }
+    }
+
+    @Override
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    @Override
+    public long getAppliedTransactions() {
+        return appliedTransactions;
+    }
+
+    @Override
+    public long getAppliedRows() {
+        return appliedRows;
+    }
+
+    @Override
+    public long getAppliedBatches() {
+        return appliedBatches;
+    }
+
+    @Override
+    public String getBinlogPosition() {
+        Position position = saved;
+        return position == null ? null : position.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package de.kune.mysqlsync;
+
+/**
+ * The metrics of a {@link BinlogChangeCapture}, registered with the platform MBean server as
+ * <code>de.kune.mysqlsync:type=BinlogChangeCapture</code>.
+ */
+public interface ChangeCaptureMXBean {
+
+    /**
+     * @return the milliseconds between the commit of the last applied transaction on the source and its application
+     * to the target, 0 when the target has caught up with the binlog
+     */
+    long getLagMillis();
+
+    long getAppliedTransactions();
+
+    long getAppliedRows();
+
+    long getAppliedBatches();
+
+    /**
+     * @return the binlog file and position the target has been synchronized up to
+     */
+    String getBinlogPosition();
+}
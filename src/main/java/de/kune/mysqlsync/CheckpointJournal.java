@@ -0,0 +1,228 @@
+package de.kune.mysqlsync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Records the progress of a sync run in a local file, so a failed run can be resumed: the completed tables, the last
+ * chunk boundary of tables in progress and the length of the output files at that boundary. The file is replaced
+ * atomically on every update, so it always describes a consistent state.
+ * <p>
+ * A chunk boundary is recorded after the rows before it have been committed to the target and the output files have
+ * been synced, so a resumed run continues behind the boundary without truncating the table again and cuts the output
+ * files back to the recorded length.
+ */
+final class CheckpointJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckpointJournal.class.getName());
+
+    /**
+     * Where to continue reading a table: behind a primary key or at a row offset.
+     */
+    static final class Position {
+        private final List<String> key;
+        private final long row;
+
+        private Position(List<String> key, long row) {
+            this.key = key;
+            this.row = row;
+        }
+
+        /**
+         * @param key the SQL literals of the primary key of the last row read
+         */
+        static Position afterKey(List<String> key) {
+            return new Position(Collections.unmodifiableList(new ArrayList<>(key)), -1);
+        }
+
+        static Position atRow(long row) {
+            return new Position(null, row);
+        }
+
+        List<String> getKey() {
+            return key;
+        }
+
+        long getRow() {
+            return row;
+        }
+
+        boolean isKey() {
+            return key != null;
+        }
+
+        @Override
+        public String toString() {
+            return isKey() ? "after key " + key : "at row " + row;
+        }
+    }
+
+    private final Path file;
+    private final Properties properties;
+
+    private CheckpointJournal(Path file, Properties properties) {
+        this.file = file;
+        this.properties = properties;
+    }
+
+    /**
+     * Starts a new journal, replacing an existing one.
+     */
+    static CheckpointJournal create(Path file, String sourceSchema, String targetSchema, boolean incremental, int chunkSize, Date creationDate) {
+        Properties properties = new Properties();
+        properties.setProperty("source", sourceSchema);
+        if (targetSchema != null) {
+            properties.setProperty("target", targetSchema);
+        }
+        properties.setProperty("incremental", Boolean.toString(incremental));
+        properties.setProperty("chunkSize", Integer.toString(chunkSize));
+        properties.setProperty("created", Long.toString(creationDate.getTime()));
+        CheckpointJournal result = new CheckpointJournal(file, properties);
+        result.write();
+        return result;
+    }
+
+    /**
+     * Loads the journal of an earlier run with the same settings.
+     *
+     * @throws IllegalStateException if the journal was written by a run with different settings
+     */
+    static CheckpointJournal resume(Path file, String sourceSchema, String targetSchema, boolean incremental, int chunkSize) {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read checkpoint journal " + file, e);
+        }
+        check(file, properties, "source", sourceSchema);
+        check(file, properties, "target", targetSchema);
+        check(file, properties, "incremental", Boolean.toString(incremental));
+        check(file, properties, "chunkSize", Integer.toString(chunkSize));
+        CheckpointJournal result = new CheckpointJournal(file, properties);
+        LOGGER.info("Resuming from checkpoint journal " + file + " with " + result.countDone() + " completed tables");
+        return result;
+    }
+
+    private static void check(Path file, Properties properties, String key, String expected) {
+        if (!Objects.equals(properties.getProperty(key), expected)) {
+            throw new IllegalStateException(String.format("Cannot resume from %s, it was written with %s=%s instead of %s", file, key, properties.getProperty(key), expected));
+        }
+    }
+
+    Date getCreationDate() {
+        return new Date(Long.parseLong(properties.getProperty("created")));
+    }
+
+    synchronized boolean isDone(String table) {
+        return properties.containsKey("table." + table + ".done");
+    }
+
+    /**
+     * @return the position to continue reading the table at or null to read it from the start
+     */
+    synchronized Position getPosition(String table) {
+        String prefix = "table." + table + ".";
+        String row = properties.getProperty(prefix + "row");
+        if (row != null) {
+            return Position.atRow(Long.parseLong(row));
+        }
+        List<String> key = new ArrayList<>();
+        for (String value; (value = properties.getProperty(prefix + "key." + key.size())) != null; ) {
+            key.add(value);
+        }
+        return key.isEmpty() ? null : Position.afterKey(key);
+    }
+
+    /**
+     * @return the length of the output file at the last checkpoint or -1 if the file has no checkpoint
+     */
+    synchronized long getOffset(String outputFile) {
+        return Long.parseLong(properties.getProperty("output." + outputFile, "-1"));
+    }
+
+    /**
+     * Records that a table has been read up to the given position.
+     *
+     * @param outputFile the output file the rows were written to or null
+     * @param offset     the length of the output file
+     */
+    synchronized void chunkDone(String table, Position position, String outputFile, long offset) {
+        clearPosition(table);
+        String prefix = "table." + table + ".";
+        if (position.isKey()) {
+            for (int i = 0; i < position.getKey().size(); i++) {
+                properties.setProperty(prefix + "key." + i, position.getKey().get(i));
+            }
+        } else {
+            properties.setProperty(prefix + "row", Long.toString(position.getRow()));
+        }
+        setOffset(outputFile, offset);
+        write();
+        LOGGER.fine("Checkpoint of " + table + " " + position);
+    }
+
+    /**
+     * Records that a table has been synchronized completely.
+     *
+     * @param outputFile the output file the table was written to, if it is continued by further tables
+     * @param offset     the length of the output file
+     */
+    synchronized void tableDone(String table, String outputFile, long offset) {
+        clearPosition(table);
+        properties.setProperty("table." + table + ".done", "true");
+        setOffset(outputFile, offset);
+        write();
+        LOGGER.fine("Checkpoint of completed table " + table);
+    }
+
+    /**
+     * Records the length of an output file, e.g. after its header was written.
+     */
+    synchronized void outputWritten(String outputFile, long offset) {
+        setOffset(outputFile, offset);
+        write();
+    }
+
+    /**
+     * Deletes the journal after the run has completed.
+     */
+    synchronized void finish() {
+        try {
+            Files.deleteIfExists(file);
+            LOGGER.info("Completed run, deleted checkpoint journal " + file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete checkpoint journal " + file, e);
+        }
+    }
+
+    private void setOffset(String outputFile, long offset) {
+        if (outputFile != null) {
+            properties.setProperty("output." + outputFile, Long.toString(offset));
+        }
+    }
+
+    private void clearPosition(String table) {
+        String prefix = "table." + table + ".";
+        properties.stringPropertyNames().stream()
+                .filter(k -> k.startsWith(prefix + "key.") || k.equals(prefix + "row"))
+                .forEach(properties::remove);
+    }
+
+    private long countDone() {
+        return properties.stringPropertyNames().stream().filter(k -> k.endsWith(".done")).count();
+    }
+
+    private void write() {
+        PropertiesFiles.storeAtomically(file, properties, "mysql-sync checkpoint journal", "checkpoint journal");
+    }
+}
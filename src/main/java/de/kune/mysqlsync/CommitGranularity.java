@@ -0,0 +1,30 @@
+package de.kune.mysqlsync;
+
+/**
+ * When rows written to the target database are committed. The target connection does not auto-commit; note that
+ * <code>UNLOCK TABLES</code> and the <code>ALTER TABLE</code> around each chunk commit implicitly in MySQL.
+ */
+public enum CommitGranularity {
+
+    /**
+     * Commits every given number of rows and at the end of every chunk. Commits happen between statements, so the
+     * number of rows of a transaction is rounded up to whole INSERT statements.
+     */
+    ROWS,
+
+    /**
+     * Commits at the end of every chunk, before its tables are unlocked.
+     */
+    CHUNK,
+
+    /**
+     * Commits at the end of every table. The statements locking the table and disabling its keys, which would commit
+     * implicitly, are then only written to the output file and not executed on the target. With a checkpoint journal,
+     * the target is still committed at every chunk checkpoint, as a checkpoint must only record committed rows.
+     */
+    TABLE;
+
+    public static CommitGranularity forName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,40 @@
+package de.kune.mysqlsync;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static java.lang.String.format;
+
+/**
+ * Commits the target connection and counts the commits and their latency.
+ */
+final class CommitStatistics {
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void commit(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        connection.commit();
+        long nanos = System.nanoTime() - start;
+        commits.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    long getCommits() {
+        return commits.get();
+    }
+
+    @Override
+    public String toString() {
+        long n = commits.get();
+        long total = totalNanos.get();
+        return format("%d commits in %d ms (avg %.1f ms, max %.1f ms)", n, TimeUnit.NANOSECONDS.toMillis(total),
+                n == 0 ? 0.0 : total / 1e6 / n, maxNanos.get() / 1e6);
+    }
+}
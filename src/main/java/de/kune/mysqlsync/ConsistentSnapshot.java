@@ -0,0 +1,238 @@
+package de.kune.mysqlsync;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Source connections sharing one point-in-time view of the source, so tables and key ranges read in parallel are
+ * consistent with each other like a single-threaded dump in one transaction.
+ * <p>
+ * While a global read lock (<code>FLUSH TABLES WITH READ LOCK</code>) is held briefly, every connection starts a
+ * transaction <code>WITH CONSISTENT SNAPSHOT</code> and the binlog position of the snapshot is recorded. Without the
+ * privilege to lock, a single connection is opened, which is consistent but reads the tables one query at a time. Its
+ * binlog position is not recorded then, as other transactions may commit between starting the snapshot and reading
+ * the position.
+ * <p>
+ * The snapshot is a data source handing out the connections one query at a time; closing a connection returns it, and
+ * settings changes of the borrowers are ignored. Only InnoDB tables are read consistently. The transactions are open
+ * until the snapshot is closed, keeping old row versions in the undo log of the source for the duration of the sync.
+ */
+final class ConsistentSnapshot implements DataSource, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ConsistentSnapshot.class.getName());
+
+    private final DataSource source;
+    private final List<Connection> connections = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+    private Map<String, String> binlogStatus;
+
+    private ConsistentSnapshot(DataSource source, int size) {
+        this.source = source;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Opens the connections and starts their snapshot transactions.
+     *
+     * @param size the number of connections, at least the number of queries running at the same time to not wait
+     */
+    static ConsistentSnapshot open(DataSource source, int size) throws SQLException {
+        ConsistentSnapshot result = new ConsistentSnapshot(source, Math.max(1, size));
+        try {
+            result.start(Math.max(1, size));
+        } catch (SQLException | RuntimeException e) {
+            result.close();
+            throw e;
+        }
+        return result;
+    }
+
+    private void start(int size) throws SQLException {
+        try (Connection lock = source.getConnection(); Statement stmt = lock.createStatement()) {
+            boolean locked;
+            try {
+                stmt.execute("FLUSH TABLES WITH READ LOCK");
+                locked = true;
+            } catch (SQLException e) {
+                LOGGER.warning("Could not lock the source for a consistent snapshot of several connections, reading over one connection: " + e.getMessage());
+                locked = false;
+            }
+            try {
+                for (int i = 0; i < (locked ? size : 1); i++) {
+                    connections.add(startTransaction());
+                }
+                if (locked) {
+                    binlogStatus = queryBinlogStatus(connections.get(0));
+                }
+            } finally {
+                if (locked) {
+                    stmt.execute("UNLOCK TABLES");
+                }
+            }
+        }
+        idle.addAll(connections);
+        LOGGER.info("Started consistent snapshot over " + connections.size() + " source connections"
+                + (binlogStatus == null ? "" : " at binlog position " + binlogStatus.get("File") + ":" + binlogStatus.get("Position")));
+    }
+
+    private Connection startTransaction() throws SQLException {
+        Connection connection = source.getConnection();
+        try (Statement stmt = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            stmt.execute("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+            stmt.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private static Map<String, String> queryBinlogStatus(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs;
+            try {
+                rs = stmt.executeQuery("SHOW MASTER STATUS");
+            } catch (SQLException e) {
+                // renamed in MySQL 8.4
+                rs = stmt.executeQuery("SHOW BINARY LOG STATUS");
+            }
+            if (!rs.next()) {
+                return null;
+            }
+            Map<String, String> result = new LinkedHashMap<>();
+            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                result.put(rs.getMetaData().getColumnLabel(i), rs.getString(i));
+            }
+            return Collections.unmodifiableMap(result);
+        }
+    }
+
+    /**
+     * @return the result of <code>SHOW MASTER STATUS</code> at the snapshot or null if the binlog is not enabled or the
+     * source could not be locked
+     */
+    Map<String, String> getBinlogStatus() {
+        return binlogStatus;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            Connection connection = idle.take();
+            return borrowed(connection, () -> idle.add(connection));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a snapshot connection", e);
+        }
+    }
+
+    /**
+     * Wraps a snapshot connection, ignoring changes of its transaction settings and calling the release instead of
+     * closing it.
+     */
+    private static Connection borrowed(Connection connection, Runnable release) {
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed[0]) {
+                        closed[0] = true;
+                        release.run();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed[0];
+                case "setAutoCommit":
+                case "setReadOnly":
+                case "setTransactionIsolation":
+                case "commit":
+                case "rollback":
+                    return null;
+                default:
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        });
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Snapshot connections are opened with the credentials of the source");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return source.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        source.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        source.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return source.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return source.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return source.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return source.isWrapperFor(iface);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        for (Connection connection : connections) {
+            try {
+                connection.commit();
+                connection.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        connections.clear();
+        idle.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -4,18 +4,23 @@ import de.kune.mysqlsync.anonymizer.FieldAnonymizer;
 
 import javax.sql.DataSource;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.GZIPOutputStream;
 
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
@@ -24,21 +29,111 @@ import static java.util.stream.Collectors.*;
 public class DataSourceSynchronizer {
 
     private static final Logger LOGGER = Logger.getLogger(DataSourceSynchronizer.class.getName());
+    private static final int INSERT_BATCH_SIZE = 1000;
+    /**
+     * The number of rows per INSERT statement of the output, rows are anonymized in batches of the same size.
+     */
+    private static final int ROWS_PER_INSERT = 150;
 
-    private final DataSource source, target;
+    private DataSource source;
+    private final DataSource target;
     private final Map<Pattern, FieldAnonymizer> anonymizerMap;
     private final List<Pattern> exclusions;
     private final ArrayList<Pattern> patterns;
     private Date creationDate = new Date();
+    private boolean keysetPagination;
+    private int parallelChunksPerTable = 1;
+    private int maxParallelChunks = 1;
+    private ParallelChunkReader chunkReader;
+    private Map<String, Integer> plannedRanges = Collections.emptyMap();
+    private boolean batchedInserts;
+    private List<Pattern> loadDataTables = Collections.emptyList();
+    private int pipelineCapacity;
+    private OutputCodec codec = OutputCodec.GZIP;
+    private int compressionLevel = OutputCodec.DEFAULT_LEVEL;
+    private int compressionThreads = 1;
+    private int longWindowLog;
+    private Path checkpointJournal;
+    private boolean resume;
+    private CheckpointJournal journal;
+    private CommitGranularity commitGranularity = CommitGranularity.CHUNK;
+    private int commitRows;
+    private int targetConnections = Runtime.getRuntime().availableProcessors();
+    private int tableThreads = Runtime.getRuntime().availableProcessors();
+    private boolean virtualThreads;
+    private int hostConcurrency;
+    private boolean rowDiff;
+    private Path watermarkFile;
+    private long watermarkOverlapSeconds = 60;
+    private WatermarkStore watermarks;
+    private boolean consistentSnapshot;
+    private int snapshotConnections;
+    private Map<String, String> snapshotBinlogStatus;
+    private CommitStatistics commits = new CommitStatistics();
+
+    /**
+     * Called when the rows of a table up to a position have been written.
+     */
+    @FunctionalInterface
+    private interface ChunkListener {
+        void chunkDone(CheckpointJournal.Position next) throws SQLException;
+    }
 
     public static class Factory {
         private DataSource source, target;
         private Map<Pattern, FieldAnonymizer> anonymizerMap = Collections.emptyMap();
         private List<Pattern> exclusions = new ArrayList<>();
         private List<Pattern> patterns = new ArrayList<>();
+        private boolean keysetPagination;
+        private int parallelChunksPerTable = 1;
+        private int maxParallelChunks = 1;
+        private boolean batchedInserts;
+        private List<Pattern> loadDataTables = new ArrayList<>();
+        private int pipelineCapacity;
+        private OutputCodec codec = OutputCodec.GZIP;
+        private int compressionLevel = OutputCodec.DEFAULT_LEVEL;
+        private int compressionThreads = 1;
+        private int longWindowLog;
+        private Path checkpointJournal;
+        private boolean resume;
+        private CommitGranularity commitGranularity = CommitGranularity.CHUNK;
+        private int commitRows;
+        private int targetConnections = Runtime.getRuntime().availableProcessors();
+        private int tableThreads = Runtime.getRuntime().availableProcessors();
+        private boolean virtualThreads;
+        private int hostConcurrency;
+        private boolean rowDiff;
+        private Path watermarkFile;
+        private long watermarkOverlapSeconds = 60;
+        private boolean consistentSnapshot;
+        private int snapshotConnections;
 
         public DataSourceSynchronizer build() {
-            return new DataSourceSynchronizer(source, target, anonymizerMap, patterns, exclusions);
+            DataSourceSynchronizer result = new DataSourceSynchronizer(source, target, anonymizerMap, patterns, exclusions);
+            result.keysetPagination = keysetPagination;
+            result.parallelChunksPerTable = parallelChunksPerTable;
+            result.maxParallelChunks = maxParallelChunks;
+            result.batchedInserts = batchedInserts;
+            result.loadDataTables = new ArrayList<>(loadDataTables);
+            result.pipelineCapacity = pipelineCapacity;
+            result.codec = codec;
+            result.compressionLevel = compressionLevel;
+            result.compressionThreads = compressionThreads;
+            result.longWindowLog = longWindowLog;
+            result.checkpointJournal = checkpointJournal;
+            result.resume = resume;
+            result.targetConnections = targetConnections;
+            result.tableThreads = tableThreads;
+            result.virtualThreads = virtualThreads;
+            result.hostConcurrency = hostConcurrency;
+            result.rowDiff = rowDiff;
+            result.watermarkFile = watermarkFile;
+            result.watermarkOverlapSeconds = watermarkOverlapSeconds;
+            result.consistentSnapshot = consistentSnapshot;
+            result.snapshotConnections = snapshotConnections;
+            result.commitGranularity = commitGranularity;
+            result.commitRows = commitRows;
+            return result;
         }
 
         public Factory source(DataSource source) {
@@ -75,6 +170,228 @@ public class DataSourceSynchronizer {
             this.patterns = new ArrayList<>(patterns);
             return this;
         }
+
+        /**
+         * Enables paging through tables by their primary key instead of LIMIT/OFFSET. Tables without a primary key
+         * are still paged by offset.
+         *
+         * @param keysetPagination true to seek by primary key
+         * @return this factory
+         */
+        public Factory keysetPagination(boolean keysetPagination) {
+            this.keysetPagination = keysetPagination;
+            return this;
+        }
+
+        /**
+         * Enables reading primary key ranges of a single table over several source connections at the same time.
+         * Requires an integral leading primary key column; the ranges read ahead are buffered in memory.
+         *
+         * @param parallelChunksPerTable the max number of ranges of one table to read at the same time
+         * @param maxParallelChunks      the max number of additional source connections of the whole run
+         * @return this factory
+         */
+        public Factory parallelChunks(int parallelChunksPerTable, int maxParallelChunks) {
+            this.parallelChunksPerTable = parallelChunksPerTable;
+            this.maxParallelChunks = maxParallelChunks;
+            return this;
+        }
+
+        /**
+         * Inserts rows into the target database with batched prepared statements instead of executing the generated
+         * INSERT statements. Output files still receive the generated statements.
+         *
+         * @param batchedInserts true to use batched prepared statements
+         * @return this factory
+         */
+        public Factory batchedInserts(boolean batchedInserts) {
+            this.batchedInserts = batchedInserts;
+            return this;
+        }
+
+        /**
+         * Fully loads the tables whose names match any of the given patterns with LOAD DATA LOCAL INFILE. The target
+         * connection must allow local infile loading.
+         *
+         * @param loadDataTables the table name patterns
+         * @return this factory
+         */
+        public Factory loadDataTables(List<Pattern> loadDataTables) {
+            this.loadDataTables = new ArrayList<>(loadDataTables);
+            return this;
+        }
+
+        /**
+         * Fully loads tables through a pipeline that reads, anonymizes and writes rows on separate threads.
+         *
+         * @param pipelineCapacity the number of rows each pipeline queue holds, 0 to process rows on the reading thread
+         * @return this factory
+         */
+        public Factory pipelineCapacity(int pipelineCapacity) {
+            this.pipelineCapacity = pipelineCapacity;
+            return this;
+        }
+
+        /**
+         * Selects the format of compressed output files, gzip by default.
+         *
+         * @param codec the compression format
+         * @return this factory
+         */
+        public Factory codec(OutputCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Enables zstd long distance matching, which finds repetitions far apart in large dumps at the cost of memory
+         * for the window, when decompressing as well. Ignored by other codecs.
+         *
+         * @param longWindowLog the base 2 logarithm of the window size, e.g. 27 for 128 MB, 0 to disable
+         * @return this factory
+         */
+        public Factory longWindowLog(int longWindowLog) {
+            this.longWindowLog = longWindowLog;
+            return this;
+        }
+
+        /**
+         * Configures the compression of output files. With more than one thread, gzip output is compressed in blocks
+         * written as a multi-member file and zstd output by zstd worker threads.
+         *
+         * @param compressionLevel   the level of the codec or {@link OutputCodec#DEFAULT_LEVEL}
+         * @param compressionThreads the number of compression threads per output file
+         * @return this factory
+         */
+        public Factory compression(int compressionLevel, int compressionThreads) {
+            this.compressionLevel = compressionLevel;
+            this.compressionThreads = compressionThreads;
+            return this;
+        }
+
+        /**
+         * Records the progress of the run in a journal file after every chunk and table, so a failed run can be
+         * resumed. Chunks are only checkpointed for tables read sequentially, tables read in parallel key ranges or
+         * incrementally are checkpointed when they are complete. The journal is deleted when the run completes.
+         *
+         * @param checkpointJournal the journal file or null to disable checkpoints
+         * @param resume            true to continue the run recorded in an existing journal
+         * @return this factory
+         */
+        public Factory checkpoint(Path checkpointJournal, boolean resume) {
+            this.checkpointJournal = checkpointJournal;
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Configures how often the target connection is committed, at the end of every chunk by default. Smaller
+         * transactions keep the undo log and lock memory of the target small during long runs.
+         *
+         * @param commitGranularity when to commit
+         * @param commitRows        the number of rows per transaction with {@link CommitGranularity#ROWS}
+         * @return this factory
+         */
+        public Factory commit(CommitGranularity commitGranularity, int commitRows) {
+            if (commitGranularity == CommitGranularity.ROWS && commitRows <= 0) {
+                throw new IllegalArgumentException("Committing every n rows requires a positive number of rows");
+            }
+            this.commitGranularity = commitGranularity;
+            this.commitRows = commitRows;
+            return this;
+        }
+
+        /**
+         * Limits the number of target connections of tables synchronized in parallel. Each table is written over a
+         * connection of its own, further tables wait for a connection to become free.
+         *
+         * @param targetConnections the max number of target connections, the number of processors by default
+         * @return this factory
+         */
+        public Factory targetConnections(int targetConnections) {
+            if (targetConnections < 1) {
+                throw new IllegalArgumentException("At least one target connection is required");
+            }
+            this.targetConnections = targetConnections;
+            return this;
+        }
+
+        /**
+         * Configures the threads synchronizing tables in parallel. The biggest tables are started first.
+         *
+         * @param tableThreads   the number of threads, the number of processors by default
+         * @param virtualThreads true to run every table on a virtual thread instead, requires Java 21
+         * @return this factory
+         */
+        public Factory tableThreads(int tableThreads, boolean virtualThreads) {
+            if (tableThreads < 1 && !virtualThreads) {
+                throw new IllegalArgumentException("At least one table thread is required");
+            }
+            this.tableThreads = tableThreads;
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Limits the number of tables synchronized in parallel against the same database host. Source and target on
+         * the same host share the limit.
+         *
+         * @param hostConcurrency the max number of tables per host, 0 for no limit
+         * @return this factory
+         */
+        public Factory hostConcurrency(int hostConcurrency) {
+            this.hostConcurrency = hostConcurrency;
+            return this;
+        }
+
+        /**
+         * Synchronizes tables incrementally by comparing checksums of key ranges of source and target instead of
+         * creation and last modified dates, so tables without such columns are synchronized incrementally as well and
+         * deleted rows are deleted from the target. Tables need a primary key that is not anonymized; changes of
+         * anonymized columns only are not detected. Tables whose leading primary key column is not integral are
+         * synchronized by creation and last modified dates.
+         *
+         * @param rowDiff true to compare checksums in incremental mode
+         * @return this factory
+         */
+        public Factory rowDiff(boolean rowDiff) {
+            this.rowDiff = rowDiff;
+            return this;
+        }
+
+        /**
+         * Configures the high-water marks of incremental runs, the latest creation or last modified date synchronized
+         * per table. Rows are read from the mark minus the overlap on, so rows committed late with an earlier date are
+         * not missed; rows read again are upserted.
+         *
+         * @param watermarkFile  the file keeping the marks between runs or null to find them in the target tables
+         * @param overlapSeconds the seconds before the mark rows are read again, 60 by default
+         * @return this factory
+         */
+        public Factory watermarks(Path watermarkFile, long overlapSeconds) {
+            if (overlapSeconds < 0) {
+                throw new IllegalArgumentException("The watermark overlap must not be negative");
+            }
+            this.watermarkFile = watermarkFile;
+            this.watermarkOverlapSeconds = overlapSeconds;
+            return this;
+        }
+
+        /**
+         * Reads all tables and key ranges from one point-in-time view of the source, as a pool of connections whose
+         * snapshot transactions are started under a brief global read lock. Queries wait for a free connection, so the
+         * number of connections limits the parallelism of the reads.
+         *
+         * @param consistentSnapshot  true to read from a consistent snapshot
+         * @param snapshotConnections the number of snapshot connections, less than 1 for one per table thread and
+         *                            parallel chunk
+         * @return this factory
+         */
+        public Factory consistentSnapshot(boolean consistentSnapshot, int snapshotConnections) {
+            this.consistentSnapshot = consistentSnapshot;
+            this.snapshotConnections = snapshotConnections;
+            return this;
+        }
     }
 
     public static Factory builder() {
@@ -110,22 +427,24 @@ public class DataSourceSynchronizer {
     private Map<String, Set<String>> determinePrimaryKeysOfSyncTables(String sourceSchema, String targetSchema, Set<String> tables) throws SQLException {
         Map<String, Set<String>> sourceIdsByTable = DatabaseUtil.query(source, "SELECT t.table_name, c.column_name\n" +
                 "  FROM INFORMATION_SCHEMA.TABLES t\n" +
-                "  LEFT JOIN INFORMATION_SCHEMA.COLUMNS c on c.table_name = t.table_name and c.table_schema = t.table_schema and c.column_key = 'PRI'\n" +
-                "  WHERE t.TABLE_SCHEMA='" + sourceSchema + "' and t.table_name in (" + tables.stream().map(s -> "'" + s + "'").collect(joining(", ")) + ")")
+                "  LEFT JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE c on c.table_name = t.table_name and c.table_schema = t.table_schema and c.constraint_name = 'PRIMARY'\n" +
+                "  WHERE t.TABLE_SCHEMA='" + sourceSchema + "' and t.table_name in (" + tables.stream().map(s -> "'" + s + "'").collect(joining(", ")) + ")\n" +
+                "  ORDER BY t.table_name, c.ordinal_position")
                 .stream()
-                .collect(Collectors.toMap(e -> e.get("TABLE_NAME"), e -> new HashSet<String>(asList(e.get("COLUMN_NAME")).stream().filter(Objects::nonNull).collect(toList())), (e1, e2) -> {
-                    HashSet<String> result = new HashSet<>(e1.stream().filter(Objects::nonNull).collect(toList()));
+                .collect(Collectors.toMap(e -> e.get("TABLE_NAME"), e -> new LinkedHashSet<String>(asList(e.get("COLUMN_NAME")).stream().filter(Objects::nonNull).collect(toList())), (e1, e2) -> {
+                    LinkedHashSet<String> result = new LinkedHashSet<>(e1.stream().filter(Objects::nonNull).collect(toList()));
                     result.addAll(e2.stream().filter(Objects::nonNull).collect(toList()));
                     return result;
                 }));
         if (targetSchema != null) {
             Map<String, Set<String>> targetIdsByTable = DatabaseUtil.query(target, "SELECT t.table_name, c.column_name\n" +
                     "  FROM INFORMATION_SCHEMA.TABLES t\n" +
-                    "  LEFT JOIN INFORMATION_SCHEMA.COLUMNS c on c.table_name = t.table_name and c.table_schema = t.table_schema and c.column_key = 'PRI'\n" +
-                    "  WHERE t.TABLE_SCHEMA='" + targetSchema + "' and t.table_name in (" + tables.stream().map(s -> "'" + s + "'").collect(joining(", ")) + ")")
+                    "  LEFT JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE c on c.table_name = t.table_name and c.table_schema = t.table_schema and c.constraint_name = 'PRIMARY'\n" +
+                    "  WHERE t.TABLE_SCHEMA='" + targetSchema + "' and t.table_name in (" + tables.stream().map(s -> "'" + s + "'").collect(joining(", ")) + ")\n" +
+                    "  ORDER BY t.table_name, c.ordinal_position")
                     .stream()
-                    .collect(Collectors.toMap(e -> e.get("TABLE_NAME"), e -> new HashSet<String>(asList(e.get("COLUMN_NAME")).stream().filter(Objects::nonNull).collect(toList())), (e1, e2) -> {
-                        HashSet<String> result = new HashSet<>(e1.stream().filter(Objects::nonNull).collect(toList()));
+                    .collect(Collectors.toMap(e -> e.get("TABLE_NAME"), e -> new LinkedHashSet<String>(asList(e.get("COLUMN_NAME")).stream().filter(Objects::nonNull).collect(toList())), (e1, e2) -> {
+                        LinkedHashSet<String> result = new LinkedHashSet<>(e1.stream().filter(Objects::nonNull).collect(toList()));
                         result.addAll(e2.stream().filter(Objects::nonNull).collect(toList()));
                         result.remove(null);
                         return result;
@@ -189,8 +508,10 @@ public class DataSourceSynchronizer {
             LOGGER.severe(format("Cannot connect to source database"));
             throw new RuntimeException("Cannot connect to source database");
         }
+        journal = openJournal(sourceSchema, targetSchema, incremental, maxNumberOfRows);
         String outputFile = outputFile(sourceSchema, targetSchema, outputFileInput, compress, incremental, null);
         Set<String> tables = determineSyncTables(sourceSchema, targetSchema);
+        commits = new CommitStatistics();
         LOGGER.info(format("Starting synchronization for source schema: %s", sourceSchema));
         LOGGER.info(format("Configured chunk size is: %d", maxNumberOfRows));
         if (tables.isEmpty()) {
@@ -201,9 +522,22 @@ public class DataSourceSynchronizer {
             LOGGER.info(primaryKeyByTable.toString());
             Map<String, Set<String>> columnsByTable = determineSyncColumnsOfSyncTables(sourceSchema, targetSchema, tables);
             LOGGER.info(columnsByTable.toString());
+            createAnonymizationPlans(columnsByTable, dryRun);
+            if (incremental) {
+                warnUnindexedWatermarks(sourceSchema, columnsByTable);
+                watermarks = watermarkFile == null || dryRun ? null : WatermarkStore.open(watermarkFile);
+            }
 
-            PrintWriter oneWriter = splitByTable ? null : openWriter(outputFile, compress);
-            try (Connection targetConnection = dryRun ? null : target.getConnection()) {
+            DataSource origin = source;
+            ConsistentSnapshot snapshot = consistentSnapshot ? ConsistentSnapshot.open(source, snapshotConnections(splitByTable && allowParallel, dryRun)) : null;
+            if (snapshot != null) {
+                source = snapshot;
+                snapshotBinlogStatus = snapshot.getBinlogStatus();
+            }
+            try (Connection targetConnection = dryRun ? null : target.getConnection();
+                 ParallelChunkReader chunkReader = parallelChunksPerTable > 1 ? new ParallelChunkReader(source, parallelChunksPerTable, maxParallelChunks)
+                         : splitByTable && allowParallel ? new ParallelChunkReader(source, 1, Math.max(1, tableThreads)) : null) {
+                this.chunkReader = chunkReader;
                 if (!dryRun) {
                     targetConnection.setReadOnly(dryRun);
                     targetConnection.setAutoCommit(false);
@@ -215,13 +549,47 @@ public class DataSourceSynchronizer {
 
                 final StringBuilder buf = new StringBuilder();
 
-                if (!splitByTable) {
-                    writeHeader(stmt, oneWriter, buf);
-                }
+                SqlOutput oneWriter = splitByTable ? null : openWriterWithHeader(outputFile, compress, stmt, buf);
 
                 if (splitByTable && allowParallel) {
-                    tables.stream().parallel().forEach(
-                            synchronizeTable(sourceSchema, targetSchema, outputFileInput, compress, splitByTable, dropAndRecreateTables, incremental, maxNumberOfRows, primaryKeyByTable, columnsByTable, oneWriter, stmt, buf));
+                    List<TableEstimate> estimates = TableEstimate.query(source, sourceSchema, tables);
+                    Set<String> hosts = new LinkedHashSet<>();
+                    hosts.add(hostOf(source));
+                    if (!dryRun) {
+                        hosts.add(hostOf(target));
+                    }
+                    try (TargetSessionPool sessions = dryRun ? null : new TargetSessionPool(target, targetSchema, targetConnections);
+                         TableScheduler scheduler = new TableScheduler(tableThreads, virtualThreads, hostConcurrency)) {
+                        LOGGER.info(format("Synchronizing tables in parallel over up to %d target connections", dryRun ? 0 : targetConnections));
+                        int workers = Math.min(scheduler.getWorkers(), Math.min(dryRun ? Integer.MAX_VALUE : targetConnections, hostConcurrency > 0 ? hostConcurrency : Integer.MAX_VALUE));
+                        if (workers == Integer.MAX_VALUE) {
+                            // virtual threads without a connection limit, one per table
+                            workers = tables.size();
+                        }
+                        TablePlanner.Plan plan = TablePlanner.plan(estimates, workers, table -> !incremental && columnsByTable.get(table) != null
+                                && !primaryKeyByTable.get(table).isEmpty() && columnsByTable.get(table).containsAll(primaryKeyByTable.get(table)));
+                        LOGGER.info("Plan of " + plan.getTables().size() + " tables, " + plan);
+                        plannedRanges = plan.getRanges();
+                        scheduler.run(plan.getTables(), workers, hosts, table -> {
+                            if (sessions == null) {
+                                synchronizeTable(sourceSchema, targetSchema, outputFileInput, compress, splitByTable, dropAndRecreateTables, incremental, maxNumberOfRows, primaryKeyByTable, columnsByTable, null, null, new StringBuilder()).accept(table);
+                                return;
+                            }
+                            TargetSessionPool.Session session;
+                            try {
+                                session = sessions.acquire();
+                            } catch (SQLException e) {
+                                throw new RuntimeException(e);
+                            }
+                            try {
+                                synchronizeTable(sourceSchema, targetSchema, outputFileInput, compress, splitByTable, dropAndRecreateTables, incremental, maxNumberOfRows, primaryKeyByTable, columnsByTable, null, session.getStatement(), session.getBuffer()).accept(table);
+                            } catch (RuntimeException | Error e) {
+                                sessions.discard(session);
+                                throw e;
+                            }
+                            sessions.release(session);
+                        }, chunkReader::steal);
+                    }
                 } else {
                     tables.stream().sorted().forEachOrdered(synchronizeTable(sourceSchema, targetSchema, outputFileInput, compress, splitByTable, dropAndRecreateTables, incremental, maxNumberOfRows, primaryKeyByTable, columnsByTable, oneWriter, stmt, buf));
                 }
@@ -230,44 +598,280 @@ public class DataSourceSynchronizer {
                     writeFooter(stmt, oneWriter, buf);
                     closeWriter(oneWriter);
                 }
+            } finally {
+                this.chunkReader = null;
+                this.plannedRanges = Collections.emptyMap();
+                this.watermarks = null;
+                if (snapshot != null) {
+                    source = origin;
+                    snapshot.close();
+                }
             }
         }
+        if (journal != null) {
+            journal.finish();
+            journal = null;
+        }
+        if (commits.getCommits() > 0) {
+            LOGGER.info("Target " + commits);
+        }
         LOGGER.info(format("Finished synchronization for source schema: %s", sourceSchema));
     }
 
-    private Consumer<String> synchronizeTable(String sourceSchema, String targetSchema, String outputFileInput, boolean compress, boolean splitByTable, boolean dropAndRecreateTables, boolean incremental, int maxNumberOfRows, Map<String, Set<String>> primaryKeyByTable, Map<String, Set<String>> columnsByTable, PrintWriter oneWriter, Statement stmt, StringBuilder buf) {
+    /**
+     * @return the host and port of the database or the URL if it cannot be parsed
+     */
+    private static String hostOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            String url = connection.getMetaData().getURL();
+            Matcher matcher = Pattern.compile("//([^/?]+)").matcher(url);
+            return matcher.find() ? matcher.group(1) : url;
+        }
+    }
+
+    /**
+     * @return the number of source connections of a consistent snapshot, one per query running at the same time
+     */
+    private int snapshotConnections(boolean parallelTables, boolean dryRun) {
+        if (snapshotConnections > 0) {
+            return snapshotConnections;
+        }
+        int tables = !parallelTables ? 1 : virtualThreads || tableThreads < 1 ? (dryRun ? Runtime.getRuntime().availableProcessors() : targetConnections) : tableThreads;
+        int helpers = parallelChunksPerTable > 1 ? maxParallelChunks : parallelTables ? tables : 0;
+        return tables + helpers;
+    }
+
+    /**
+     * @return the result of <code>SHOW MASTER STATUS</code> at the consistent snapshot of the last sync, null without a
+     * snapshot or binlog
+     */
+    Map<String, String> getSnapshotBinlogStatus() {
+        return snapshotBinlogStatus;
+    }
+
+    /**
+     * Applies the changes of the source schema to the target schema continuously, as captured from the binlog of the
+     * source, until the capture is stopped. The changed rows are read again from the source and upserted, anonymized like
+     * in a full sync, and the rows the source no longer has are deleted, see {@link #applyChanges}. The last deletes of a
+     * batch are committed at its end.
+     *
+     * @param capture the capture following the binlog of the source
+     */
+    public void captureChanges(String sourceSchema, String targetSchema, BinlogChangeCapture capture) throws SQLException, IOException {
+        Set<String> tables = determineSyncTables(sourceSchema, targetSchema);
+        Map<String, Set<String>> primaryKeyByTable = tables.isEmpty() ? Collections.emptyMap() : determinePrimaryKeysOfSyncTables(sourceSchema, targetSchema, tables);
+        Map<String, Set<String>> columnsByTable = tables.isEmpty() ? Collections.emptyMap() : determineSyncColumnsOfSyncTables(sourceSchema, targetSchema, tables);
+        createAnonymizationPlans(columnsByTable, false);
+        Map<String, List<String>> keyColumnsByTable = new LinkedHashMap<>();
+        for (String table : tables) {
+            Set<String> columns = columnsByTable.get(table);
+            Set<String> primaryKeys = primaryKeyByTable.get(table);
+            if (columns == null) {
+                continue;
+            }
+            if (primaryKeys.isEmpty() || !columns.containsAll(primaryKeys)) {
+                LOGGER.warning("Table " + table + " has no primary key within the synchronized columns, its changes are not captured");
+            } else {
+                keyColumnsByTable.put(table, new ArrayList<>(primaryKeys));
+            }
+        }
+        commits = new CommitStatistics();
+        try (Connection targetConnection = target.getConnection()) {
+            targetConnection.setAutoCommit(false);
+            Statement stmt = targetConnection.createStatement();
+            stmt.execute("USE " + DatabaseUtil.armor(targetSchema));
+            StringBuilder buf = new StringBuilder();
+            writeHeader(stmt, null, buf);
+            capture.run(source, sourceSchema, keyColumnsByTable, keysByTable -> {
+                for (Map.Entry<String, Set<List<String>>> e : keysByTable.entrySet()) {
+                    applyChanges(sourceSchema, e.getKey(), keyColumnsByTable.get(e.getKey()), columnsByTable.get(e.getKey()), e.getValue(), stmt, buf);
+                }
+                commit(stmt);
+            });
+        }
+        if (commits.getCommits() > 0) {
+            LOGGER.info("Target " + commits);
+        }
+    }
+
+    /**
+     * Reads the rows of changed keys from the source and upserts them, then deletes the keys the source no longer
+     * returns. The upserts are committed under <code>LOCK TABLES</code> and the deletes with the next upsert or batch,
+     * so no row that still exists in the source is ever missing from the target.
+     *
+     * @param changedKeys the SQL literals of the changed primary keys
+     */
+    void applyChanges(String sourceSchema, String table, List<String> keyColumns, Set<String> columns, Collection<List<String>> changedKeys, Statement stmt, StringBuilder buf) throws SQLException {
+        DatabaseUtil.RowConsumer upserts = incrementalUpsertRowConsumer(null, stmt, buf, null, table, columns);
+        List<List<String>> keys = new ArrayList<>(changedKeys);
+        for (int i = 0; i < keys.size(); i += ROWS_PER_INSERT) {
+            List<List<String>> batch = keys.subList(i, Math.min(keys.size(), i + ROWS_PER_INSERT));
+            String condition = RowDiff.keyCondition(keyColumns, batch);
+            List<List<String>> existing = new ArrayList<>();
+            DatabaseUtil.query(source, "SELECT " + columns.stream().map(DatabaseUtil::armor).collect(joining(", "))
+                    + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table)
+                    + " WHERE " + condition, (row, context) -> {
+                List<String> key = new ArrayList<>(keyColumns.size());
+                for (String keyColumn : keyColumns) {
+                    key.add(DatabaseUtil.toValue(row.get(keyColumn)));
+                }
+                existing.add(key);
+                upserts.accept(row, context);
+            }, false);
+            if (existing.size() < batch.size()) {
+                executeAndWriteLn("DELETE FROM " + DatabaseUtil.armor(table) + " WHERE " + condition
+                        + (existing.isEmpty() ? "" : " AND NOT (" + RowDiff.keyCondition(keyColumns, existing) + ")") + ";", stmt, null, buf);
+            }
+        }
+    }
+
+    private CheckpointJournal openJournal(String sourceSchema, String targetSchema, boolean incremental, int maxNumberOfRows) {
+        if (checkpointJournal == null) {
+            return null;
+        }
+        if (resume && Files.exists(checkpointJournal)) {
+            CheckpointJournal result = CheckpointJournal.resume(checkpointJournal, sourceSchema, targetSchema, incremental, maxNumberOfRows);
+            // output file names contain the creation date of the run
+            creationDate = result.getCreationDate();
+            return result;
+        }
+        if (resume) {
+            LOGGER.info("No checkpoint journal " + checkpointJournal + " to resume from, starting from scratch");
+        }
+        return CheckpointJournal.create(checkpointJournal, sourceSchema, targetSchema, incremental, maxNumberOfRows, creationDate);
+    }
+
+    /**
+     * Opens an output file and writes the header, or continues it at its checkpoint when resuming a run. The header
+     * statements are executed on the target either way.
+     */
+    private SqlOutput openWriterWithHeader(String outputFile, boolean compress, Statement stmt, StringBuilder buf) throws SQLException {
+        long offset = journal == null || outputFile == null ? -1 : journal.getOffset(outputFile);
+        if (offset >= 0) {
+            LOGGER.info("Continuing " + outputFile + " at its checkpoint at " + offset + " bytes");
+            writeHeader(stmt, null, buf);
+            return SqlOutput.resume(outputFile, offset, compress ? codec : null, compressionLevel, compressionThreads, longWindowLog);
+        }
+        SqlOutput writer = openWriter(outputFile, compress);
+        writeHeader(stmt, writer, buf);
+        if (journal != null && writer != null) {
+            journal.outputWritten(writer.getFile(), writer.checkpoint());
+        }
+        return writer;
+    }
+
+    private void commit(Statement stmt) throws SQLException {
+        if (stmt != null) {
+            commits.commit(stmt.getConnection());
+        }
+    }
+
+    /**
+     * Commits at the end of a chunk, or within a chunk once the rows up to <code>row</code> complete a transaction of
+     * the configured number of rows.
+     *
+     * @param previousRow the last row of the result set committed with the previous statement
+     */
+    private void commitRows(Statement stmt, DatabaseUtil.ResultContext rs, long previousRow) throws SQLException {
+        if (isCommitDue(rs, previousRow)) {
+            commit(stmt);
+        }
+    }
+
+    private boolean isCommitDue(DatabaseUtil.ResultContext rs, long previousRow) {
+        return rs.isLastRow() ? commitGranularity != CommitGranularity.TABLE
+                : commitGranularity == CommitGranularity.ROWS && rs.getRow() / commitRows > previousRow / commitRows;
+    }
+
+    /**
+     * Commits within a chunk like {@link #commitRows(Statement, DatabaseUtil.ResultContext, long)}. A row applier is
+     * finished first and started again afterwards: a running <code>LOAD DATA</code> occupies the connection until its
+     * input ends, and batched rows not sent yet would not be part of the transaction. Package-private for the unit
+     * tests.
+     */
+    void commitRows(Statement stmt, RowApplier applier, String table, Collection<String> columns, DatabaseUtil.ResultContext rs, long previousRow) throws SQLException {
+        if (!isCommitDue(rs, previousRow)) {
+            return;
+        }
+        if (applier != null) {
+            applier.finish();
+        }
+        commit(stmt);
+        if (applier != null) {
+            applier.start(table, columns);
+        }
+    }
+
+    private Consumer<String> synchronizeTable(String sourceSchema, String targetSchema, String outputFileInput, boolean compress, boolean splitByTable, boolean dropAndRecreateTables, boolean incremental, int maxNumberOfRows, Map<String, Set<String>> primaryKeyByTable, Map<String, Set<String>> columnsByTable, SqlOutput oneWriter, Statement stmt, StringBuilder buf) {
         return table -> {
             Set<String> columns = new LinkedHashSet<>();
             if (columnsByTable.get(table) == null) {
                 LOGGER.info("Skipping " + table);
+            } else if (journal != null && journal.isDone(table)) {
+                LOGGER.info("Skipping " + table + ", it was completed by the resumed run");
             } else {
                 columns.addAll(columnsByTable.get(table));
                 LOGGER.info("Synchronizing " + table);
                 try {
-                    PrintWriter writer;
+                    SqlOutput writer;
                     StringBuilder localBuf = buf;
+                    CheckpointJournal.Position position = journal == null ? null : journal.getPosition(table);
+                    if (position != null) {
+                        LOGGER.info("Continuing " + table + " " + position);
+                    }
+                    LocalDateTime watermark = null;
                     if (splitByTable) {
-                        localBuf = targetSchema == null ? null : new StringBuilder();
-                        writer = openWriter(outputFile(sourceSchema, targetSchema, outputFileInput, compress, incremental, table), compress);
-                        writeHeader(stmt, writer, localBuf);
+                        localBuf = targetSchema == null ? null : buf;
+                        writer = openWriterWithHeader(outputFile(sourceSchema, targetSchema, outputFileInput, compress, incremental, table), compress, stmt, localBuf);
                     } else {
                         writer = oneWriter;
                     }
-                    if (incremental) {
-                        loadIncrementally(sourceSchema, targetSchema, table, primaryKeyByTable.get(table), columns,
-                                fullLoadRowConsumer(writer, stmt, localBuf, table, columns),
-                                incrementalNewRowConsumer(writer, stmt, localBuf, table, columns),
-                                incrementalUpdateRowConsumer(writer, stmt, localBuf, table, columns, primaryKeyByTable.get(table)), maxNumberOfRows);
-                    } else {
-                        if (dropAndRecreateTables) {
-                            dropAndRecreateTable(writer, stmt, localBuf, sourceSchema, targetSchema, table);
+                    try (RowApplier applier = createApplier(stmt, table, false);
+                         RowApplier fullLoadApplier = createApplier(stmt, table, true);
+                         RowPipeline<InsertRow> pipeline = pipelineCapacity > 0 ? fullLoadPipeline(writer, stmt, localBuf, fullLoadApplier, table, columns) : null) {
+                        DatabaseUtil.RowConsumer fullLoadRowConsumer = pipeline != null ? pipeline : fullLoadRowConsumer(writer, stmt, localBuf, fullLoadApplier, table, columns);
+                        ChunkListener chunkListener = journal == null ? null : next -> {
+                            if (pipeline != null) {
+                                pipeline.await();
+                            }
+                            commit(stmt);
+                            journal.chunkDone(table, next, writer == null ? null : writer.getFile(), writer == null ? -1 : writer.checkpoint());
+                        };
+                        if (incremental && rowDiff && targetSchema != null && isDiffable(table, primaryKeyByTable.get(table), columns)
+                                && diffIncrementally(sourceSchema, targetSchema, table, primaryKeyByTable.get(table), columns,
+                                    incrementalUpsertRowConsumer(writer, stmt, localBuf, applier, table, columns),
+                                    writer, stmt, localBuf, maxNumberOfRows)) {
+                            // the differences have been applied
+                        } else if (incremental) {
+                            watermark = loadIncrementally(sourceSchema, targetSchema, table, primaryKeyByTable.get(table), columns,
+                                    fullLoadRowConsumer,
+                                    incrementalUpsertRowConsumer(writer, stmt, localBuf, applier, table, columns), maxNumberOfRows);
+                        } else {
+                            if (dropAndRecreateTables && position == null) {
+                                dropAndRecreateTable(writer, stmt, localBuf, sourceSchema, targetSchema, table);
+                            }
+                            processTable(sourceSchema, table, primaryKeyByTable.get(table), columns, fullLoadRowConsumer, maxNumberOfRows, position, chunkListener);
+                        }
+                    }
+                    long offset = -1;
+                    if (writer != null) {
+                        if (journal != null && !splitByTable) {
+                            offset = writer.checkpoint();
+                        } else {
+                            writer.sync();
                         }
-                        processTable(sourceSchema, table, columns, fullLoadRowConsumer(writer, stmt, localBuf, table, columns), maxNumberOfRows);
                     }
                     if (splitByTable) {
                         writeFooter(stmt, writer, localBuf);
                         closeWriter(writer);
                     }
+                    commit(stmt);
+                    if (watermarks != null && watermark != null) {
+                        watermarks.set(targetSchema, table, watermark);
+                    }
+                    if (journal != null) {
+                        journal.tableDone(table, splitByTable || writer == null ? null : writer.getFile(), offset);
+                    }
                 } catch (SQLException e) {
                     throw new RuntimeException(e);
                 }
@@ -275,7 +879,18 @@ public class DataSourceSynchronizer {
         };
     }
 
-    private void dropAndRecreateTable(PrintWriter writer, Statement stmt, StringBuilder localBuf, String sourceSchema, String targetSchema, String table) throws SQLException {
+    private RowApplier createApplier(Statement stmt, String table, boolean fullLoad) throws SQLException {
+        if (stmt == null) {
+            return null;
+        }
+        if (fullLoad && loadDataTables.stream().anyMatch(p -> p.matcher(table).matches())) {
+            LOGGER.info("Loading " + table + " with LOAD DATA LOCAL INFILE");
+            return new LoadDataApplier(stmt.getConnection());
+        }
+        return batchedInserts ? new BatchInsertApplier(stmt.getConnection(), INSERT_BATCH_SIZE, !fullLoad) : null;
+    }
+
+    private void dropAndRecreateTable(SqlOutput writer, Statement stmt, StringBuilder localBuf, String sourceSchema, String targetSchema, String table) throws SQLException {
         String createTable = DatabaseUtil.query(targetSchema == null ? source : target, "show create table " + (targetSchema == null ? sourceSchema : targetSchema) + "." + DatabaseUtil.armor(table)).get(0).get("Create Table");
         createTable = createTable.replace("ENGINE=FEDERATED", "ENGINE=InnoDB").replaceAll(" CONNECTION='.*?'", "");
         executeAndWriteLn("drop table if exists " + DatabaseUtil.armor(table) + ";", stmt, writer, localBuf);
@@ -306,29 +921,20 @@ public class DataSourceSynchronizer {
     }
 
     private String extension(boolean compress) {
-        return ".sql" + (compress ? ".gz" : "");
+        return ".sql" + (compress ? codec.getExtension() : "");
     }
 
-    private void closeWriter(PrintWriter writer) {
+    private void closeWriter(SqlOutput writer) {
         if (writer != null) {
-            writer.flush();
             writer.close();
         }
     }
 
-    private PrintWriter openWriter(String outputFile, boolean compress) {
-        try {
-            return outputFile == null ? null : new PrintWriter(
-                    new OutputStreamWriter(
-                            compress ? new GZIPOutputStream(new FileOutputStream(outputFile))
-                                    : new FileOutputStream(outputFile), "UTF-8")
-            );
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private SqlOutput openWriter(String outputFile, boolean compress) {
+        return outputFile == null ? null : SqlOutput.open(outputFile, compress ? codec : null, compressionLevel, compressionThreads, longWindowLog);
     }
 
-    private void writeFooter(Statement stmt, PrintWriter writer, StringBuilder buf) throws SQLException {
+    private void writeFooter(Statement stmt, SqlOutput writer, StringBuilder buf) throws SQLException {
         executeAndWriteLn("-- -----------------------------------------------------------------", null, writer, null);
         executeAndWriteLn("/*!40111 SET SQL_NOTES=@OLD_SQL_NOTES */;", null, writer, null);
         executeAndWriteLn("/*!40101 SET SQL_MODE=@OLD_SQL_MODE */;", null, writer, null);
@@ -339,7 +945,7 @@ public class DataSourceSynchronizer {
         executeAndWriteLn("-- -----------------------------------------------------------------", null, writer, null);
     }
 
-    private void writeHeader(Statement stmt, PrintWriter writer, StringBuilder buf) throws SQLException {
+    private void writeHeader(Statement stmt, SqlOutput writer, StringBuilder buf) throws SQLException {
         executeAndWriteLn("-- -----------------------------------------------------------------", null, writer, null);
         executeAndWriteLn("/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;", stmt, writer, buf);
         executeAndWriteLn("/*!40101 SET @OLD_CHARACTER_SET_RESULTS=@@CHARACTER_SET_RESULTS */;", stmt, writer, buf);
@@ -353,87 +959,199 @@ public class DataSourceSynchronizer {
     }
 
 
-    private DatabaseUtil.RowConsumer incrementalUpdateRowConsumer(PrintWriter writer, Statement stmt, StringBuilder buf, String table, Set<String> columns, Set<String> primaryKeyColumn) {
-        return (row, rs) -> update(writer, stmt, buf, table, row, rs, primaryKeyColumn);
+    /**
+     * Inserts new and replaces the values of existing rows with multi-row <code>INSERT ... ON DUPLICATE KEY UPDATE</code>
+     * statements, so a row does not have to be known to be new or modified.
+     */
+    private DatabaseUtil.RowConsumer incrementalUpsertRowConsumer(SqlOutput writer, Statement stmt, StringBuilder buf, RowApplier applier, String table, Set<String> columns) {
+        AnonymizationPlan plan = anonymizationPlan(table, columns);
+        return AnonymizingBatch.of(plan, ROWS_PER_INSERT, (row, anonymized, rs) -> insert(writer, stmt, buf, applier, plan, columns, row, anonymized, rs, true));
     }
 
-    private DatabaseUtil.RowConsumer incrementalNewRowConsumer(PrintWriter writer, Statement stmt, StringBuilder buf, String table, Set<String> columns) {
-        return (row, rs) -> insert(writer, stmt, buf, table, columns, row, rs);
+    private DatabaseUtil.RowConsumer fullLoadRowConsumer(SqlOutput writer, Statement stmt, StringBuilder buf, RowApplier applier, String table, Set<String> columns) {
+        AnonymizationPlan plan = anonymizationPlan(table, columns);
+        return AnonymizingBatch.of(plan, ROWS_PER_INSERT, (row, anonymized, rs) -> {
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("Consuming row " + row);
+            }
+            truncate(writer, stmt, buf, table, rs);
+            insert(writer, stmt, buf, applier, plan, columns, row, anonymized, rs, false);
+        });
     }
 
-    private DatabaseUtil.RowConsumer fullLoadRowConsumer(PrintWriter writer, Statement stmt, StringBuilder buf, String table, Set<String> columns) {
-        return (row, rs) -> {
-            LOGGER.finest("Consuming row " + row);
-            truncate(writer, stmt, buf, table, rs);
-            insert(writer, stmt, buf, table, columns, row, rs);
-        };
+    private RowPipeline<InsertRow> fullLoadPipeline(SqlOutput writer, Statement stmt, StringBuilder buf, RowApplier applier, String table, Set<String> columns) {
+        boolean encode = writer != null || (applier == null && buf != null);
+        AnonymizationPlan plan = anonymizationPlan(table, columns);
+        return new RowPipeline<>(table, pipelineCapacity,
+                next -> AnonymizingBatch.of(plan, ROWS_PER_INSERT, (row, anonymized, rs) -> next.accept(prepareInsert(plan, row, anonymized, encode, applier != null), rs)),
+                (row, rs) -> {
+                    truncate(writer, stmt, buf, table, rs);
+                    insert(writer, stmt, buf, applier, table, columns, row, rs, false);
+                });
     }
 
-    private void truncate(PrintWriter writer, Statement stmt, StringBuilder buf, String table, DatabaseUtil.ResultContext rs) throws SQLException {
+    private void truncate(SqlOutput writer, Statement stmt, StringBuilder buf, String table, DatabaseUtil.ResultContext rs) throws SQLException {
         if (rs.isFirstRow() && rs.isFirstChunk()) {
             executeAndWriteLn("TRUNCATE " + DatabaseUtil.armor(table) + ";", stmt, writer, buf);
         }
     }
 
-    private Map<String, Optional<FieldAnonymizer>> cachedAnonymizers = new ConcurrentHashMap<>();
+    private final Map<String, AnonymizationPlan> anonymizationPlans = new ConcurrentHashMap<>();
 
-    private Optional<FieldAnonymizer> getCachedAnonymizer(String cand) {
-        return cachedAnonymizers.computeIfAbsent(cand, c -> determineAnonymizer(c));
+    /**
+     * Returns the anonymization plan of a table, the plans are usually created with the column metadata in
+     * {@link #createAnonymizationPlans(Map, boolean)}.
+     */
+    private AnonymizationPlan anonymizationPlan(String table, Collection<String> columns) {
+        return anonymizationPlans.computeIfAbsent(table, t -> AnonymizationPlan.create(t, columns, anonymizerMap));
     }
 
-    private Optional<FieldAnonymizer> determineAnonymizer(String c) {
-        Optional<FieldAnonymizer> result = anonymizerMap.entrySet().stream().filter(e -> e.getKey().matcher(c).matches()).findFirst().map(e -> e.getValue());
-        if (result.isPresent()) {
-            LOGGER.info("Determined anonymizer for input " + c + ": " + result);
+    private void createAnonymizationPlans(Map<String, Set<String>> columnsByTable, boolean dryRun) {
+        anonymizationPlans.clear();
+        columnsByTable.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEachOrdered(e -> {
+            AnonymizationPlan plan = anonymizationPlan(e.getKey(), e.getValue());
+            if (dryRun && !anonymizerMap.isEmpty()) {
+                LOGGER.info("Anonymization plan of " + plan);
+            } else if (!plan.isEmpty()) {
+                LOGGER.fine("Anonymization plan of " + plan);
+            }
+        });
+    }
+
+    /**
+     * The anonymized values of an inserted row and their SQL representation in UTF-8.
+     */
+    private static final class InsertRow {
+        private final List<Object> values;
+        private final byte[] tuple;
+
+        private InsertRow(List<Object> values, byte[] tuple) {
+            this.values = values;
+            this.tuple = tuple;
         }
-        return result;
     }
 
-    private Object anonymize(String table, String column, Object value, Map<String, Object> row) {
-        String cand = table + "." + column;
-        return getCachedAnonymizer(cand).map(e -> (Object) e.anonymize(column, value, row)).orElse(value);
+    private final ThreadLocal<SqlValueEncoder> encoders = ThreadLocal.withInitial(SqlValueEncoder::new);
+
+    /**
+     * @param anonymized the values of the anonymized columns by column index if the row was anonymized in a batch
+     */
+    private InsertRow prepareInsert(AnonymizationPlan plan, Map<String, Object> row, Object[] anonymized, boolean encode, boolean collectValues) {
+        SqlValueEncoder encoder = encode ? encoders.get().reset().appendSyntax("  (") : null;
+        List<Object> values = collectValues ? new ArrayList<>(row.size()) : null;
+        if (row instanceof DatabaseUtil.Row) {
+            DatabaseUtil.Row r = (DatabaseUtil.Row) row;
+            boolean indexed = plan.isIndexedLike(r);
+            for (int i = 0; i < r.getColumnCount(); i++) {
+                if (encoder != null && i > 0) {
+                    encoder.appendSyntax(',');
+                }
+                FieldAnonymizer anonymizer = indexed ? plan.get(i) : plan.get(r.getColumnName(i));
+                if (anonymizer != null) {
+                    Object value = anonymized != null ? anonymized[i] : anonymizer.anonymize(r.getColumnName(i), r.get(i), row);
+                    if (encoder != null) {
+                        encoder.appendValue(value);
+                    }
+                    if (values != null) {
+                        values.add(value);
+                    }
+                } else {
+                    if (encoder != null) {
+                        encoder.appendValue(r, i);
+                    }
+                    if (values != null) {
+                        values.add(r.get(i));
+                    }
+                }
+            }
+        } else {
+            boolean first = true;
+            for (Map.Entry<String, Object> e : row.entrySet()) {
+                Object value = plan.anonymize(e.getKey(), e.getValue(), row);
+                if (encoder != null) {
+                    if (!first) {
+                        encoder.appendSyntax(',');
+                    }
+                    encoder.appendValue(value);
+                }
+                first = false;
+                if (values != null) {
+                    values.add(value);
+                }
+            }
+        }
+        return new InsertRow(values, encoder == null ? null : encoder.appendSyntax(')').toByteArray());
     }
 
-    private void update(PrintWriter writer, Statement stmt, StringBuilder buf, String table, Map<String, Object> row, DatabaseUtil.ResultContext rs, Set<String> primaryKeyColumns) throws SQLException {
-        executeAndWriteLn("UPDATE " + DatabaseUtil.armor(table)
-                + " SET " + row.entrySet().stream().filter(e -> !primaryKeyColumns.contains(e.getKey())).map(e -> DatabaseUtil.armor(e.getKey()) + "=" + DatabaseUtil.toValue(anonymize(table, e.getKey(), e.getValue(), row))).collect(joining(","))
-                + " WHERE " + primaryKeyColumns.stream().map(primaryKeyColumn -> DatabaseUtil.armor(primaryKeyColumn) + "=" + DatabaseUtil.toValue(row.get(primaryKeyColumn))).collect(joining(" AND ")) + ";", stmt, writer, buf);
+    private void insert(SqlOutput writer, Statement stmt, StringBuilder buf, RowApplier applier, AnonymizationPlan plan, Set<String> columns, Map<String, Object> row, Object[] anonymized, DatabaseUtil.ResultContext rs, boolean upsert) throws SQLException {
+        insert(writer, stmt, buf, applier, plan.getTable(), columns, prepareInsert(plan, row, anonymized, writer != null || (applier == null && buf != null), applier != null), rs, upsert);
     }
 
-    private void insert(PrintWriter writer, Statement stmt, StringBuilder buf, String table, Set<String> columns, Map<String, Object> row, DatabaseUtil.ResultContext rs) throws SQLException {
+    /**
+     * @param upsert true to replace the values of rows with the same primary or unique key
+     */
+    private void insert(SqlOutput writer, Statement stmt, StringBuilder buf, RowApplier applier, String table, Set<String> columns, InsertRow row, DatabaseUtil.ResultContext rs, boolean upsert) throws SQLException {
+        String end = upsert ? onDuplicateKeyUpdate(columns) + ";" : ";";
+        // with a row applier the generated statements only go to the writer
+        Statement insertStmt = applier == null ? stmt : null;
+        StringBuilder insertBuf = applier == null ? buf : null;
+        // locking and altering the table commit implicitly, so they are not executed if transactions span chunks
+        Statement lockStmt = commitGranularity == CommitGranularity.TABLE ? null : stmt;
+        StringBuilder lockBuf = commitGranularity == CommitGranularity.TABLE ? null : buf;
         if (rs.isFirstRow()) {
-            executeAndWriteLn("LOCK TABLES " + DatabaseUtil.armor(table) + " WRITE;", stmt, writer, buf);
-            executeAndWriteLn("/*!40000 ALTER TABLE " + DatabaseUtil.armor(table) + " DISABLE KEYS */;", stmt, writer, buf);
-            executeAndWriteLn("INSERT " + DatabaseUtil.armor(table) + " (" + columns.stream().map(DatabaseUtil::armor).collect(joining(",")) + ") VALUES ", stmt, writer, buf);
-
+            executeAndWriteLn("LOCK TABLES " + DatabaseUtil.armor(table) + " WRITE;", lockStmt, writer, lockBuf);
+            executeAndWriteLn("/*!40000 ALTER TABLE " + DatabaseUtil.armor(table) + " DISABLE KEYS */;", lockStmt, writer, lockBuf);
+            executeAndWriteLn("INSERT " + DatabaseUtil.armor(table) + " (" + columns.stream().map(DatabaseUtil::armor).collect(joining(",")) + ") VALUES ", insertStmt, writer, insertBuf);
+            if (applier != null) {
+                applier.start(table, columns);
+            }
+        }
+        if (applier != null) {
+            applier.apply(row.values);
+        }
+        if (writer != null || insertBuf != null) {
+            executeAndWrite(row.tuple, insertStmt, writer, insertBuf);
         }
-        executeAndWrite("  (" + row.entrySet().stream()
-                .map(e -> anonymize(table, e.getKey(), e.getValue(), row))
-                .map(DatabaseUtil::toValue)
-                .collect(joining(",")) + ")", stmt, writer, buf);
         if (rs.isLastRow()) {
-            executeAndWriteLn(";", stmt, writer, buf);
-            executeAndWriteLn("/*!40000 ALTER TABLE " + DatabaseUtil.armor(table) + " ENABLE KEYS */;", stmt, writer, buf);
-            executeAndWriteLn("UNLOCK TABLES;", stmt, writer, buf);
-        } else if (rs.getRow() > 1 && (rs.getRow() - 1) % 150 == 0) {
-            executeAndWriteLn(";", stmt, writer, buf);
-            executeAndWriteLn("INSERT " + DatabaseUtil.armor(table) + " (" + columns.stream().map(DatabaseUtil::armor).collect(joining(",")) + ") VALUES ", stmt, writer, buf);
+            executeAndWriteLn(end, insertStmt, writer, insertBuf);
+            if (applier != null) {
+                applier.finish();
+            }
+            // committed before unlocking, as MySQL recommends for transactional tables
+            commitRows(stmt, rs, 0);
+            executeAndWriteLn("/*!40000 ALTER TABLE " + DatabaseUtil.armor(table) + " ENABLE KEYS */;", lockStmt, writer, lockBuf);
+            executeAndWriteLn("UNLOCK TABLES;", lockStmt, writer, lockBuf);
+            if (writer != null) {
+                writer.flush();
+            }
+        } else if (rs.getRow() > 1 && (rs.getRow() - 1) % ROWS_PER_INSERT == 0) {
+            executeAndWriteLn(end, insertStmt, writer, insertBuf);
+            commitRows(stmt, applier, table, columns, rs, rs.getRow() - ROWS_PER_INSERT);
+            executeAndWriteLn("INSERT " + DatabaseUtil.armor(table) + " (" + columns.stream().map(DatabaseUtil::armor).collect(joining(",")) + ") VALUES ", insertStmt, writer, insertBuf);
         } else {
-            executeAndWriteLn(",", stmt, writer, buf);
+            executeAndWriteLn(",", insertStmt, writer, insertBuf);
         }
     }
 
-    private void executeAndWrite(String s, Statement stmt, PrintWriter writer, StringBuilder buf) throws SQLException {
+    static String onDuplicateKeyUpdate(Collection<String> columns) {
+        return " ON DUPLICATE KEY UPDATE " + columns.stream().map(c -> DatabaseUtil.armor(c) + "=VALUES(" + DatabaseUtil.armor(c) + ")").collect(joining(","));
+    }
+
+    private void executeAndWrite(String s, Statement stmt, SqlOutput writer, StringBuilder buf) throws SQLException {
         if (buf != null) {
             buf.append(s.trim());
             if (buf.charAt(buf.length() - 1) == ';') {
-                LOGGER.fine("executing " + buf.toString());
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("executing " + buf);
+                }
                 if (stmt != null) {
                     stmt.executeLargeUpdate(buf.toString());
                 }
                 buf.delete(0, buf.length());
             } else {
-                LOGGER.finer("appending " + s.trim());
+                if (LOGGER.isLoggable(Level.FINER)) {
+                    LOGGER.finer("appending " + s.trim());
+                }
                 buf.append(" ");
             }
         }
@@ -442,40 +1160,72 @@ public class DataSourceSynchronizer {
         }
     }
 
-    private void executeAndWriteLn(String s, Statement stmt, PrintWriter writer, StringBuilder buf) throws SQLException {
+    private void executeAndWrite(byte[] s, Statement stmt, SqlOutput writer, StringBuilder buf) throws SQLException {
+        if (buf != null) {
+            executeAndWrite(new String(s, StandardCharsets.UTF_8), stmt, null, buf);
+        }
+        if (writer != null) {
+            writer.write(s);
+        }
+    }
+
+    private void executeAndWriteLn(String s, Statement stmt, SqlOutput writer, StringBuilder buf) throws SQLException {
         if (buf != null) {
             buf.append(s.trim());
             if (buf.charAt(buf.length() - 1) == ';') {
-                LOGGER.fine("executing " + buf.toString());
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("executing " + buf);
+                }
                 if (stmt != null) {
                     stmt.executeLargeUpdate(buf.toString());
                 }
                 buf.delete(0, buf.length());
             } else {
-                LOGGER.fine("appending " + s.trim());
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("appending " + s.trim());
+                }
                 buf.append(" ");
             }
         }
         if (writer != null) {
             writer.println(s);
-            writer.flush();
         }
     }
 
-    private void loadIncrementally(String sourceSchema, String targetSchema, String table, Set<String> primaryKeys, Set<String> columns, DatabaseUtil.RowConsumer fullRowConsumer, DatabaseUtil.RowConsumer newRowConsumer, DatabaseUtil.RowConsumer modifiedRowConsumer, int maxNumberOfRows) throws SQLException {
-        if (!primaryKeys.isEmpty() && (columns.contains("creationDate") || columns.contains("creation_date")) && (columns.contains("lastModifiedDate") || columns.contains("last_modified_date"))) {
-            final String creationDateColumn = columns.contains("creationDate") ? "creationDate" : "creation_date";
-            final String lastModifiedDateColumn = columns.contains("lastModifiedDate") ? "lastModifiedDate" : "last_modified_date";
-            // TODO: Determine max creation and last modified date in target table -> maxDate
-            Optional<String> maxDate = DatabaseUtil.query(target, "select greatest(ifnull(max(" + DatabaseUtil.armor(lastModifiedDateColumn) + "), '0000-01-01 00:00:00'), ifnull(max(" + DatabaseUtil.armor(creationDateColumn) + "), '0000-01-01 00:00:00')) as maxDate from " + DatabaseUtil.armor(targetSchema) + "." + DatabaseUtil.armor(table)).stream().findAny().map(e -> e.get("maxDate"));
-            if (maxDate.isPresent()) {
-                // TODO: Fetch all entries from the source table with creation date before maxDate and insert them into the target table
-                DatabaseUtil.query(source, "SELECT " + columns.stream().map(DatabaseUtil::armor).collect(joining(", ")) + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table) + " where " + DatabaseUtil.armor(creationDateColumn) + " > '" + maxDate.get() + "'", newRowConsumer, true);
-                // TODO: Fetch all entries from the source table with lastModified date before maxDate
-                DatabaseUtil.query(source, "SELECT " + columns.stream().map(DatabaseUtil::armor).collect(joining(", ")) + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table) + " where " + DatabaseUtil.armor(lastModifiedDateColumn) + " > '" + maxDate.get() + "'", modifiedRowConsumer, true);
+    /**
+     * @return the creation or last modified date the target table is synchronized up to or null if the table was
+     * synchronized completely
+     */
+    private LocalDateTime loadIncrementally(String sourceSchema, String targetSchema, String table, Set<String> primaryKeys, Set<String> columns, DatabaseUtil.RowConsumer fullRowConsumer, DatabaseUtil.RowConsumer changedRowConsumer, int maxNumberOfRows) throws SQLException {
+        String[] watermarkColumns = watermarkColumns(columns);
+        if (!primaryKeys.isEmpty() && watermarkColumns != null) {
+            final String creationDateColumn = watermarkColumns[0];
+            final String lastModifiedDateColumn = watermarkColumns[1];
+            LocalDateTime mark = watermarks == null ? null : watermarks.get(targetSchema, table);
+            if (mark == null) {
+                // scans the target table unless both columns are indexed, only done until a mark has been recorded
+                Optional<String> maxDate = DatabaseUtil.query(target, "select greatest(ifnull(max(" + DatabaseUtil.armor(lastModifiedDateColumn) + "), '1000-01-01 00:00:00'), ifnull(max(" + DatabaseUtil.armor(creationDateColumn) + "), '1000-01-01 00:00:00')) as maxDate from " + DatabaseUtil.armor(targetSchema) + "." + DatabaseUtil.armor(table)).stream().findAny().map(e -> e.get("maxDate"));
+                mark = maxDate.map(WatermarkStore::toDateTime).orElse(null);
+            }
+            if (mark != null) {
+                LocalDateTime from = mark.minusSeconds(watermarkOverlapSeconds);
+                LOGGER.info("Synchronizing rows of " + table + " created or modified after " + from);
+                LocalDateTime[] highWaterMark = {mark};
+                // rows created and modified since are read once and upserted, whether the target has them or not
+                DatabaseUtil.query(source, "SELECT " + columns.stream().map(DatabaseUtil::armor).collect(joining(", ")) + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table)
+                        + " where " + DatabaseUtil.armor(creationDateColumn) + " > ? or " + DatabaseUtil.armor(lastModifiedDateColumn) + " > ?", asList(from, from), (row, rs) -> {
+                    for (String column : watermarkColumns) {
+                        LocalDateTime value = WatermarkStore.toDateTime(row.get(column));
+                        if (value != null && value.isAfter(highWaterMark[0])) {
+                            highWaterMark[0] = value;
+                        }
+                    }
+                    changedRowConsumer.accept(row, rs);
+                }, true);
+                return highWaterMark[0];
             } else {
                 LOGGER.info("Could not determine maximum creation date and last modified date for table " + table + " falling back to full sync");
-                processTable(sourceSchema, table, columns, fullRowConsumer, maxNumberOfRows);
+                processTable(sourceSchema, table, primaryKeys, columns, fullRowConsumer, maxNumberOfRows);
             }
         } else {
             if (primaryKeys.isEmpty()) {
@@ -483,16 +1233,136 @@ public class DataSourceSynchronizer {
             } else {
                 LOGGER.info("Could not determine creation date or last modified date column or no primary key for table " + table + ", falling back to full sync");
             }
-            processTable(sourceSchema, table, columns, fullRowConsumer, maxNumberOfRows);
+            processTable(sourceSchema, table, primaryKeys, columns, fullRowConsumer, maxNumberOfRows);
+        }
+        return null;
+    }
+
+    /**
+     * @return the creation and last modified date columns or null if the table lacks one of them
+     */
+    private static String[] watermarkColumns(Set<String> columns) {
+        if ((columns.contains("creationDate") || columns.contains("creation_date")) && (columns.contains("lastModifiedDate") || columns.contains("last_modified_date"))) {
+            return new String[]{columns.contains("creationDate") ? "creationDate" : "creation_date",
+                    columns.contains("lastModifiedDate") ? "lastModifiedDate" : "last_modified_date"};
+        }
+        return null;
+    }
+
+    /**
+     * Warns about creation and last modified date columns not leading an index of the source table, whose incremental
+     * queries scan the whole table.
+     */
+    private void warnUnindexedWatermarks(String sourceSchema, Map<String, Set<String>> columnsByTable) throws SQLException {
+        Set<String> indexed = DatabaseUtil.query(source, "SELECT TABLE_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.STATISTICS WHERE TABLE_SCHEMA = '" + sourceSchema + "' AND SEQ_IN_INDEX = 1").stream()
+                .map(e -> e.get("TABLE_NAME") + "." + e.get("COLUMN_NAME")).collect(toSet());
+        columnsByTable.forEach((table, columns) -> {
+            String[] watermarkColumns = watermarkColumns(columns);
+            if (watermarkColumns != null) {
+                for (String column : watermarkColumns) {
+                    if (!indexed.contains(table + "." + column)) {
+                        LOGGER.warning("Column " + table + "." + column + " leads no index of the source table, incremental runs scan the whole table");
+                    }
+                }
+            }
+        });
+    }
+
+    private boolean isDiffable(String table, Set<String> primaryKeys, Set<String> columns) {
+        if (primaryKeys.isEmpty() || !columns.containsAll(primaryKeys)) {
+            LOGGER.info("Table " + table + " has no primary key within the synchronized columns, cannot compare checksums");
+            return false;
+        }
+        AnonymizationPlan plan = anonymizationPlan(table, columns);
+        if (primaryKeys.stream().anyMatch(k -> plan.get(k) != null)) {
+            LOGGER.info("Table " + table + " has an anonymized primary key, cannot compare checksums");
+            return false;
         }
+        return true;
     }
 
-    private void processTable(String sourceSchema, String table, Set<String> columns, DatabaseUtil.RowConsumer fullLoadRowConsumer, int maxNumberOfRows) throws SQLException {
-        int startingRow = 0;
-        boolean isFirstChunk = true;
+    /**
+     * Inserts, updates and deletes the rows of the target table that differ from the source table as found by a
+     * {@link RowDiff}, leaf range by leaf range. Changed rows are read and deleted rows deleted in batches of
+     * {@value #ROWS_PER_INSERT} keys.
+     *
+     * @return false without changing the target if the leading primary key column is not integral
+     */
+    private boolean diffIncrementally(String sourceSchema, String targetSchema, String table, Set<String> primaryKeys, Set<String> columns, DatabaseUtil.RowConsumer changedRowConsumer, SqlOutput writer, Statement stmt, StringBuilder buf, int maxNumberOfRows) throws SQLException {
+        AnonymizationPlan plan = anonymizationPlan(table, columns);
+        List<String> hashedColumns = columns.stream().filter(c -> plan.get(c) == null).collect(toList());
+        List<String> keyColumns = new ArrayList<>(primaryKeys);
+        RowDiff diff = new RowDiff(source, sourceSchema, target, targetSchema, table, keyColumns, hashedColumns, maxNumberOfRows);
+        String select = "SELECT " + columns.stream().map(DatabaseUtil::armor).collect(joining(", "))
+                + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table) + " WHERE ";
+        boolean compared = diff.diff((inserted, updated, deleted) -> {
+            List<List<String>> changed = new ArrayList<>(inserted);
+            changed.addAll(updated);
+            for (int i = 0; i < changed.size(); i += ROWS_PER_INSERT) {
+                DatabaseUtil.query(source, select + RowDiff.keyCondition(keyColumns, changed.subList(i, Math.min(changed.size(), i + ROWS_PER_INSERT))), changedRowConsumer, false);
+            }
+            for (int i = 0; i < deleted.size(); i += ROWS_PER_INSERT) {
+                executeAndWriteLn("DELETE FROM " + DatabaseUtil.armor(table) + " WHERE "
+                        + RowDiff.keyCondition(keyColumns, deleted.subList(i, Math.min(deleted.size(), i + ROWS_PER_INSERT))) + ";", stmt, writer, buf);
+            }
+            if (commitGranularity != CommitGranularity.TABLE) {
+                commit(stmt);
+            }
+        });
+        if (!compared) {
+            LOGGER.info("Table " + table + " has a primary key that is not integral, cannot compare checksums of key ranges");
+            return false;
+        }
+        LOGGER.info("Compared checksums of " + table + ": " + diff);
+        return true;
+    }
+
+    private void processTable(String sourceSchema, String table, Set<String> primaryKeys, Set<String> columns, DatabaseUtil.RowConsumer fullLoadRowConsumer, int maxNumberOfRows) throws SQLException {
+        processTable(sourceSchema, table, primaryKeys, columns, fullLoadRowConsumer, maxNumberOfRows, null, null);
+    }
+
+    /**
+     * @param start         the position to continue at when resuming or null to read the table from the start
+     * @param chunkListener notified after every chunk except the last one, may be null
+     */
+    private void processTable(String sourceSchema, String table, Set<String> primaryKeys, Set<String> columns, DatabaseUtil.RowConsumer fullLoadRowConsumer, int maxNumberOfRows, CheckpointJournal.Position start, ChunkListener chunkListener) throws SQLException {
+        if (start == null && chunkReader != null && (parallelChunksPerTable > 1 || plannedRanges.containsKey(table)) && !primaryKeys.isEmpty() && columns.containsAll(primaryKeys)
+                && loadInParallel(sourceSchema, table, primaryKeys, columns, fullLoadRowConsumer, maxNumberOfRows)) {
+            return;
+        }
+        if (keysetPagination && !primaryKeys.isEmpty() && columns.containsAll(primaryKeys)) {
+            KeysetCursor cursor = new KeysetCursor(primaryKeys);
+            DatabaseUtil.RowConsumer trackingRowConsumer = cursor.track(fullLoadRowConsumer);
+            boolean isFirstChunk = true;
+            if (start != null) {
+                if (!start.isKey()) {
+                    throw new IllegalStateException("Cannot resume " + table + " " + start + " with keyset pagination");
+                }
+                cursor.seek(start.getKey());
+                isFirstChunk = false;
+            }
+            while (loadChunk(sourceSchema, table, columns, trackingRowConsumer, cursor, maxNumberOfRows, isFirstChunk) == maxNumberOfRows) {
+                isFirstChunk = false;
+                if (chunkListener != null) {
+                    chunkListener.chunkDone(CheckpointJournal.Position.afterKey(cursor.getLastKey()));
+                }
+            }
+            return;
+        }
+        if (keysetPagination) {
+            LOGGER.info("Table " + table + " has no primary key within the synchronized columns, falling back to offset pagination");
+        }
+        if (start != null && start.isKey()) {
+            throw new IllegalStateException("Cannot resume " + table + " " + start + " without keyset pagination");
+        }
+        int startingRow = start == null ? 0 : (int) start.getRow();
+        boolean isFirstChunk = startingRow == 0;
         while (loadFully(sourceSchema, table, columns, fullLoadRowConsumer, startingRow, maxNumberOfRows, isFirstChunk) > 0) {
             startingRow += maxNumberOfRows;
             isFirstChunk = false;
+            if (chunkListener != null) {
+                chunkListener.chunkDone(CheckpointJournal.Position.atRow(startingRow));
+            }
         }
     }
 
@@ -504,4 +1374,37 @@ public class DataSourceSynchronizer {
                         + " LIMIT " + startingRow + "," + maxNumberOfRows, rowConsumer, isFirstChunk);
     }
 
+    private boolean loadInParallel(String sourceSchema, String table, Set<String> primaryKeys, Set<String> columns, DatabaseUtil.RowConsumer rowConsumer, int maxNumberOfRows) throws SQLException {
+        String keyColumn = primaryKeys.iterator().next();
+        Map<String, String> bounds = DatabaseUtil.query(source, "SELECT min(" + DatabaseUtil.armor(keyColumn) + ") as lo, max(" + DatabaseUtil.armor(keyColumn) + ") as hi, "
+                + "(SELECT TABLE_ROWS FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = " + DatabaseUtil.toValue(sourceSchema) + " AND TABLE_NAME = " + DatabaseUtil.toValue(table) + ") as estimatedRows, "
+                + "(SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = " + DatabaseUtil.toValue(sourceSchema) + " AND TABLE_NAME = " + DatabaseUtil.toValue(table) + " AND COLUMN_NAME = " + DatabaseUtil.toValue(keyColumn) + ") as keyType"
+                + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table)).get(0);
+        long estimatedRows = Optional.ofNullable(bounds.get("estimatedRows")).map(Long::parseLong).orElse(0L);
+        // tables split by the plan are read in ranges of at most a chunk, idle workers read up to a range per planned task ahead
+        int plannedTasks = plannedRanges.getOrDefault(table, 1);
+        long rowsPerRange = Math.max(1, Math.min(maxNumberOfRows, (estimatedRows + plannedTasks - 1) / plannedTasks));
+        List<String> ranges = ParallelChunkReader.splitRange(keyColumn, bounds.get("keyType"), bounds.get("lo"), bounds.get("hi"), estimatedRows, rowsPerRange);
+        if (ranges.size() < 2) {
+            return false;
+        }
+        KeysetCursor cursor = new KeysetCursor(primaryKeys);
+        LOGGER.info("Fetching " + table + " in " + ranges.size() + " key ranges with up to " + Math.max(chunkReader.getParallelismPerTable(), plannedTasks) + " connections");
+        chunkReader.read(ranges.stream().map(range -> "SELECT " + columns.stream().map(DatabaseUtil::armor).collect(joining(", "))
+                + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table)
+                + " WHERE " + range
+                + " ORDER BY " + cursor.orderBy()).collect(toList()), rowConsumer, plannedTasks - 1);
+        return true;
+    }
+
+    private long loadChunk(String sourceSchema, String table, Set<String> columns, DatabaseUtil.RowConsumer rowConsumer, KeysetCursor cursor, int maxNumberOfRows, boolean isFirstChunk) throws SQLException {
+        LOGGER.info("Fetching a maximum of " + maxNumberOfRows + " from " + table + (cursor.isStarted() ? " starting after key " + cursor.getLastKey() : ""));
+        return DatabaseUtil.query(source,
+                "SELECT " + columns.stream().map(DatabaseUtil::armor).collect(joining(", "))
+                        + " FROM " + DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table)
+                        + (cursor.isStarted() ? " WHERE " + cursor.seekCondition() : "")
+                        + " ORDER BY " + cursor.orderBy()
+                        + " LIMIT " + maxNumberOfRows, rowConsumer, isFirstChunk);
+    }
+
 }
@@ -19,7 +19,7 @@ public final class DatabaseUtil {
         /**
          * Performs this operation on the given row and result context.
          *
-         * @param row the row content
+         * @param row the row content, a {@link Row} that is refilled with the next row of the result afterwards
          * @param context the result context
          */
         void accept(Map<String, Object> row, ResultContext context) throws SQLException;
@@ -59,6 +59,235 @@ public final class DatabaseUtil {
         }
     }
 
+    /**
+     * A row of a result set that is refilled for every row instead of being allocated anew. The column metadata is
+     * resolved once per result set; integral and double columns are held in primitive slots, all other values as
+     * objects. Values are accessible by column index and, for compatibility, through the {@link Map} view.
+     * <p>
+     * Consumers that keep a row beyond {@link RowConsumer#accept(Map, ResultContext)} must {@link #copy()} it.
+     */
+    public static final class Row extends AbstractMap<String, Object> {
+        private static final int OBJECT = 0;
+        private static final int LONG = 1;
+        private static final int DOUBLE = 2;
+        private static final int TIMESTAMP = 3;
+        private static final int INT = 4;
+
+        private final String[] names;
+        private final int[] kinds;
+        private final Map<String, Integer> indexes;
+        private final long[] longs;
+        private final double[] doubles;
+        private final Object[] objects;
+        private final boolean[] nulls;
+
+        private Row(ResultSetMetaData md) throws SQLException {
+            int count = md.getColumnCount();
+            this.names = new String[count];
+            this.kinds = new int[count];
+            this.indexes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                names[i] = md.getColumnName(i + 1);
+                indexes.putIfAbsent(names[i], i);
+                switch (md.getColumnType(i + 1)) {
+                    case Types.TINYINT:
+                    case Types.SMALLINT:
+                        kinds[i] = INT;
+                        break;
+                    case Types.INTEGER:
+                        // as getObject, unsigned int values are returned as Long
+                        kinds[i] = md.isSigned(i + 1) ? INT : LONG;
+                        break;
+                    case Types.BIGINT:
+                        kinds[i] = md.isSigned(i + 1) ? LONG : OBJECT;
+                        break;
+                    case Types.DOUBLE:
+                        kinds[i] = DOUBLE;
+                        break;
+                    case Types.TIMESTAMP:
+                        kinds[i] = TIMESTAMP;
+                        break;
+                    default:
+                        kinds[i] = OBJECT;
+                }
+            }
+            this.longs = new long[count];
+            this.doubles = new double[count];
+            this.objects = new Object[count];
+            this.nulls = new boolean[count];
+        }
+
+        private Row(Row template) {
+            this.names = template.names;
+            this.kinds = template.kinds;
+            this.indexes = template.indexes;
+            this.longs = new long[names.length];
+            this.doubles = new double[names.length];
+            this.objects = new Object[names.length];
+            this.nulls = new boolean[names.length];
+        }
+
+        private void read(ResultSet rs) throws SQLException {
+            for (int i = 0; i < names.length; i++) {
+                switch (kinds[i]) {
+                    case INT:
+                    case LONG:
+                        longs[i] = rs.getLong(i + 1);
+                        nulls[i] = rs.wasNull();
+                        break;
+                    case DOUBLE:
+                        doubles[i] = rs.getDouble(i + 1);
+                        nulls[i] = rs.wasNull();
+                        break;
+                    case TIMESTAMP:
+                        Timestamp timestamp = rs.getTimestamp(i + 1);
+                        objects[i] = timestamp == null ? null : new Timestamp(timestamp.getTime() - TimeZone.getDefault().getOffset(timestamp.getTime()));
+                        nulls[i] = timestamp == null;
+                        break;
+                    default:
+                        objects[i] = rs.getObject(i + 1);
+                        nulls[i] = objects[i] == null;
+                }
+            }
+        }
+
+        public int getColumnCount() {
+            return names.length;
+        }
+
+        public String getColumnName(int index) {
+            return names[index];
+        }
+
+        /**
+         * @return the index of the column or -1 if there is no such column
+         */
+        public int indexOf(String column) {
+            Integer index = indexes.get(column);
+            return index == null ? -1 : index;
+        }
+
+        public boolean isNull(int index) {
+            return nulls[index];
+        }
+
+        /**
+         * @return true if the value of the column is read as a primitive, returned as Integer or Long by get
+         */
+        public boolean isLong(int index) {
+            return kinds[index] == LONG || kinds[index] == INT;
+        }
+
+        public boolean isDouble(int index) {
+            return kinds[index] == DOUBLE;
+        }
+
+        public long getLong(int index) {
+            return longs[index];
+        }
+
+        public double getDouble(int index) {
+            return doubles[index];
+        }
+
+        public Object get(int index) {
+            if (nulls[index]) {
+                return null;
+            }
+            switch (kinds[index]) {
+                case INT:
+                    return (int) longs[index];
+                case LONG:
+                    return longs[index];
+                case DOUBLE:
+                    return doubles[index];
+                default:
+                    return objects[index];
+            }
+        }
+
+        /**
+         * @return a copy of this row that is not affected by reading further rows
+         */
+        public Row copy() {
+            Row result = new Row(this);
+            copyTo(result);
+            return result;
+        }
+
+        /**
+         * @return true if the other row has the same columns of the same types, e.g. because it is a copy of this row
+         */
+        public boolean hasSameColumns(Row other) {
+            return other.names == names || (Arrays.equals(other.names, names) && Arrays.equals(other.kinds, kinds));
+        }
+
+        /**
+         * Copies the values of this row into a row of the same columns.
+         *
+         * @return false if the other row has different columns
+         */
+        public boolean copyTo(Row other) {
+            if (!hasSameColumns(other)) {
+                return false;
+            }
+            System.arraycopy(longs, 0, other.longs, 0, names.length);
+            System.arraycopy(doubles, 0, other.doubles, 0, names.length);
+            System.arraycopy(objects, 0, other.objects, 0, names.length);
+            System.arraycopy(nulls, 0, other.nulls, 0, names.length);
+            return true;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer index = indexes.get(key);
+            // unboxed, get(index) would resolve to this method again
+            return index == null ? null : get(index.intValue());
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexes.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (index >= names.length) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> result = new SimpleImmutableEntry<>(names[index], get(index));
+                            index++;
+                            return result;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+    }
+
     private static final Logger LOGGER = Logger.getLogger(DatabaseUtil.class.getName());
 
     private DatabaseUtil() {
@@ -80,34 +309,38 @@ public final class DatabaseUtil {
     private static long query(Connection connection, String query, RowConsumer rowConsumer, boolean isFirstChunk) throws SQLException {
         try (Statement stmt = connection.createStatement(TYPE_FORWARD_ONLY,
                 CONCUR_READ_ONLY)) {
-            int count = 0;
             LOGGER.fine(format("Query: %s", query));
             stmt.setFetchSize(Integer.MIN_VALUE);
-            ResultSet rs = stmt.executeQuery(query);
-            ResultSetMetaData md = rs.getMetaData();
-            if (rs.next()) {
-                boolean hasNext;
-                do {
-                    Map<String, Object> row = new LinkedHashMap<>();
-                    for (int i = 1; i <= md.getColumnCount(); i++) {
-                        if (md.getColumnType(i) == Types.TIMESTAMP) {
-                            Timestamp timestamp = rs.getTimestamp(i);
-                            row.put(md.getColumnName(i), Optional.ofNullable(timestamp).map(t ->
-                                    new Timestamp(t.getTime() - TimeZone.getDefault().getOffset(t.getTime()))).orElse(null));
-                        } else {
-                            row.put(md.getColumnName(i),
-                                    rs.getObject(md.getColumnName(i)));
-                        }
-                    }
+            return consume(stmt.executeQuery(query), rowConsumer, isFirstChunk);
+        }
+    }
 
-                    boolean isFirst = rs.isFirst();
-                    hasNext = rs.next();
-                    rowConsumer.accept(row, new ResultContext(isFirst, !hasNext, count, isFirstChunk));
-                    count++;
-                } while (hasNext);
+    private static long query(Connection connection, String query, List<?> parameters, RowConsumer rowConsumer, boolean isFirstChunk) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(query, TYPE_FORWARD_ONLY,
+                CONCUR_READ_ONLY)) {
+            LOGGER.fine(format("Query: %s with %s", query, parameters));
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
             }
-            return count;
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            return consume(stmt.executeQuery(), rowConsumer, isFirstChunk);
+        }
+    }
+
+    private static long consume(ResultSet rs, RowConsumer rowConsumer, boolean isFirstChunk) throws SQLException {
+        int count = 0;
+        Row row = new Row(rs.getMetaData());
+        if (rs.next()) {
+            boolean hasNext;
+            do {
+                row.read(rs);
+                boolean isFirst = rs.isFirst();
+                hasNext = rs.next();
+                rowConsumer.accept(row, new ResultContext(isFirst, !hasNext, count, isFirstChunk));
+                count++;
+            } while (hasNext);
         }
+        return count;
     }
 
     private static List<Map<String, String>> query(Connection connection, String query) {
@@ -146,6 +379,18 @@ public final class DatabaseUtil {
         }
     }
 
+    /**
+     * Queries with a prepared statement, binding the parameters with their Java types, e.g. a
+     * {@link java.time.LocalDateTime} as a date-time without time zone conversion.
+     */
+    public static long query(DataSource dataSource, String query, List<?> parameters, RowConsumer rowConsumer, Boolean isFirstChunk) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            return query(connection, query, parameters, rowConsumer, isFirstChunk);
+        }
+    }
+
     public static long update(DataSource dataSource, String updateQuery) throws SQLException {
         try (Connection connection = dataSource.getConnection()) {
             connection.setAutoCommit(false);
@@ -174,13 +419,35 @@ public final class DatabaseUtil {
         if (input instanceof String
                 || input instanceof Timestamp
                 || input instanceof Date) {
-            return "'" + input.toString().replace("'", "''").replace("\\", "\\\\") + "'";
+            return quote(input.toString());
         }
         if (input instanceof byte[]) {
             return "X'" + bytesToHex((byte[])input) + "'";
         }
         LOGGER.warning("No explicit mapping for value type " + input.getClass());
-        return "'" + input.toString().replace("'", "''").replace("\\", "\\\\") + "'";
+        return quote(input.toString());
+    }
+
+    private static String quote(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 8).append('\'');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\'' || c == '\\') {
+                result.append(c);
+            }
+            result.append(c);
+        }
+        return result.append('\'').toString();
+    }
+
+    private static final Set<String> INTEGRAL_TYPES = new HashSet<>(Arrays.asList("tinyint", "smallint", "mediumint", "int", "bigint"));
+
+    /**
+     * @param dataType the <code>DATA_TYPE</code> of a column in <code>INFORMATION_SCHEMA.COLUMNS</code>
+     * @return true if the column holds integers, unlike character columns with values that look like numbers
+     */
+    public static boolean isIntegral(String dataType) {
+        return dataType != null && INTEGRAL_TYPES.contains(dataType.toLowerCase());
     }
 
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
@@ -0,0 +1,99 @@
+package de.kune.mysqlsync;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Remembers the primary key of the last row consumed from a table so that the next chunk can seek directly behind
+ * it instead of skipping all previously read rows with an offset.
+ */
+class KeysetCursor {
+
+    private final List<String> keyColumns;
+    private List<String> lastKey;
+
+    KeysetCursor(Collection<String> keyColumns) {
+        this.keyColumns = new ArrayList<>(keyColumns);
+    }
+
+    List<String> getKeyColumns() {
+        return keyColumns;
+    }
+
+    /**
+     * @return the SQL literals of the key of the last consumed row
+     */
+    List<String> getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * Continues behind a key remembered by an earlier cursor.
+     *
+     * @param lastKey the SQL literals of the key, none of them NULL
+     */
+    void seek(List<String> lastKey) {
+        if (lastKey.size() != keyColumns.size()) {
+            throw new IllegalArgumentException("Key " + lastKey + " does not match the key columns " + keyColumns);
+        }
+        if (lastKey.contains(null)) {
+            // no row compares greater than NULL, the next chunk would be empty
+            throw new IllegalArgumentException("Key " + lastKey + " of the columns " + keyColumns + " has a NULL value");
+        }
+        this.lastKey = new ArrayList<>(lastKey);
+    }
+
+    boolean isStarted() {
+        return lastKey != null;
+    }
+
+    /**
+     * Wraps a row consumer so that the key of every consumed row is remembered.
+     *
+     * @param rowConsumer the row consumer to wrap
+     * @return the tracking row consumer
+     */
+    DatabaseUtil.RowConsumer track(DatabaseUtil.RowConsumer rowConsumer) {
+        return (row, context) -> {
+            rowConsumer.accept(row, context);
+            if (context.isLastRow()) {
+                List<String> key = new ArrayList<>(keyColumns.size());
+                for (String keyColumn : keyColumns) {
+                    key.add(DatabaseUtil.toValue(row.get(keyColumn)));
+                }
+                seek(key);
+            }
+        };
+    }
+
+    /**
+     * Creates a condition selecting all rows behind the last consumed key, e.g.
+     * <code>a >= 1 AND (a > 1 OR (a = 1 AND b > 2))</code> for a composite key (a, b).
+     *
+     * @return the seek condition or null if no row has been consumed yet
+     */
+    String seekCondition() {
+        if (lastKey == null) {
+            return null;
+        }
+        List<String> alternatives = new ArrayList<>();
+        for (int i = 0; i < keyColumns.size(); i++) {
+            StringBuilder alternative = new StringBuilder();
+            for (int j = 0; j < i; j++) {
+                alternative.append(DatabaseUtil.armor(keyColumns.get(j))).append(" = ").append(lastKey.get(j)).append(" AND ");
+            }
+            alternative.append(DatabaseUtil.armor(keyColumns.get(i))).append(" > ").append(lastKey.get(i));
+            alternatives.add(alternatives.isEmpty() ? alternative.toString() : "(" + alternative + ")");
+        }
+        String leading = DatabaseUtil.armor(keyColumns.get(0)) + " >= " + lastKey.get(0);
+        return keyColumns.size() == 1 ? alternatives.get(0) : leading + " AND (" + String.join(" OR ", alternatives) + ")";
+    }
+
+    String orderBy() {
+        return keyColumns.stream().map(DatabaseUtil::armor).collect(joining(", "));
+    }
+
+}
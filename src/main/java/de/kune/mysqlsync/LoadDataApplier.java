@@ -0,0 +1,197 @@
+package de.kune.mysqlsync;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Streams the rows of each chunk as tab separated values into <code>LOAD DATA LOCAL INFILE</code> using the
+ * Connector/J local infile input stream hook. The rows are written to a pipe that is read by a loader thread
+ * executing the statement, so no temporary file is needed.
+ * <p>
+ * The target connection must allow local infile loading (<code>allowLoadLocalInfile=true</code>).
+ */
+class LoadDataApplier implements RowApplier {
+
+    private static final Logger LOGGER = Logger.getLogger(LoadDataApplier.class.getName());
+    private static final int PIPE_SIZE = 1 << 20;
+
+    private final Connection connection;
+    private PipedOutputStream pipe;
+    private OutputStream out;
+    private Thread loader;
+    private volatile Exception failure;
+    private volatile boolean aborted;
+
+    LoadDataApplier(Connection connection) {
+        this.connection = connection;
+    }
+
+    @Override
+    public void start(String table, Collection<String> columns) throws SQLException {
+        finish();
+        String sql = "LOAD DATA LOCAL INFILE 'stream' INTO TABLE " + DatabaseUtil.armor(table)
+                + " CHARACTER SET utf8mb4"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+                + " (" + columns.stream().map(DatabaseUtil::armor).collect(joining(",")) + ")";
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        try {
+            pipe = new PipedOutputStream(in);
+            out = new BufferedOutputStream(pipe, PIPE_SIZE);
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        Statement statement = connection.createStatement();
+        // an aborted load fails instead of ending with the rows sent so far
+        statement.unwrap(JdbcStatement.class).setLocalInfileInputStream(new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                return checkAborted(super.read());
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return checkAborted(super.read(b, off, len));
+            }
+        });
+        failure = null;
+        aborted = false;
+        loader = new Thread(() -> {
+            try {
+                LOGGER.fine("executing " + sql);
+                long rows = statement.executeLargeUpdate(sql);
+                LOGGER.fine("loaded " + rows + " rows into " + table);
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                try {
+                    statement.close();
+                    in.close();
+                } catch (IOException | SQLException e) {
+                    LOGGER.warning("Could not close loader of " + table + ": " + e);
+                }
+            }
+        }, "load-data-" + table);
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    @Override
+    public void apply(List<Object> values) throws SQLException {
+        try {
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    out.write('\t');
+                }
+                write(values.get(i));
+            }
+            out.write('\n');
+        } catch (IOException e) {
+            throw failure != null ? new SQLException(failure) : new SQLException(e);
+        }
+    }
+
+    private void write(Object value) throws IOException {
+        if (value == null) {
+            out.write('\\');
+            out.write('N');
+        } else if (value instanceof byte[]) {
+            escape((byte[]) value);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? '1' : '0');
+        } else {
+            escape(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void escape(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            switch (b) {
+                case '\\': out.write('\\'); out.write('\\'); break;
+                case '\t': out.write('\\'); out.write('t'); break;
+                case '\n': out.write('\\'); out.write('n'); break;
+                case '\r': out.write('\\'); out.write('r'); break;
+                case 0: out.write('\\'); out.write('0'); break;
+                default: out.write(b);
+            }
+        }
+    }
+
+    private int checkAborted(int read) throws IOException {
+        if (aborted) {
+            throw new IOException("Load aborted");
+        }
+        return read;
+    }
+
+    @Override
+    public void flush() {
+        // rows are sent to the loader continuously, the load completes in finish()
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        if (loader == null) {
+            return;
+        }
+        try {
+            out.close();
+            loader.join();
+        } catch (IOException e) {
+            if (failure == null) {
+                throw new SQLException(e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } finally {
+            loader = null;
+            pipe = null;
+            out = null;
+        }
+        if (failure != null) {
+            throw failure instanceof SQLException ? (SQLException) failure : new SQLException(failure);
+        }
+    }
+
+    /**
+     * Aborts a load that has not been finished, which only happens if the chunk failed. The rows sent so far are not
+     * loaded, the caller rolls back the transaction.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (loader == null) {
+            return;
+        }
+        aborted = true;
+        try {
+            // without flushing the buffered rows
+            pipe.close();
+            loader.join();
+        } catch (IOException e) {
+            LOGGER.warning("Could not abort the load: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } finally {
+            loader = null;
+            pipe = null;
+            out = null;
+        }
+        LOGGER.fine("Aborted load: " + failure);
+    }
+}
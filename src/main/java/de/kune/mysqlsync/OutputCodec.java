@@ -0,0 +1,104 @@
+package de.kune.mysqlsync;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression formats of output files.
+ */
+public enum OutputCodec {
+
+    /**
+     * gzip, compressed as multi-member file by several threads if configured; levels 1 to 9.
+     */
+    GZIP(".gz", 6) {
+        @Override
+        OutputStream open(OutputStream out, int level, int threads, int longWindowLog) throws IOException {
+            if (threads > 1) {
+                return new ParallelGzipOutputStream(out, threads, level);
+            }
+            return new GZIPOutputStream(out) {{
+                def.setLevel(level);
+            }};
+        }
+    },
+
+    /**
+     * Zstandard, using the bundled native library with its own worker threads; levels 1 to 22, negative levels
+     * trade ratio for speed.
+     */
+    ZSTD(".zst", 3) {
+        @Override
+        OutputStream open(OutputStream out, int level, int threads, int longWindowLog) throws IOException {
+            ZstdOutputStream result = new ZstdOutputStream(out, level);
+            result.setChecksum(true);
+            if (threads > 1) {
+                result.setWorkers(threads);
+            }
+            if (longWindowLog > 0) {
+                result.setLong(longWindowLog);
+            }
+            return result;
+        }
+    },
+
+    /**
+     * LZ4 frame format; level 1 and 2 use the fast compressor, levels 3 to 17 the high compressor.
+     */
+    LZ4(".lz4", 1) {
+        @Override
+        OutputStream open(OutputStream out, int level, int threads, int longWindowLog) throws IOException {
+            LZ4Factory factory = LZ4Factory.fastestInstance();
+            return new LZ4FrameOutputStream(out, LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB, -1L,
+                    level < 3 ? factory.fastCompressor() : factory.highCompressor(level),
+                    XXHashFactory.fastestInstance().hash32(), LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE,
+                    LZ4FrameOutputStream.FLG.Bits.CONTENT_CHECKSUM);
+        }
+    };
+
+    /**
+     * The level a codec uses if no level is configured.
+     */
+    public static final int DEFAULT_LEVEL = Integer.MIN_VALUE;
+
+    private final String extension;
+    private final int defaultLevel;
+
+    OutputCodec(String extension, int defaultLevel) {
+        this.extension = extension;
+        this.defaultLevel = defaultLevel;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public int getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    /**
+     * Wraps a file output stream in a compressing stream.
+     *
+     * @param out           the stream to write the compressed data to, closed when the result is closed
+     * @param level         the compression level or {@link #DEFAULT_LEVEL}
+     * @param threads       the number of compression threads, ignored by codecs without multi-threading
+     * @param longWindowLog the base 2 logarithm of the zstd long distance matching window, 0 to disable it
+     * @return the compressing stream
+     */
+    OutputStream wrap(OutputStream out, int level, int threads, int longWindowLog) throws IOException {
+        return open(out, level == DEFAULT_LEVEL ? defaultLevel : level, threads, longWindowLog);
+    }
+
+    abstract OutputStream open(OutputStream out, int level, int threads, int longWindowLog) throws IOException;
+
+    public static OutputCodec forName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
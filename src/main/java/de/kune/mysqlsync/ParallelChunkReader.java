@@ -0,0 +1,276 @@
+package de.kune.mysqlsync;
+
+import javax.sql.DataSource;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Reads the primary key ranges of a single table concurrently over several source connections and hands the rows to
+ * one row consumer in key order.
+ * <p>
+ * The calling thread reads the ranges in order itself. Helper threads claim the ranges ahead of it and buffer them in
+ * memory until the calling thread gets there; at most <code>parallelismPerTable - 1</code> ranges are buffered per
+ * table. The number of helper connections of all tables together is limited to <code>maxParallelism</code>.
+ * <p>
+ * Threads of the caller without work of their own may steal ranges of tables split by the {@link TablePlanner} the same
+ * way.
+ */
+class ParallelChunkReader implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelChunkReader.class.getName());
+
+    private static final Object END = new Object();
+
+    /**
+     * The max number of ranges a table is split into, whatever its estimated number of rows.
+     */
+    static final int MAX_RANGES = 10_000;
+
+    private final DataSource source;
+    private final int parallelismPerTable;
+    private final Semaphore connectionPermits;
+    private final ExecutorService executor;
+    private final Set<RangeRead> stealable = ConcurrentHashMap.newKeySet();
+
+    ParallelChunkReader(DataSource source, int parallelismPerTable, int maxParallelism) {
+        this.source = source;
+        this.parallelismPerTable = parallelismPerTable;
+        this.connectionPermits = new Semaphore(Math.max(1, maxParallelism));
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "chunk-reader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    int getParallelismPerTable() {
+        return parallelismPerTable;
+    }
+
+    private static class Entry {
+        private final Map<String, Object> row;
+        private final DatabaseUtil.ResultContext context;
+
+        private Entry(Map<String, Object> row, DatabaseUtil.ResultContext context) {
+            this.row = row;
+            this.context = context;
+        }
+    }
+
+    private static class Failure {
+        private final Exception exception;
+
+        private Failure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * The ranges of a table being read. Ranges are claimed by the calling thread, which reads them in order, or by
+     * helper and stealing threads, which buffer them until the calling thread gets there.
+     */
+    private final class RangeRead {
+        private final List<String> queries;
+        private final AtomicReferenceArray<LinkedBlockingQueue<Object>> claims;
+        private final AtomicInteger nextRange = new AtomicInteger();
+        private final Semaphore window;
+        private final AtomicBoolean aborted = new AtomicBoolean();
+
+        private RangeRead(List<String> queries, int window) {
+            this.queries = queries;
+            this.claims = new AtomicReferenceArray<>(queries.size());
+            this.window = new Semaphore(window);
+        }
+
+        /**
+         * Claims and buffers the next range not claimed yet, holding a permit of the window.
+         *
+         * @return false if there is no range left, the permit has been released then
+         */
+        private boolean fetchNext() {
+            while (true) {
+                int range = nextRange.getAndIncrement();
+                if (aborted.get() || range >= queries.size()) {
+                    window.release();
+                    return false;
+                }
+                LinkedBlockingQueue<Object> buffer = new LinkedBlockingQueue<>();
+                if (!claims.compareAndSet(range, null, buffer)) {
+                    continue;
+                }
+                try {
+                    connectionPermits.acquire();
+                    try {
+                        DatabaseUtil.query(source, queries.get(range), (row, context) -> buffer.add(new Entry(row instanceof DatabaseUtil.Row ? ((DatabaseUtil.Row) row).copy() : row, context)), false);
+                    } finally {
+                        connectionPermits.release();
+                    }
+                    buffer.add(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    buffer.add(new Failure(e));
+                } catch (Exception e) {
+                    buffer.add(new Failure(e));
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads all ranges and passes their rows to the row consumer, range by range.
+     *
+     * @param queries     one query per range, in the order the rows are to be consumed
+     * @param rowConsumer the row consumer, only called from the calling thread
+     * @return the number of consumed rows
+     */
+    long read(List<String> queries, DatabaseUtil.RowConsumer rowConsumer) throws SQLException {
+        return read(queries, rowConsumer, 0);
+    }
+
+    /**
+     * Reads all ranges and passes their rows to the row consumer, range by range, offering the ranges to idle threads
+     * calling {@link #steal()}.
+     *
+     * @param stealWindow the max number of ranges stolen ahead of the calling thread
+     */
+    long read(List<String> queries, DatabaseUtil.RowConsumer rowConsumer, int stealWindow) throws SQLException {
+        int helpers = Math.min(parallelismPerTable - 1, queries.size() - 1);
+        RangeRead read = new RangeRead(queries, Math.max(0, Math.max(helpers, Math.min(stealWindow, queries.size() - 1))));
+        LinkedBlockingQueue<Object> claimedByCaller = new LinkedBlockingQueue<>();
+        for (int h = 0; h < helpers; h++) {
+            executor.execute(() -> {
+                while (true) {
+                    try {
+                        read.window.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (!read.fetchNext()) {
+                        return;
+                    }
+                }
+            });
+        }
+        if (stealWindow > 0) {
+            stealable.add(read);
+        }
+        long[] count = new long[1];
+        try {
+            for (int range = 0; range < queries.size(); range++) {
+                DatabaseUtil.RowConsumer counting = (row, context) -> {
+                    rowConsumer.accept(row, new DatabaseUtil.ResultContext(context.isFirstRow(), context.isLastRow(), (int) context.getRow(), count[0] == 0));
+                    count[0]++;
+                };
+                if (read.claims.compareAndSet(range, null, claimedByCaller)) {
+                    LOGGER.fine("Reading range " + range + " of " + queries.size());
+                    DatabaseUtil.query(source, queries.get(range), counting, false);
+                } else {
+                    LOGGER.fine("Draining prefetched range " + range + " of " + queries.size());
+                    drain(read.claims.get(range), counting);
+                    read.window.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } finally {
+            stealable.remove(read);
+            read.aborted.set(true);
+            read.window.release(queries.size());
+        }
+        return count[0];
+    }
+
+    /**
+     * Reads ahead a range of a table being read, for a thread that has nothing else to do.
+     *
+     * @return false if no table has a range to read ahead
+     */
+    boolean steal() {
+        for (RangeRead read : stealable) {
+            if (read.window.tryAcquire()) {
+                if (read.fetchNext()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void drain(LinkedBlockingQueue<Object> buffer, DatabaseUtil.RowConsumer rowConsumer) throws SQLException, InterruptedException {
+        while (true) {
+            Object next = buffer.take();
+            if (next == END) {
+                return;
+            }
+            if (next instanceof Failure) {
+                Exception exception = ((Failure) next).exception;
+                throw exception instanceof SQLException ? (SQLException) exception : new SQLException(exception);
+            }
+            Entry entry = (Entry) next;
+            rowConsumer.accept(entry.row, entry.context);
+        }
+    }
+
+    /**
+     * Splits the range of an integral key column into ranges covering about <code>rowsPerRange</code> rows each, at most
+     * {@link #MAX_RANGES} and one per key. The last range is open ended.
+     *
+     * @param keyType the data type of the key column, see {@link DatabaseUtil#isIntegral(String)}
+     * @return the conditions selecting each range or an empty list if the key column is not integral or empty
+     */
+    static List<String> splitRange(String keyColumn, String keyType, String minimum, String maximum, long estimatedRows, long rowsPerRange) {
+        List<String> result = new ArrayList<>();
+        // character keys compare as strings, even if their values look like numbers
+        if (!DatabaseUtil.isIntegral(keyType) || minimum == null || maximum == null) {
+            return result;
+        }
+        BigInteger min = new BigInteger(minimum);
+        BigInteger max = new BigInteger(maximum);
+        // the span of signed or unsigned BIGINT keys may exceed a long
+        BigInteger keys = max.subtract(min).add(BigInteger.ONE);
+        if (keys.signum() <= 0) {
+            return result;
+        }
+        rowsPerRange = Math.max(1, rowsPerRange);
+        long ranges = Math.min(MAX_RANGES, Math.max(1, estimatedRows / rowsPerRange + (estimatedRows % rowsPerRange == 0 ? 0 : 1)));
+        ranges = keys.min(BigInteger.valueOf(ranges)).longValue();
+        BigInteger[] division = keys.divideAndRemainder(BigInteger.valueOf(ranges));
+        BigInteger width = division[1].signum() == 0 ? division[0] : division[0].add(BigInteger.ONE);
+        String column = DatabaseUtil.armor(keyColumn);
+        for (BigInteger from = min; from.compareTo(max) <= 0; from = from.add(width)) {
+            BigInteger to = from.add(width);
+            result.add(to.compareTo(max) > 0
+                    ? column + " >= " + from
+                    : column + " >= " + from + " AND " + column + " < " + to);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
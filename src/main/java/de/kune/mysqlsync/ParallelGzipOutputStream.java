@@ -0,0 +1,190 @@
+package de.kune.mysqlsync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses blocks of the written data on an executor and writes them in order as a multi-member gzip stream, as
+ * pigz does. Each block becomes a complete gzip member, so the output can be read by <code>gunzip</code>,
+ * <code>zcat</code> and {@link java.util.zip.GZIPInputStream}. Members do not share a dictionary, which costs a little
+ * compression ratio at block boundaries.
+ * <p>
+ * At most twice as many blocks as there are compression threads are kept in memory. Instances are not thread safe.
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int level;
+    private final int maxPending;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int length;
+    private long members;
+    private boolean closed;
+
+    ParallelGzipOutputStream(OutputStream out, int threads, int level) {
+        this(out, threads, level, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out       the stream to write the compressed members to, closed when this stream is closed
+     * @param threads   the number of compression threads
+     * @param level     the deflate level from 0 to 9, or -1 for the default level
+     * @param blockSize the number of uncompressed bytes per member
+     */
+    ParallelGzipOutputStream(OutputStream out, int threads, int level, int blockSize) {
+        if (level < -1 || level > 9) {
+            throw new IllegalArgumentException("invalid compression level " + level);
+        }
+        this.out = out;
+        this.level = level;
+        this.maxPending = Math.max(1, threads) * 2;
+        this.block = new byte[blockSize];
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "gzip-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) {
+            submit();
+        }
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == block.length) {
+                submit();
+            }
+            int n = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void submit() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return;
+        }
+        byte[] data = block;
+        int size = length;
+        pending.add(executor.submit(() -> compress(data, size)));
+        members++;
+        block = new byte[data.length];
+        length = 0;
+        while (pending.size() >= maxPending) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.poll().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private byte[] compress(byte[] data, int size) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(size / 2 + 64);
+        member.write(HEADER, 0, HEADER.length);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, size);
+            deflater.finish();
+            byte[] buffer = new byte[Math.min(size + 64, 64 * 1024)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                member.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, size);
+        writeIntLE(member, (int) crc.getValue());
+        writeIntLE(member, size);
+        return member.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    /**
+     * Writes the members compressed so far. Like {@link java.util.zip.GZIPOutputStream} without sync flush, data of
+     * the current block is kept until the block is full or the stream is finished, so frequent flushes do not split
+     * the output into tiny members.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the buffered data and writes all pending members without closing the underlying stream.
+     */
+    void finish() throws IOException {
+        if (members == 0 && length == 0) {
+            // an empty gzip file still needs one member
+            out.write(compress(block, 0));
+            members++;
+        }
+        submit();
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            pending.forEach(f -> f.cancel(true));
+            pending.clear();
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+}
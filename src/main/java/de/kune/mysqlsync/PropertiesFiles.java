@@ -0,0 +1,38 @@
+package de.kune.mysqlsync;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Local state files in properties format.
+ */
+final class PropertiesFiles {
+
+    private PropertiesFiles() {
+    }
+
+    /**
+     * Writes the properties to a temporary file next to the file, syncs it to the storage device and moves it over the
+     * file atomically, so readers and later runs find either the old or the new content, even after a crash.
+     *
+     * @param comment the comment written at the top of the file
+     * @param what    what the file contains, for the error message
+     */
+    static void storeAtomically(Path file, Properties properties, String comment, String what) {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                properties.store(out, comment);
+                out.getFD().sync();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + what + " " + file, e);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package de.kune.mysqlsync;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Applies inserted rows to the target database directly instead of executing the generated INSERT statements.
+ * The LOCK TABLES and DISABLE KEYS statements around each chunk are still executed as statements.
+ */
+interface RowApplier extends AutoCloseable {
+
+    /**
+     * Called for the first row of each chunk once the table has been locked.
+     *
+     * @param table   the target table
+     * @param columns the inserted columns in the order of the values passed to {@link #apply(List)}
+     */
+    void start(String table, Collection<String> columns) throws SQLException;
+
+    /**
+     * Applies the (anonymized) values of one row.
+     *
+     * @param values the column values
+     */
+    void apply(List<Object> values) throws SQLException;
+
+    /**
+     * Sends all pending rows to the target database.
+     */
+    void flush() throws SQLException;
+
+    /**
+     * Called after the last row of each chunk, before the table is unlocked.
+     */
+    default void finish() throws SQLException {
+        flush();
+    }
+
+    @Override
+    void close() throws SQLException;
+
+}
@@ -0,0 +1,173 @@
+package de.kune.mysqlsync;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Finds the rows that differ between a source and a target table by comparing checksums instead of rows.
+ * <p>
+ * The checksum of a key range is the number of rows and the sum of 64 bit MD5 hashes of the rows, computed by both
+ * databases. Ranges of the leading primary key column with different checksums are halved until they hold at most a
+ * leaf's number of rows; the keys and row hashes of those ranges are compared to find the inserted, updated and deleted
+ * rows. Only ranges that differ are transferred, so unchanged tables cost two aggregate queries.
+ * <p>
+ * Hashed columns must hold the same values in source and target: anonymized columns are left out, so changes only
+ * affecting them are not found. The leading primary key column must have an integer type, other keys cannot be halved
+ * into leaves of bounded size.
+ */
+final class RowDiff {
+
+    /**
+     * Receives the differences of a leaf range, as SQL literals of the primary keys.
+     */
+    @FunctionalInterface
+    interface Listener {
+        void changed(List<List<String>> inserted, List<List<String>> updated, List<List<String>> deleted) throws SQLException;
+    }
+
+    private final DataSource source, target;
+    private final String sourceSchema, table;
+    private final String sourceTable, targetTable;
+    private final List<String> keyColumns;
+    private final String rowHash;
+    private final long leafRows;
+    private long comparedRanges, comparedLeaves, inserted, updated, deleted;
+
+    /**
+     * @param hashedColumns the columns compared besides the primary key
+     * @param leafRows      the max number of rows of a range whose rows are compared
+     */
+    RowDiff(DataSource source, String sourceSchema, DataSource target, String targetSchema, String table, Collection<String> keyColumns, Collection<String> hashedColumns, long leafRows) {
+        this.source = source;
+        this.target = target;
+        this.sourceSchema = sourceSchema;
+        this.table = table;
+        this.sourceTable = DatabaseUtil.armor(sourceSchema) + "." + DatabaseUtil.armor(table);
+        this.targetTable = DatabaseUtil.armor(targetSchema) + "." + DatabaseUtil.armor(table);
+        this.keyColumns = new ArrayList<>(keyColumns);
+        List<String> columns = new ArrayList<>(keyColumns);
+        hashedColumns.stream().filter(c -> !keyColumns.contains(c)).forEach(columns::add);
+        // ISNULL tells NULL from an empty string, CONCAT_WS skips NULL values
+        this.rowHash = "CAST(CONV(LEFT(MD5(CONCAT_WS('|', " + columns.stream()
+                .map(c -> DatabaseUtil.armor(c) + ", ISNULL(" + DatabaseUtil.armor(c) + ")")
+                .collect(joining(", ")) + ")), 16), 16, 10) AS UNSIGNED)";
+        this.leafRows = Math.max(1, leafRows);
+    }
+
+    /**
+     * Compares the tables and passes the differences to the listener, leaf range by leaf range.
+     *
+     * @return false without comparing anything if the leading primary key column is not integral
+     */
+    boolean diff(Listener listener) throws SQLException {
+        List<Map<String, String>> keyType = DatabaseUtil.query(source, "SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS"
+                + " WHERE TABLE_SCHEMA = " + DatabaseUtil.toValue(sourceSchema) + " AND TABLE_NAME = " + DatabaseUtil.toValue(table)
+                + " AND COLUMN_NAME = " + DatabaseUtil.toValue(keyColumns.get(0)));
+        if (keyType.isEmpty() || !DatabaseUtil.isIntegral(keyType.get(0).get("DATA_TYPE"))) {
+            // only integral keys can be halved, a single range would hold all keys of both tables in memory
+            return false;
+        }
+        String keyColumn = DatabaseUtil.armor(keyColumns.get(0));
+        String bounds = "SELECT min(" + keyColumn + ") as lo, max(" + keyColumn + ") as hi FROM ";
+        Map<String, String> sourceBounds = DatabaseUtil.query(source, bounds + sourceTable).get(0);
+        Map<String, String> targetBounds = DatabaseUtil.query(target, bounds + targetTable).get(0);
+        long lo, hi;
+        try {
+            lo = Math.min(parse(sourceBounds.get("lo"), Long.MAX_VALUE), parse(targetBounds.get("lo"), Long.MAX_VALUE));
+            hi = Math.max(parse(sourceBounds.get("hi"), Long.MIN_VALUE), parse(targetBounds.get("hi"), Long.MIN_VALUE));
+        } catch (NumberFormatException e) {
+            // unsigned BIGINT keys beyond the range of a long
+            return false;
+        }
+        if (lo <= hi) {
+            diff(lo, hi, listener);
+        }
+        return true;
+    }
+
+    private static long parse(String value, long empty) {
+        return value == null ? empty : Long.parseLong(value);
+    }
+
+    private void diff(long lo, long hi, Listener listener) throws SQLException {
+        String condition = DatabaseUtil.armor(keyColumns.get(0)) + " BETWEEN " + lo + " AND " + hi;
+        String checksum = "SELECT count(*) as cnt, ifnull(sum(" + rowHash + "), 0) as crc FROM ";
+        Map<String, String> sourceChecksum = DatabaseUtil.query(source, checksum + sourceTable + " WHERE " + condition).get(0);
+        Map<String, String> targetChecksum = DatabaseUtil.query(target, checksum + targetTable + " WHERE " + condition).get(0);
+        comparedRanges++;
+        if (Objects.equals(sourceChecksum, targetChecksum)) {
+            return;
+        }
+        long rows = Math.max(Long.parseLong(sourceChecksum.get("cnt")), Long.parseLong(targetChecksum.get("cnt")));
+        if (rows <= leafRows || lo == hi) {
+            diff(condition, listener);
+        } else {
+            // the floor of the mean, hi - lo may overflow
+            long mid = (lo & hi) + ((lo ^ hi) >> 1);
+            diff(lo, mid, listener);
+            diff(mid + 1, hi, listener);
+        }
+    }
+
+    private void diff(String condition, Listener listener) throws SQLException {
+        Map<List<String>, Object> sourceRows = rowHashes(source, sourceTable, condition);
+        Map<List<String>, Object> targetRows = rowHashes(target, targetTable, condition);
+        List<List<String>> insertedKeys = new ArrayList<>();
+        List<List<String>> updatedKeys = new ArrayList<>();
+        List<List<String>> deletedKeys = new ArrayList<>();
+        for (Map.Entry<List<String>, Object> e : sourceRows.entrySet()) {
+            Object targetHash = targetRows.remove(e.getKey());
+            if (targetHash == null) {
+                insertedKeys.add(e.getKey());
+            } else if (!targetHash.equals(e.getValue())) {
+                updatedKeys.add(e.getKey());
+            }
+        }
+        deletedKeys.addAll(targetRows.keySet());
+        comparedLeaves++;
+        inserted += insertedKeys.size();
+        updated += updatedKeys.size();
+        deleted += deletedKeys.size();
+        if (!insertedKeys.isEmpty() || !updatedKeys.isEmpty() || !deletedKeys.isEmpty()) {
+            listener.changed(insertedKeys, updatedKeys, deletedKeys);
+        }
+    }
+
+    private Map<List<String>, Object> rowHashes(DataSource dataSource, String table, String condition) throws SQLException {
+        Map<List<String>, Object> result = new LinkedHashMap<>();
+        DatabaseUtil.query(dataSource, "SELECT " + keyColumns.stream().map(DatabaseUtil::armor).collect(joining(", ")) + ", " + rowHash + " as row_hash"
+                + " FROM " + table + " WHERE " + condition, (row, context) -> {
+            List<String> key = new ArrayList<>(keyColumns.size());
+            for (String keyColumn : keyColumns) {
+                key.add(DatabaseUtil.toValue(row.get(keyColumn)));
+            }
+            result.put(key, row.get("row_hash"));
+        }, false);
+        return result;
+    }
+
+    /**
+     * Creates a condition selecting the rows with the given primary keys.
+     */
+    static String keyCondition(List<String> keyColumns, List<List<String>> keys) {
+        if (keyColumns.size() == 1) {
+            return DatabaseUtil.armor(keyColumns.get(0)) + " IN (" + keys.stream().map(k -> k.get(0)).collect(joining(", ")) + ")";
+        }
+        return "(" + keyColumns.stream().map(DatabaseUtil::armor).collect(joining(", ")) + ") IN ("
+                + keys.stream().map(k -> "(" + String.join(", ", k) + ")").collect(joining(", ")) + ")";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ranges compared, %d leaf ranges transferred, %d rows inserted, %d updated, %d deleted",
+                comparedRanges, comparedLeaves, inserted, updated, deleted);
+    }
+}
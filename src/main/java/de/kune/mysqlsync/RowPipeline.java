@@ -0,0 +1,278 @@
+package de.kune.mysqlsync;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Decouples reading rows from processing them. The thread reading the source result set only enqueues rows; a
+ * transform thread prepares them (anonymization and encoding) and a sink thread writes them to the target and the
+ * output file. The stages are joined by bounded queues, so a slow stage slows down the stages before it instead of
+ * filling the memory. Reused {@link DatabaseUtil.Row}s are copied into rows recycled once they are transformed.
+ *
+ * @param <T> the type of the prepared rows
+ */
+class RowPipeline<T> implements DatabaseUtil.RowConsumer, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(RowPipeline.class.getName());
+
+    @FunctionalInterface
+    interface Transform<T> {
+        T apply(Map<String, Object> row, DatabaseUtil.ResultContext context) throws SQLException;
+    }
+
+    /**
+     * Creates the row consumer of the transform stage, which may hold rows back to prepare them in batches. The rows it
+     * accepts are recycled afterwards, so rows held back are copies. They must be passed on with the last row of a
+     * result set at the latest, as {@link #await()} only waits for the rows passed on.
+     */
+    @FunctionalInterface
+    interface BatchTransform<T> {
+        DatabaseUtil.RowConsumer create(Sink<T> next);
+    }
+
+    @FunctionalInterface
+    interface Sink<T> {
+        void accept(T row, DatabaseUtil.ResultContext context) throws SQLException;
+    }
+
+    private static final class Item {
+        private final Object row;
+        private final DatabaseUtil.ResultContext context;
+        private final CountDownLatch barrier;
+
+        private Item(Object row, DatabaseUtil.ResultContext context, CountDownLatch barrier) {
+            this.row = row;
+            this.context = context;
+            this.barrier = barrier;
+        }
+    }
+
+    private static final Item END = new Item(null, null, null);
+
+    /**
+     * Throughput counters of one stage.
+     */
+    static final class StageStatistics {
+        private final String name;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong blockedNanos = new AtomicLong();
+
+        private StageStatistics(String name) {
+            this.name = name;
+        }
+
+        long getRows() {
+            return rows.get();
+        }
+
+        long getBusyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+        }
+
+        long getBlockedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(blockedNanos.get());
+        }
+
+        @Override
+        public String toString() {
+            long busy = getBusyMillis();
+            return format("%s %d rows (busy %d ms, %d rows/s, blocked %d ms)", name, getRows(), busy,
+                    busy == 0 ? 0 : getRows() * 1000 / busy, getBlockedMillis());
+        }
+    }
+
+    private final String name;
+    private final DatabaseUtil.RowConsumer transform;
+    private final Sink<T> sink;
+    private final BlockingQueue<Item> readQueue;
+    private final BlockingQueue<Item> preparedQueue;
+    private final BlockingQueue<DatabaseUtil.Row> freeRows;
+    private final StageStatistics read = new StageStatistics("read");
+    private final StageStatistics prepared = new StageStatistics("prepared");
+    private final StageStatistics written = new StageStatistics("written");
+    private final Thread transformThread;
+    private final Thread sinkThread;
+    private volatile Exception failure;
+    private long lastAccept = System.nanoTime();
+
+    RowPipeline(String name, int capacity, Transform<T> transform, Sink<T> sink) {
+        this(name, capacity, next -> (row, context) -> next.accept(transform.apply(row, context), context), sink);
+    }
+
+    RowPipeline(String name, int capacity, BatchTransform<T> transform, Sink<T> sink) {
+        this.name = name;
+        this.transform = transform.create(this::prepared);
+        this.sink = sink;
+        this.readQueue = new ArrayBlockingQueue<>(capacity);
+        this.preparedQueue = new ArrayBlockingQueue<>(capacity);
+        this.freeRows = new ArrayBlockingQueue<>(capacity + 2);
+        this.transformThread = new Thread(this::runTransform, "pipeline-transform-" + name);
+        this.sinkThread = new Thread(this::runSink, "pipeline-sink-" + name);
+        transformThread.setDaemon(true);
+        sinkThread.setDaemon(true);
+        transformThread.start();
+        sinkThread.start();
+    }
+
+    @Override
+    public void accept(Map<String, Object> row, DatabaseUtil.ResultContext context) throws SQLException {
+        long start = System.nanoTime();
+        read.busyNanos.addAndGet(start - lastAccept);
+        put(readQueue, new Item(detach(row), context, null), read);
+        read.rows.incrementAndGet();
+        lastAccept = System.nanoTime();
+    }
+
+    /**
+     * Copies reused rows into a row recycled by the transform stage.
+     */
+    private Map<String, Object> detach(Map<String, Object> row) {
+        if (!(row instanceof DatabaseUtil.Row)) {
+            return row;
+        }
+        DatabaseUtil.Row free = freeRows.poll();
+        return free != null && ((DatabaseUtil.Row) row).copyTo(free) ? free : ((DatabaseUtil.Row) row).copy();
+    }
+
+    /**
+     * Waits until all rows accepted so far have been written.
+     */
+    void await() throws SQLException {
+        CountDownLatch barrier = new CountDownLatch(1);
+        put(readQueue, new Item(null, null, barrier), read);
+        try {
+            while (!barrier.await(100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+        checkFailure();
+        lastAccept = System.nanoTime();
+    }
+
+    private void put(BlockingQueue<Item> queue, Item item, StageStatistics statistics) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } finally {
+            statistics.blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Throws a new exception for each call, the failure may be reported by the reader and again by {@link #close()}.
+     */
+    private void checkFailure() throws SQLException {
+        Exception e = failure;
+        if (e instanceof SQLException) {
+            SQLException sqlException = (SQLException) e;
+            throw new SQLException(e.getMessage(), sqlException.getSQLState(), sqlException.getErrorCode(), e);
+        } else if (e != null) {
+            throw new SQLException("Pipeline " + name + " failed", e);
+        }
+    }
+
+    private void runTransform() {
+        try {
+            while (true) {
+                Item item = readQueue.take();
+                if (item != END && item.barrier == null) {
+                    if (failure == null) {
+                        long start = System.nanoTime();
+                        long blocked = prepared.blockedNanos.get();
+                        transform.accept(cast(item.row), item.context);
+                        if (item.row instanceof DatabaseUtil.Row) {
+                            freeRows.offer((DatabaseUtil.Row) item.row);
+                        }
+                        prepared.busyNanos.addAndGet(System.nanoTime() - start - (prepared.blockedNanos.get() - blocked));
+                    }
+                    continue;
+                }
+                put(preparedQueue, item, prepared);
+                if (item == END) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void prepared(T row, DatabaseUtil.ResultContext context) throws SQLException {
+        put(preparedQueue, new Item(row, context, null), prepared);
+        prepared.rows.incrementAndGet();
+    }
+
+    private void runSink() {
+        try {
+            while (true) {
+                Item item = preparedQueue.take();
+                if (item == END) {
+                    return;
+                }
+                if (item.barrier != null) {
+                    item.barrier.countDown();
+                } else if (failure == null) {
+                    long start = System.nanoTime();
+                    sink.accept(this.<T>cast(item.row), item.context);
+                    written.busyNanos.addAndGet(System.nanoTime() - start);
+                    written.rows.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+        readQueue.clear();
+        preparedQueue.clear();
+        transformThread.interrupt();
+        sinkThread.interrupt();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <X> X cast(Object o) {
+        return (X) o;
+    }
+
+    StageStatistics[] getStatistics() {
+        return new StageStatistics[]{read, prepared, written};
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (failure == null) {
+                put(readQueue, END, read);
+            }
+            transformThread.join();
+            sinkThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        } finally {
+            LOGGER.info(format("Pipeline %s: %s, %s, %s", name, read, prepared, written));
+        }
+        checkFailure();
+    }
+}
@@ -0,0 +1,278 @@
+package de.kune.mysqlsync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the generated statements to an output file. Small writes are collected in a heap buffer, passed through the
+ * codec if the file is compressed, and written to the file channel from a large direct buffer. Data only reaches the
+ * file when a buffer is full or at the explicit {@link #flush()} and {@link #sync()} points, so writing a row costs no
+ * system call.
+ * <p>
+ * Instances are not thread safe. I/O errors are thrown as {@link UncheckedIOException}.
+ */
+class SqlOutput implements AutoCloseable {
+
+    private static final int STAGING_SIZE = 64 * 1024;
+    private static final int CHANNEL_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final String file;
+    private final FileChannel channel;
+    private final ChannelStream channelStream;
+    private final OutputCodec codec;
+    private final int level, threads, longWindowLog;
+    private OutputStream sink;
+    private final byte[] staging = new byte[STAGING_SIZE];
+    private int staged;
+    private boolean closed;
+
+    private SqlOutput(String file, FileChannel channel, OutputCodec codec, int level, int threads, int longWindowLog) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.channelStream = new ChannelStream(channel);
+        this.codec = codec;
+        this.level = level;
+        this.threads = threads;
+        this.longWindowLog = longWindowLog;
+        this.sink = codec == null ? channelStream : null;
+    }
+
+    /**
+     * Creates or truncates an output file.
+     *
+     * @param codec the codec compressing the file or null to write plain SQL
+     */
+    static SqlOutput open(String file, OutputCodec codec, int level, int threads, int longWindowLog) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            return new SqlOutput(file, channel, codec, level, threads, longWindowLog);
+        } catch (IOException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException("Could not open " + file, e);
+        }
+    }
+
+    /**
+     * Opens an output file written up to a {@link #checkpoint()} by an earlier run, discarding what was written behind
+     * the checkpoint.
+     *
+     * @param offset the length of the file at the checkpoint
+     */
+    static SqlOutput resume(String file, long offset, OutputCodec codec, int level, int threads, int longWindowLog) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE);
+            if (channel.size() < offset) {
+                throw new IllegalStateException("Cannot resume " + file + ", it is shorter than its checkpoint at " + offset + " bytes");
+            }
+            channel.truncate(offset);
+            channel.position(offset);
+            return new SqlOutput(file, channel, codec, level, threads, longWindowLog);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new UncheckedIOException("Could not open " + file, (IOException) e);
+        }
+    }
+
+    String getFile() {
+        return file;
+    }
+
+    void print(String s) {
+        write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void println(String s) {
+        print(s);
+        write(LINE_SEPARATOR);
+    }
+
+    void write(byte[] bytes) {
+        write(bytes, 0, bytes.length);
+    }
+
+    void write(byte[] bytes, int offset, int length) {
+        if (length > staging.length - staged) {
+            drainStaging();
+            if (length > staging.length) {
+                writeSink(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, staging, staged, length);
+        staged += length;
+    }
+
+    private void drainStaging() {
+        if (staged > 0) {
+            writeSink(staging, 0, staged);
+            staged = 0;
+        }
+    }
+
+    /**
+     * Compressing codecs write a new frame after every checkpoint, so the stream is created on the first write.
+     */
+    private OutputStream sink() throws IOException {
+        if (sink == null) {
+            sink = codec.wrap(channelStream, level, threads, longWindowLog);
+        }
+        return sink;
+    }
+
+    private void writeSink(byte[] bytes, int offset, int length) {
+        try {
+            sink().write(bytes, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + file, e);
+        }
+    }
+
+    /**
+     * Hands everything written so far to the operating system. Called at chunk boundaries; compressing codecs may keep
+     * the data of their current block.
+     */
+    void flush() {
+        drainStaging();
+        try {
+            if (sink != null) {
+                sink.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write " + file, e);
+        }
+    }
+
+    /**
+     * Flushes and forces the written data to the storage device. Called at table ends.
+     */
+    void sync() {
+        flush();
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync " + file, e);
+        }
+    }
+
+    /**
+     * Syncs everything written so far to the storage device as a complete file: compressing codecs finish their frame
+     * and start a new one with the next write. All supported formats allow concatenated frames, so the file can be
+     * cut back to the checkpoint and continued with {@link #resume(String, long, OutputCodec, int, int, int)}.
+     *
+     * @return the length of the file at the checkpoint
+     */
+    long checkpoint() {
+        drainStaging();
+        try {
+            if (sink != channelStream && sink != null) {
+                // closing the codec stream drains the channel stream, which leaves the channel open
+                sink.close();
+                sink = null;
+            }
+            channelStream.flush();
+            channel.force(false);
+            return channel.position();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not checkpoint " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            drainStaging();
+            if (sink == null && channel.position() == 0) {
+                // an empty compressed file still consists of a frame
+                sink();
+            }
+            (sink == null ? channelStream : sink).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close " + file, e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Collects bytes in a direct buffer that is written to the channel when it is full or flushed.
+     */
+    private static final class ChannelStream extends OutputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE);
+
+        private ChannelStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package de.kune.mysqlsync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Encodes SQL literals as UTF-8 directly into a reusable byte buffer. The produced text is identical to joining the
+ * results of {@link DatabaseUtil#toValue(Object)}, including <code>null</code> for null values, but no temporary
+ * strings are created for numbers, strings and binary values.
+ * <p>
+ * Instances are not thread safe.
+ */
+class SqlValueEncoder {
+
+    private static final Logger LOGGER = Logger.getLogger(SqlValueEncoder.class.getName());
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+    private static final Set<Class<?>> WARNED_TYPES = ConcurrentHashMap.newKeySet();
+
+    private byte[] buffer;
+    private int length;
+
+    SqlValueEncoder() {
+        this(1024);
+    }
+
+    SqlValueEncoder(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    SqlValueEncoder reset() {
+        length = 0;
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+        }
+    }
+
+    private void put(byte b) {
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    /**
+     * Appends SQL syntax, which must consist of ASCII characters only.
+     */
+    SqlValueEncoder appendSyntax(String ascii) {
+        ensureCapacity(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            buffer[length++] = (byte) ascii.charAt(i);
+        }
+        return this;
+    }
+
+    SqlValueEncoder appendSyntax(char ascii) {
+        put((byte) ascii);
+        return this;
+    }
+
+    SqlValueEncoder appendNull() {
+        ensureCapacity(NULL.length);
+        System.arraycopy(NULL, 0, buffer, length, NULL.length);
+        length += NULL.length;
+        return this;
+    }
+
+    SqlValueEncoder appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            ensureCapacity(MIN_LONG.length);
+            System.arraycopy(MIN_LONG, 0, buffer, length, MIN_LONG.length);
+            length += MIN_LONG.length;
+            return this;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /**
+     * Appends a double the way {@link DatabaseUtil#toValue(Object)} renders types without an explicit mapping.
+     */
+    SqlValueEncoder appendDouble(double value) {
+        warnUnmapped(Double.class);
+        put((byte) '\'');
+        appendEscaped(Double.toString(value));
+        put((byte) '\'');
+        return this;
+    }
+
+    SqlValueEncoder appendHex(byte[] bytes) {
+        ensureCapacity(bytes.length * 2 + 3);
+        buffer[length++] = 'X';
+        buffer[length++] = '\'';
+        for (byte b : bytes) {
+            int v = b & 0xFF;
+            buffer[length++] = HEX[v >>> 4];
+            buffer[length++] = HEX[v & 0x0F];
+        }
+        buffer[length++] = '\'';
+        return this;
+    }
+
+    SqlValueEncoder appendQuoted(CharSequence value) {
+        ensureCapacity(value.length() + 2);
+        buffer[length++] = '\'';
+        appendEscaped(value);
+        put((byte) '\'');
+        return this;
+    }
+
+    /**
+     * Appends a value as SQL literal.
+     */
+    SqlValueEncoder appendValue(Object value) {
+        if (value == null) {
+            return appendNull();
+        }
+        if (value instanceof Long || value instanceof Integer) {
+            return appendLong(((Number) value).longValue());
+        }
+        if (value instanceof Boolean || value instanceof BigDecimal) {
+            return appendSyntax(value.toString());
+        }
+        if (value instanceof String) {
+            return appendQuoted((String) value);
+        }
+        if (value instanceof Timestamp || value instanceof Date) {
+            return appendQuoted(value.toString());
+        }
+        if (value instanceof byte[]) {
+            return appendHex((byte[]) value);
+        }
+        warnUnmapped(value.getClass());
+        return appendQuoted(value.toString());
+    }
+
+    /**
+     * Appends a column of a row as SQL literal, reading primitive columns without boxing.
+     */
+    SqlValueEncoder appendValue(DatabaseUtil.Row row, int index) {
+        if (row.isNull(index)) {
+            return appendNull();
+        }
+        if (row.isLong(index)) {
+            return appendLong(row.getLong(index));
+        }
+        if (row.isDouble(index)) {
+            return appendDouble(row.getDouble(index));
+        }
+        return appendValue(row.get(index));
+    }
+
+    private static void warnUnmapped(Class<?> type) {
+        if (WARNED_TYPES.add(type)) {
+            LOGGER.warning("No explicit mapping for value type " + type);
+        }
+    }
+
+    /**
+     * Appends UTF-8 with single quotes doubled and backslashes escaped, unpaired surrogates become '?'.
+     */
+    private void appendEscaped(CharSequence value) {
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c == '\'') {
+                ensureCapacity(2);
+                buffer[length++] = '\'';
+                buffer[length++] = '\'';
+            } else if (c == '\\') {
+                ensureCapacity(2);
+                buffer[length++] = '\\';
+                buffer[length++] = '\\';
+            } else if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                put((byte) '?');
+            } else {
+                ensureCapacity(3);
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+}
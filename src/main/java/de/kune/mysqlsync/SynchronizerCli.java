@@ -2,10 +2,13 @@ package de.kune.mysqlsync;
 
 import com.mysql.cj.jdbc.MysqlDataSource;
 import de.kune.mysqlsync.anonymizer.FieldAnonymizer;
+import de.kune.mysqlsync.anonymizer.HashEngine;
+import de.kune.mysqlsync.anonymizer.TokenVault;
 import org.apache.commons.cli.*;
 
 import javax.sql.DataSource;
 import java.io.File;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -72,9 +75,33 @@ public class SynchronizerCli {
         anonymize.setRequired(false);
         options.addOption(anonymize);
 
+        Option hashEngine = new Option("he", "hash-engine", true, "the hash of the anonymizers: md5 (default, the outputs of earlier versions) or siphash (keyed with the hash salt)");
+        options.addOption(hashEngine);
+
+        Option hashSalt = new Option("hs", "hash-salt", true, "the secret salt of the siphash hash engine");
+        options.addOption(hashSalt);
+
+        Option hashCache = new Option("hc", "hash-cache", true, "memoize this many hashes per thread");
+        options.addOption(hashCache);
+
+        Option tokenVault = new Option("tv", "token-vault", true, "the file keeping the tokens of token(domain) anonymizers across runs");
+        options.addOption(tokenVault);
+
         Option compress = new Option("c", "compress", false, "compress output file (if specified)");
         options.addOption(compress);
 
+        Option codec = new Option("C", "codec", true, "the compression format of output files: gzip (default), zstd or lz4, implies compress");
+        options.addOption(codec);
+
+        Option compressionLevel = new Option("cl", "compression-level", true, "the compression level, gzip 1-9 (default 6), zstd 1-22 (default 3), lz4 1-17 (default 1)");
+        options.addOption(compressionLevel);
+
+        Option compressionThreads = new Option("ct", "compression-threads", true, "the number of threads compressing each output file, defaults to 1; with more threads gzip files are written as multi-member files");
+        options.addOption(compressionThreads);
+
+        Option zstdLong = new Option("zl", "zstd-long", true, "enable zstd long distance matching with a window of 2^n bytes, e.g. 27");
+        options.addOption(zstdLong);
+
         Option exclusion = new Option("x", "exclude", true, "exclude this pattern");
         options.addOption(exclusion);
 
@@ -99,13 +126,80 @@ public class SynchronizerCli {
         Option allowParallel = new Option("mt", "multi-threaded", false, "allows to synchronize multiple tables in parallel if split-by-table was specified");
         options.addOption(allowParallel);
 
+        Option keysetPagination = new Option("k", "keyset-pagination", false, "page through tables by primary key instead of LIMIT/OFFSET");
+        options.addOption(keysetPagination);
+
+        Option parallelChunks = new Option("pc", "parallel-chunks", true, "the max number of key ranges of one table to read in parallel, ranges read ahead are buffered in memory");
+        options.addOption(parallelChunks);
+
+        Option maxParallelChunks = new Option("mpc", "max-parallel-chunks", true, "the max number of additional source connections used for parallel chunks of all tables");
+        options.addOption(maxParallelChunks);
+
+        Option batchedInserts = new Option("B", "batched-inserts", false, "insert rows into the target database with batched prepared statements");
+        options.addOption(batchedInserts);
+
+        Option loadData = new Option("L", "load-data", true, "fully load tables matching this pattern with LOAD DATA LOCAL INFILE");
+        options.addOption(loadData);
+
+        Option pipeline = new Option("pl", "pipeline", true, "read, anonymize and write rows on separate threads joined by queues of this many rows");
+        options.addOption(pipeline);
+
+        Option checkpointJournal = new Option("j", "checkpoint-journal", true, "record the progress in this file after every chunk and table, deleted when the run completes");
+        options.addOption(checkpointJournal);
+
+        Option resume = new Option("R", "resume", false, "continue the run recorded in the checkpoint journal instead of starting from scratch");
+        options.addOption(resume);
+
+        Option commitEvery = new Option("ce", "commit-every", true, "commit the target every n rows, every chunk (default) or every table; a checkpoint journal also commits at every chunk checkpoint");
+        options.addOption(commitEvery);
+
+        Option targetConnections = new Option("tc", "target-connections", true, "the max number of target connections of tables synchronized in parallel, defaults to the number of processors");
+        options.addOption(targetConnections);
+
+        Option tableThreads = new Option("tt", "table-threads", true, "the number of threads synchronizing tables in parallel or 'virtual' for a virtual thread per table (Java 21), defaults to the number of processors");
+        options.addOption(tableThreads);
+
+        Option hostConcurrency = new Option("hl", "host-limit", true, "the max number of tables synchronized in parallel against the same database host");
+        options.addOption(hostConcurrency);
+
+        Option rowDiff = new Option("rd", "row-diff", false, "in incremental mode, compare checksums of key ranges instead of creation and last modified dates, also deleting rows");
+        options.addOption(rowDiff);
+
+        Option watermarks = new Option("wm", "watermarks", true, "in incremental mode, keep the latest creation and last modified date per table in this file instead of reading them from the target");
+        options.addOption(watermarks);
+
+        Option watermarkOverlap = new Option("wo", "watermark-overlap", true, "in incremental mode, also read rows up to this many seconds older than the latest synchronized date, defaults to 60");
+        options.addOption(watermarkOverlap);
+
+        Option consistentSnapshot = new Option("cs", "consistent-snapshot", false, "read all tables from one point-in-time view of the source, locking it briefly to start the snapshot of every connection");
+        options.addOption(consistentSnapshot);
+
+        Option snapshotConnections = new Option("sc", "snapshot-connections", true, "the number of source connections of the consistent snapshot, defaults to one per table thread and parallel chunk");
+        options.addOption(snapshotConnections);
+
+        Option changeDataCapture = new Option("cdc", "change-data-capture", true, "after the sync, apply the changes of the source binlog continuously, keeping the binlog position in this file; an existing file skips the sync");
+        options.addOption(changeDataCapture);
+
+        Option serverId = new Option("sid", "server-id", true, "the replica server id of the change data capture, defaults to 65535");
+        options.addOption(serverId);
+
+        Option cdcBatch = new Option("cb", "cdc-batch", true, "apply captured changes every n rows or milliseconds, whatever comes first, e.g. 1000,1000");
+        options.addOption(cdcBatch);
+
         CommandLineParser parser = new DefaultParser();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine cmd;
         try {
             cmd = parser.parse(options, args);
+            if (cmd.hasOption(resume.getOpt()) && !cmd.hasOption(checkpointJournal.getOpt())) {
+                throw new ParseException("--resume requires --checkpoint-journal");
+            }
+            if (cmd.hasOption(changeDataCapture.getOpt()) && (!cmd.hasOption(target.getOpt()) || cmd.hasOption(jumpHost.getOpt()) || cmd.hasOption(dryRun.getOpt()))) {
+                throw new ParseException("--change-data-capture requires --target and a direct connection to the source");
+            }
 
             DataSourceFactory sourceDSF = null;
+            TokenVault vault = null;
             try {
                 if (cmd.getOptionValue(jumpHost.getOpt()) != null) {
                     Pattern userPattern = Pattern.compile("^((.*?)@)?(.*?)(:(.*))?$");
@@ -134,6 +228,12 @@ public class SynchronizerCli {
                 DataSource dataSource = sourceDSF.build();
 
                 String targetUrl = "jdbc:mysql://" + cmd.getOptionValue(targetHostname.getOpt(), cmd.getOptionValue(hostname.getOpt())) + ":" + Optional.ofNullable(cmd.getParsedOptionValue(targetPort.getOpt())).orElse(cmd.getOptionValue(port.getOpt(), "3306")) + "?useUnicode=true&characterEncoding=utf-8&verifyServerCertificate=false&useSSL=false&requireSSL=false";
+                if (cmd.hasOption(batchedInserts.getOpt())) {
+                    targetUrl += "&useServerPrepStmts=true&cachePrepStmts=true&rewriteBatchedStatements=true";
+                }
+                if (cmd.hasOption(loadData.getOpt())) {
+                    targetUrl += "&allowLoadLocalInfile=true";
+                }
                 String tUser = cmd.getOptionValue(targetUser.getOpt(), cmd.getOptionValue(user.getOpt()));
                 String tPassword = cmd.getOptionValue(targetPassword.getOpt(), cmd.getOptionValue(password.getOpt()));
                 String sourceSchema = cmd.getOptionValue(source.getOpt());
@@ -145,7 +245,7 @@ public class SynchronizerCli {
                 ((MysqlDataSource) targetDataSource).setUrl(targetUrl);
                 ((MysqlDataSource) targetDataSource).setUser(tUser);
                 ((MysqlDataSource) targetDataSource).setPassword(tPassword);
-                boolean isCompress = cmd.hasOption(compress.getOpt());
+                boolean isCompress = cmd.hasOption(compress.getOpt()) || cmd.hasOption(codec.getOpt());
                 boolean isSplitByTable = cmd.hasOption(splitByTable.getOpt());
                 boolean isDropAndRecreateTables = cmd.hasOption(dropAndRecreateTables.getOpt());
                 Map<Pattern, FieldAnonymizer> anonymizers = Collections.emptyMap();
@@ -156,28 +256,89 @@ public class SynchronizerCli {
                         anonymizers = buildAnonymizers(cmd.getOptionValues(anonymize.getOpt()));
                     }
                 }
+                HashEngine engine = HashEngine.forName(cmd.getOptionValue(hashEngine.getOpt(), "md5"), cmd.getOptionValue(hashSalt.getOpt()));
+                if (cmd.hasOption(hashCache.getOpt())) {
+                    engine = HashEngine.cached(engine, Integer.parseInt(cmd.getOptionValue(hashCache.getOpt())));
+                }
+                HashEngine.use(engine);
+                LOGGER.info("Using hash engine " + engine);
+                if (cmd.hasOption(tokenVault.getOpt())) {
+                    vault = TokenVault.open(Paths.get(cmd.getOptionValue(tokenVault.getOpt())));
+                    TokenVault.use(vault);
+                }
                 List<Pattern> exclusions = Optional.ofNullable(cmd.getOptionValues(exclusion.getOpt())).map(Arrays::stream).map(s -> s.map(Pattern::compile).collect(Collectors.toList())).orElse(Collections.emptyList());
+                List<Pattern> loadDataTables = Optional.ofNullable(cmd.getOptionValues(loadData.getOpt())).map(Arrays::stream).map(s -> s.map(Pattern::compile).collect(Collectors.toList())).orElse(Collections.emptyList());
                 List<Pattern> patterns = Optional.ofNullable(cmd.getOptionValues(pattern.getOpt())).map(Arrays::stream).map(s -> s.map(Pattern::compile).collect(Collectors.toList())).orElse(Collections.emptyList());
-                DataSourceSynchronizer.builder()
+                String commit = cmd.getOptionValue(commitEvery.getOpt(), "chunk");
+                boolean commitByRows = commit.trim().matches("\\d+");
+                boolean virtualTableThreads = "virtual".equalsIgnoreCase(cmd.getOptionValue(tableThreads.getOpt()));
+                DataSourceSynchronizer synchronizer = DataSourceSynchronizer.builder()
                         .source(dataSource)
                         .target(targetDataSource)
                         .anonymizerMap(anonymizers)
                         .exclusions(exclusions)
                         .patterns(patterns)
-                        .build()
-                        .sync(sourceSchema,
-                                targetSchema,
-                                outputFileName,
-                                isCompress,
-                                isSplitByTable,
-                                isDropAndRecreateTables,
-                                isDryRun,
-                                isIncremental,
-                                cmd.hasOption(allowParallel.getOpt()), Integer.valueOf(cmd.getOptionValue(maxRowsPerChunk.getOpt(), DEFAULT_MAX_CHUNK_SIZE)));
+                        .keysetPagination(cmd.hasOption(keysetPagination.getOpt()))
+                        .batchedInserts(cmd.hasOption(batchedInserts.getOpt()))
+                        .loadDataTables(loadDataTables)
+                        .pipelineCapacity(Integer.parseInt(cmd.getOptionValue(pipeline.getOpt(), "0")))
+                        .codec(OutputCodec.forName(cmd.getOptionValue(codec.getOpt(), "gzip")))
+                        .longWindowLog(Integer.parseInt(cmd.getOptionValue(zstdLong.getOpt(), "0")))
+                        .compression(Integer.parseInt(cmd.getOptionValue(compressionLevel.getOpt(), String.valueOf(OutputCodec.DEFAULT_LEVEL))),
+                                Integer.parseInt(cmd.getOptionValue(compressionThreads.getOpt(), "1")))
+                        .checkpoint(Optional.ofNullable(cmd.getOptionValue(checkpointJournal.getOpt())).map(Paths::get).orElse(null), cmd.hasOption(resume.getOpt()))
+                        .tableThreads(virtualTableThreads ? 0 : Integer.parseInt(cmd.getOptionValue(tableThreads.getOpt(), String.valueOf(Runtime.getRuntime().availableProcessors()))), virtualTableThreads)
+                        .hostConcurrency(Integer.parseInt(cmd.getOptionValue(hostConcurrency.getOpt(), "0")))
+                        .rowDiff(cmd.hasOption(rowDiff.getOpt()))
+                        .watermarks(Optional.ofNullable(cmd.getOptionValue(watermarks.getOpt())).map(Paths::get).orElse(null),
+                                Long.parseLong(cmd.getOptionValue(watermarkOverlap.getOpt(), "60")))
+                        .consistentSnapshot(cmd.hasOption(consistentSnapshot.getOpt()), Integer.parseInt(cmd.getOptionValue(snapshotConnections.getOpt(), "0")))
+                        .targetConnections(Integer.parseInt(cmd.getOptionValue(targetConnections.getOpt(), String.valueOf(Runtime.getRuntime().availableProcessors()))))
+                        .commit(commitByRows ? CommitGranularity.ROWS : CommitGranularity.forName(commit), commitByRows ? Integer.parseInt(commit.trim()) : 0)
+                        .parallelChunks(Integer.parseInt(cmd.getOptionValue(parallelChunks.getOpt(), "1")),
+                                Integer.parseInt(cmd.getOptionValue(maxParallelChunks.getOpt(), cmd.getOptionValue(parallelChunks.getOpt(), "1"))))
+                        .build();
+                BinlogChangeCapture capture = null;
+                if (cmd.hasOption(changeDataCapture.getOpt())) {
+                    String[] batch = cmd.getOptionValue(cdcBatch.getOpt(), "1000,1000").split(",");
+                    capture = BinlogChangeCapture.builder()
+                            .hostname(cmd.getOptionValue(hostname.getOpt()))
+                            .port(Integer.parseInt(cmd.getOptionValue(port.getOpt(), "3306")))
+                            .user(cmd.getOptionValue(user.getOpt()))
+                            .password(cmd.getOptionValue(password.getOpt()))
+                            .serverId(Long.parseLong(cmd.getOptionValue(serverId.getOpt(), "65535")))
+                            .stateFile(Paths.get(cmd.getOptionValue(changeDataCapture.getOpt())))
+                            .batch(Integer.parseInt(batch[0].trim()), Long.parseLong(batch[batch.length - 1].trim()))
+                            .build();
+                }
+                if (capture == null || !capture.hasState()) {
+                    if (capture != null) {
+                        // changes made during the sync are applied afterwards
+                        capture.markStart(dataSource);
+                    }
+                    synchronizer.sync(sourceSchema,
+                            targetSchema,
+                            outputFileName,
+                            isCompress,
+                            isSplitByTable,
+                            isDropAndRecreateTables,
+                            isDryRun,
+                            isIncremental,
+                            cmd.hasOption(allowParallel.getOpt()), Integer.valueOf(cmd.getOptionValue(maxRowsPerChunk.getOpt(), DEFAULT_MAX_CHUNK_SIZE)));
+                    if (capture != null && synchronizer.getSnapshotBinlogStatus() != null) {
+                        // only the changes after the snapshot are applied afterwards
+                        capture.markStart(synchronizer.getSnapshotBinlogStatus());
+                    }
+                }
+                if (capture != null) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(capture::stop));
+                    synchronizer.captureChanges(sourceSchema, targetSchema, capture);
+                }
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "", e);
             } finally {
                 if (sourceDSF != null) {sourceDSF.close();}
+                if (vault != null) {vault.close();}
             }
         } catch (ParseException e) {
             LOGGER.severe(e.getMessage());
@@ -0,0 +1,77 @@
+package de.kune.mysqlsync;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * The size of a table as estimated by <code>INFORMATION_SCHEMA.TABLES</code>. InnoDB only samples the number of rows,
+ * the estimates are good enough to order tables but not to count them.
+ */
+final class TableEstimate {
+
+    /**
+     * Orders tables by decreasing size, so the tables taking longest come first.
+     */
+    static final Comparator<TableEstimate> BIGGEST_FIRST = Comparator.comparingLong(TableEstimate::getBytes).reversed()
+            .thenComparing(Comparator.comparingLong(TableEstimate::getRows).reversed())
+            .thenComparing(TableEstimate::getTable);
+
+    private final String table;
+    private final long rows;
+    private final long bytes;
+
+    TableEstimate(String table, long rows, long bytes) {
+        this.table = table;
+        this.rows = rows;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Estimates the sizes of tables of a schema, biggest first. Tables without statistics, e.g. views, are estimated
+     * as empty.
+     */
+    static List<TableEstimate> query(DataSource dataSource, String schema, Collection<String> tables) throws SQLException {
+        Map<String, TableEstimate> estimates = new HashMap<>();
+        if (!tables.isEmpty()) {
+            for (Map<String, String> row : DatabaseUtil.query(dataSource, "SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH\n" +
+                    "  FROM INFORMATION_SCHEMA.TABLES\n" +
+                    "  WHERE TABLE_SCHEMA='" + schema + "' and TABLE_NAME in (" + tables.stream().map(s -> "'" + s + "'").collect(joining(", ")) + ")")) {
+                String table = row.get("TABLE_NAME");
+                estimates.put(table, new TableEstimate(table, parse(row.get("TABLE_ROWS")), parse(row.get("DATA_LENGTH"))));
+            }
+        }
+        return tables.stream()
+                .map(t -> estimates.getOrDefault(t, new TableEstimate(t, 0, 0)))
+                .sorted(BIGGEST_FIRST)
+                .collect(toList());
+    }
+
+    private static long parse(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return table + " (~" + rows + " rows, " + bytes / 1024 + " KB)";
+    }
+}
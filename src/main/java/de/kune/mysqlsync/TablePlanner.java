@@ -0,0 +1,131 @@
+package de.kune.mysqlsync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Plans the tables synchronized in parallel by their estimated size: longest processing time first, so a big table does
+ * not start last and decide the wall time alone. A table bigger than the share of a single worker is split into key
+ * range tasks, which idle workers read ahead for the worker synchronizing the table.
+ * <p>
+ * The plan predicts the makespan, the size of the work of the busiest worker, by assigning each task to the least
+ * loaded worker. Sizes are the data lengths of the tables; the prediction ignores that the rows of split tables are
+ * still written by one worker.
+ */
+final class TablePlanner {
+
+    static final class Plan {
+        private final List<TableEstimate> order;
+        private final Map<String, Integer> ranges;
+        private final List<List<String>> assignments;
+        private final long makespan;
+        private final long total;
+
+        private Plan(List<TableEstimate> order, Map<String, Integer> ranges, List<List<String>> assignments, long makespan, long total) {
+            this.order = order;
+            this.ranges = ranges;
+            this.assignments = assignments;
+            this.makespan = makespan;
+            this.total = total;
+        }
+
+        /**
+         * @return the tables in the order they are to be started
+         */
+        List<String> getTables() {
+            List<String> result = new ArrayList<>(order.size());
+            order.forEach(e -> result.add(e.getTable()));
+            return result;
+        }
+
+        /**
+         * @return the number of range tasks per split table
+         */
+        Map<String, Integer> getRanges() {
+            return ranges;
+        }
+
+        long getMakespan() {
+            return makespan;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(String.format("predicted makespan %d KB of %d KB in total on %d workers", makespan / 1024, total / 1024, assignments.size()));
+            if (makespan > 0) {
+                result.append(String.format(" (speedup %.1f)", (double) total / makespan));
+            }
+            for (int i = 0; i < assignments.size(); i++) {
+                result.append("\n  worker ").append(i + 1).append(": ").append(assignments.get(i));
+            }
+            return result.toString();
+        }
+    }
+
+    private static final class Task {
+        private final String name;
+        private final long size;
+
+        private Task(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+    }
+
+    private TablePlanner() {
+    }
+
+    /**
+     * @param estimates  the table sizes
+     * @param workers    the number of workers, tables synchronized at the same time and workers helping them
+     * @param splittable whether a table can be read in key ranges
+     */
+    static Plan plan(List<TableEstimate> estimates, int workers, Predicate<String> splittable) {
+        workers = Math.max(1, workers);
+        List<TableEstimate> order = new ArrayList<>(estimates);
+        order.sort(TableEstimate.BIGGEST_FIRST);
+        long total = order.stream().mapToLong(TableEstimate::getBytes).sum();
+        long share = Math.max(1, (total + workers - 1) / workers);
+        Map<String, Integer> ranges = new LinkedHashMap<>();
+        List<Task> tasks = new ArrayList<>();
+        for (TableEstimate estimate : order) {
+            int pieces = workers > 1 && estimate.getBytes() > share && splittable.test(estimate.getTable())
+                    ? (int) Math.min(workers, (estimate.getBytes() + share - 1) / share) : 1;
+            if (pieces > 1) {
+                ranges.put(estimate.getTable(), pieces);
+                for (int i = 0; i < pieces; i++) {
+                    tasks.add(new Task(estimate.getTable() + "[" + (i + 1) + "/" + pieces + "]", estimate.getBytes() / pieces));
+                }
+            } else {
+                tasks.add(new Task(estimate.getTable(), estimate.getBytes()));
+            }
+        }
+        tasks.sort(comparingLong((Task t) -> t.size).reversed());
+        long[] loads = new long[workers];
+        List<List<String>> assignments = new ArrayList<>();
+        PriorityQueue<Integer> leastLoaded = new PriorityQueue<>(workers, comparingLong((Integer w) -> loads[w]).thenComparing(w -> w));
+        for (int w = 0; w < workers; w++) {
+            assignments.add(new ArrayList<>());
+            leastLoaded.add(w);
+        }
+        for (Task task : tasks) {
+            int w = leastLoaded.poll();
+            loads[w] += task.size;
+            assignments.get(w).add(task.name);
+            leastLoaded.add(w);
+        }
+        long makespan = 0;
+        for (long load : loads) {
+            makespan = Math.max(makespan, load);
+        }
+        return new Plan(Collections.unmodifiableList(order), Collections.unmodifiableMap(ranges), assignments, makespan, total);
+    }
+}
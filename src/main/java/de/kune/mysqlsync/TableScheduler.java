@@ -0,0 +1,179 @@
+package de.kune.mysqlsync;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Runs the tables synchronized in parallel on threads of its own instead of the common fork join pool, whose size
+ * depends on the number of processors rather than on what the databases can handle.
+ * <p>
+ * Tables start in the order they are submitted, so the biggest tables should come first and do not end up running
+ * last. A table only starts when each database host it touches runs fewer tables than the per-host limit. Workers
+ * left without a table help the running tables until all of them are done.
+ */
+final class TableScheduler implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(TableScheduler.class.getName());
+
+    private static final long STEAL_INTERVAL_MILLIS = 100;
+
+    private final ExecutorService executor;
+    private final int workers;
+    private final int hostConcurrency;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads         the number of platform threads, the number of processors if less than 1
+     * @param virtualThreads  true to run every table on a virtual thread if the JVM supports them
+     * @param hostConcurrency the max number of tables running against the same host, 0 for no limit
+     */
+    TableScheduler(int threads, boolean virtualThreads, int hostConcurrency) {
+        ExecutorService virtual = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.workers = Integer.MAX_VALUE;
+            LOGGER.info("Scheduling tables on virtual threads");
+        } else {
+            if (threads < 1) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "table-sync-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.workers = threads;
+            LOGGER.info("Scheduling tables on " + threads + " threads");
+        }
+        this.hostConcurrency = hostConcurrency;
+    }
+
+    /**
+     * Virtual threads are available from Java 21 on, this code is compiled for Java 8.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warning("Virtual threads require Java 21 or later, using platform threads instead");
+            return null;
+        }
+    }
+
+    /**
+     * @return the max number of tables running at the same time, not counting the per-host limit
+     */
+    int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Synchronizes the tables in the given order and waits until all of them are done. If a table fails, the tables
+     * not yet started are skipped and the failure is thrown when the running tables are done.
+     *
+     * @param tables  the tables, biggest first
+     * @param workers the number of workers to start, at most {@link #getWorkers()}; workers beyond the number of
+     *                tables only help the running tables
+     * @param hosts   the hosts each table is read from and written to
+     * @param task    synchronizes a table
+     * @param steal   called by workers without a table of their own until all tables are done, does some work of a
+     *                running table and returns false if there is none
+     */
+    void run(List<String> tables, int workers, Collection<String> hosts, Consumer<String> task, BooleanSupplier steal) {
+        // acquiring the permits in a fixed order cannot deadlock
+        List<Semaphore> permits = new ArrayList<>();
+        if (hostConcurrency > 0) {
+            for (String host : new TreeSet<>(hosts)) {
+                permits.add(hostPermits.computeIfAbsent(host, h -> new Semaphore(hostConcurrency, true)));
+            }
+        }
+        Queue<String> pending = new ConcurrentLinkedQueue<>(tables);
+        AtomicInteger remaining = new AtomicInteger(tables.size());
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < Math.max(1, Math.min(workers, this.workers)); w++) {
+            futures.add(executor.submit(() -> {
+                for (String table; (table = pending.poll()) != null; ) {
+                    try {
+                        run(table, permits, failed, task);
+                    } finally {
+                        remaining.decrementAndGet();
+                    }
+                }
+                while (remaining.get() > 0 && !failed.get()) {
+                    if (!steal.getAsBoolean()) {
+                        Thread.sleep(STEAL_INTERVAL_MILLIS);
+                    }
+                }
+                return null;
+            }));
+        }
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new RuntimeException("Interrupted waiting for tables to be synchronized", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run(String table, List<Semaphore> permits, AtomicBoolean failed, Consumer<String> task) {
+        int acquired = 0;
+        try {
+            for (Semaphore p : permits) {
+                p.acquire();
+                acquired++;
+            }
+            if (failed.get()) {
+                LOGGER.info("Skipping " + table + " after an earlier failure");
+                return;
+            }
+            task.accept(table);
+        } catch (RuntimeException | Error e) {
+            failed.set(true);
+            throw e;
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting to synchronize " + table, e);
+        } finally {
+            for (int i = 0; i < acquired; i++) {
+                permits.get(i).release();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,158 @@
+package de.kune.mysqlsync;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of target sessions, so tables synchronized in parallel write over their own connections instead of
+ * sharing one statement. Sessions are opened on demand up to the size of the pool; further tables wait for a session
+ * to be released.
+ */
+final class TargetSessionPool implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(TargetSessionPool.class.getName());
+
+    /**
+     * A target connection not auto-committing, using the target schema, with its statement and the buffer of the
+     * statement being generated.
+     */
+    static final class Session {
+        private final Connection connection;
+        private final Statement statement;
+        private final StringBuilder buffer = new StringBuilder();
+
+        private Session(Connection connection, Statement statement) {
+            this.connection = connection;
+            this.statement = statement;
+        }
+
+        Statement getStatement() {
+            return statement;
+        }
+
+        StringBuilder getBuffer() {
+            return buffer;
+        }
+    }
+
+    private final DataSource target;
+    private final String schema;
+    private final int size;
+    private final Semaphore permits;
+    private final BlockingQueue<Session> idle;
+    private final List<Session> sessions = new ArrayList<>();
+
+    TargetSessionPool(DataSource target, String schema, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A target session pool needs at least one session");
+        }
+        this.target = target;
+        this.schema = schema;
+        this.size = size;
+        this.permits = new Semaphore(size);
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Takes an idle session, opens a new one if the pool is not exhausted or waits for a session to be released or
+     * discarded.
+     */
+    Session acquire() throws SQLException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a target session", e);
+        }
+        Session result = idle.poll();
+        if (result != null) {
+            return result;
+        }
+        try {
+            result = open();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        synchronized (sessions) {
+            sessions.add(result);
+            LOGGER.fine("Opened target session " + sessions.size() + " of " + size);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a session whose table has been synchronized, with its transaction committed.
+     */
+    void release(Session session) {
+        session.buffer.setLength(0);
+        idle.add(session);
+        permits.release();
+    }
+
+    /**
+     * Closes a session whose table failed, instead of returning it with an open transaction, locked tables or rows of
+     * an unfinished statement. MySQL rolls back the transaction and releases the locks of a closed connection. The next
+     * table opens a new session.
+     */
+    void discard(Session session) {
+        synchronized (sessions) {
+            sessions.remove(session);
+        }
+        try {
+            session.connection.close();
+        } catch (SQLException e) {
+            LOGGER.warning("Could not close a failed target session: " + e.getMessage());
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Session open() throws SQLException {
+        Connection connection = target.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            Statement statement = connection.createStatement();
+            statement.execute("USE " + DatabaseUtil.armor(schema));
+            return new Session(connection, statement);
+        } catch (SQLException e) {
+            try {
+                connection.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        SQLException failure = null;
+        synchronized (sessions) {
+            for (Session session : sessions) {
+                try {
+                    session.connection.close();
+                } catch (SQLException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            LOGGER.info("Closed " + sessions.size() + " target sessions");
+            sessions.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package de.kune.mysqlsync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the high-water marks of incrementally synchronized tables in a local file: the latest creation or last
+ * modified date read from the source, so the next run does not have to find it in the target table. The file is
+ * replaced atomically on every update.
+ * <p>
+ * Marks are date-times without a time zone, as the database stores them, and are bound as such to the queries.
+ */
+final class WatermarkStore {
+
+    private static final Logger LOGGER = Logger.getLogger(WatermarkStore.class.getName());
+
+    private final Path file;
+    private final Properties properties = new Properties();
+
+    private WatermarkStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the marks of earlier runs, if the file exists.
+     */
+    static WatermarkStore open(Path file) {
+        WatermarkStore result = new WatermarkStore(file);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                result.properties.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read high-water marks " + file, e);
+            }
+            LOGGER.info("Loaded " + result.properties.size() + " high-water marks from " + file);
+        }
+        return result;
+    }
+
+    /**
+     * @return the mark of the table in the target schema or null if it has not been synchronized incrementally yet
+     */
+    synchronized LocalDateTime get(String targetSchema, String table) {
+        String value = properties.getProperty(targetSchema + "." + table);
+        return value == null ? null : LocalDateTime.parse(value);
+    }
+
+    /**
+     * Records the mark of a table once the rows up to it have been committed to the target.
+     */
+    synchronized void set(String targetSchema, String table, LocalDateTime mark) {
+        properties.setProperty(targetSchema + "." + table, mark.toString());
+        write();
+        LOGGER.fine("High-water mark of " + table + " " + mark);
+    }
+
+    /**
+     * Converts a date column value or a date-time as MySQL prints it.
+     *
+     * @return the date-time or null if the value is null
+     */
+    static LocalDateTime toDateTime(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate().atStartOfDay();
+        }
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay();
+        }
+        String text = value.toString().trim();
+        return text.length() <= 10 ? LocalDate.parse(text).atStartOfDay() : Timestamp.valueOf(text).toLocalDateTime();
+    }
+
+    private void write() {
+        PropertiesFiles.storeAtomically(file, properties, "mysql-sync high-water marks", "high-water marks");
+    }
+}
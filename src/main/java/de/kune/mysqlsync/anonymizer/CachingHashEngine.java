@@ -0,0 +1,53 @@
+package de.kune.mysqlsync.anonymizer;
+
+/**
+ * A direct-mapped memo cache per thread in front of another engine.
+ */
+final class CachingHashEngine implements HashEngine {
+
+    private static final class Slots {
+        private final String[] keys;
+        private final long[] hashes;
+
+        private Slots(int size) {
+            keys = new String[size];
+            hashes = new long[size];
+        }
+    }
+
+    private final HashEngine engine;
+    private final int mask;
+    private final ThreadLocal<Slots> slots;
+
+    CachingHashEngine(HashEngine engine, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("invalid cache capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.min(capacity, 1 << 30));
+        size = size < capacity ? size << 1 : size;
+        this.engine = engine;
+        this.mask = size - 1;
+        int slotCount = size;
+        this.slots = ThreadLocal.withInitial(() -> new Slots(slotCount));
+    }
+
+    @Override
+    public long hash(String value) {
+        Slots s = slots.get();
+        int h = value.hashCode() * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+        String key = s.keys[slot];
+        if (key != null && key.equals(value)) {
+            return s.hashes[slot];
+        }
+        long result = engine.hash(value);
+        s.keys[slot] = value;
+        s.hashes[slot] = result;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return engine + " (cached, " + (mask + 1) + " entries per thread)";
+    }
+}
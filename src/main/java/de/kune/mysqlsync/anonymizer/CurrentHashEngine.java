@@ -0,0 +1,12 @@
+package de.kune.mysqlsync.anonymizer;
+
+/**
+ * Holds the engine selected with {@link HashEngine#use(HashEngine)}.
+ */
+final class CurrentHashEngine {
+
+    static volatile HashEngine engine = HashEngine.md5();
+
+    private CurrentHashEngine() {
+    }
+}
@@ -1,18 +1,13 @@
 package de.kune.mysqlsync.anonymizer;
 
 import java.math.BigInteger;
-import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import static java.lang.String.format;
 import static java.util.Collections.unmodifiableList;
-import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 @FunctionalInterface
@@ -25,8 +20,8 @@ public interface FieldAnonymizer {
     List<String> STREET_NUMBERS = IntStream.range(1, 180).boxed().map(i->Integer.toString(i)).collect(toList());
 
 
-    FieldAnonymizer DEFAULT = (k, v, c) -> hash(v);
-    FieldAnonymizer DEFAULT_RETAIN_LENGTH = (k, v, c) -> trimToSameLength(hash(v), v);
+    FieldAnonymizer DEFAULT = (HashingAnonymizer) HashingAnonymizer::hash;
+    FieldAnonymizer DEFAULT_RETAIN_LENGTH = (HashingAnonymizer) (v, e) -> trimToSameLength(HashingAnonymizer.hash(v, e), v);
 
     static String trimToSameLength(String hash, Object k) {
         if (hash == null) {
@@ -44,15 +39,22 @@ public interface FieldAnonymizer {
         return hash;
     }
 
-    FieldAnonymizer CITY = (k, v, c) -> hash(CITIES, v);
-    FieldAnonymizer FIRST_NAME = (k, v, c) -> hash(FIRST_NAMES, v);
-    FieldAnonymizer LAST_NAME = (k, v, c) -> hash(LAST_NAMES, v);
-    FieldAnonymizer FULL_NAME = (k, v, c) -> LAST_NAME.anonymize(k, v, c) + ", " + FIRST_NAME.anonymize(k, v, c);
-    FieldAnonymizer STREET = (k, v, c) -> hash(STREETS, v);
-    FieldAnonymizer STREET_NUMBER = (k, v, c) -> hash(STREET_NUMBERS, v);
-    FieldAnonymizer PHONE = (k, v, c) -> "+" + hash(v);
-    FieldAnonymizer POST_CODE = (k, v, c) -> v == null ? null : Long.toString(Math.abs(hashNumber(v)) % 100000);
-    FieldAnonymizer IBAN = (k, v, c) -> {
+    FieldAnonymizer CITY = new PickingAnonymizer(CITIES);
+    FieldAnonymizer FIRST_NAME = new PickingAnonymizer(FIRST_NAMES);
+    FieldAnonymizer LAST_NAME = new PickingAnonymizer(LAST_NAMES);
+    FieldAnonymizer FULL_NAME = (HashingAnonymizer) (v, e) -> {
+        if (v == null || v.equals("")) {
+            String name = v == null ? null : "";
+            return name + ", " + name;
+        }
+        long hash = HashingAnonymizer.hashNumber(v, e);
+        return pick(LAST_NAMES, hash) + ", " + pick(FIRST_NAMES, hash);
+    };
+    FieldAnonymizer STREET = new PickingAnonymizer(STREETS);
+    FieldAnonymizer STREET_NUMBER = new PickingAnonymizer(STREET_NUMBERS);
+    FieldAnonymizer PHONE = (HashingAnonymizer) (v, e) -> "+" + HashingAnonymizer.hash(v, e);
+    FieldAnonymizer POST_CODE = (HashingAnonymizer) (v, e) -> v == null ? null : Long.toString(Math.abs(HashingAnonymizer.hashNumber(v, e)) % 100000);
+    FieldAnonymizer IBAN = (HashingAnonymizer) (v, e) -> {
         if (v == null) {
             return null;
         }
@@ -64,11 +66,25 @@ public interface FieldAnonymizer {
         }
         String prefix = v.toString().substring(0, 2);
         if (prefix.toLowerCase().equals("de")) {
-            long number = Math.abs(hashNumber(v)) % 1000000000000000000L;
-            String checksum = format("%02d", BigInteger.valueOf(98).subtract(new BigInteger(Long.toString(number) + "131400").mod(BigInteger.valueOf(97))).intValue());
-            return format("%s%s%018d", prefix, checksum, number);
+            long number = Math.abs(HashingAnonymizer.hashNumber(v, e)) % 1000000000000000000L;
+            if (number < 0) {
+                String checksum = format("%02d", BigInteger.valueOf(98).subtract(new BigInteger(Long.toString(number) + "131400").mod(BigInteger.valueOf(97))).intValue());
+                return format("%s%s%018d", prefix, checksum, number);
+            }
+            // the check digits of the account number followed by DE00 (131400), computed without BigInteger
+            int checksum = 98 - (int) (((number % 97) * (1000000 % 97) + 131400) % 97);
+            StringBuilder result = new StringBuilder(22).append(prefix);
+            if (checksum < 10) {
+                result.append('0');
+            }
+            result.append(checksum);
+            String digits = Long.toString(number);
+            for (int i = digits.length(); i < 18; i++) {
+                result.append('0');
+            }
+            return result.append(digits).toString();
         } else {
-            return prefix + Math.abs(hashNumber(v));
+            return prefix + Math.abs(HashingAnonymizer.hashNumber(v, e));
         }
     };
 
@@ -116,16 +132,52 @@ public interface FieldAnonymizer {
             case "defaultretainlength": return DEFAULT_RETAIN_LENGTH;
             case "default": return DEFAULT;
         }
-        final Pattern GENERIC_ANONYMIZER_PATTERN = Pattern.compile("generic\\((?<expr>.*?)\\)");
+        final Pattern GENERIC_ANONYMIZER_PATTERN = Pattern.compile("generic\\((?<expr>.*)\\)");
         Matcher matcher = GENERIC_ANONYMIZER_PATTERN.matcher(anonymizer);
         if (matcher.find()) {
             return new GenericAnonymizer(matcher.group("expr"));
         }
+        Matcher token = Pattern.compile("token\\((?<domain>[^)]+)\\)").matcher(anonymizer);
+        if (token.matches()) {
+            return new TokenAnonymizer(token.group("domain").trim());
+        }
         throw new IllegalArgumentException("Unknown anonymizer " + anonymizer);
     }
 
+    /**
+     * @return the name {@link #findByName(String)} resolves to the given anonymizer, or its string representation
+     */
+    static String nameOf(FieldAnonymizer anonymizer) {
+        if (anonymizer == CITY) return "city";
+        if (anonymizer == FIRST_NAME) return "first_name";
+        if (anonymizer == LAST_NAME) return "last_name";
+        if (anonymizer == FULL_NAME) return "full_name";
+        if (anonymizer == STREET) return "street";
+        if (anonymizer == STREET_NUMBER) return "street_number";
+        if (anonymizer == PHONE) return "phone";
+        if (anonymizer == POST_CODE) return "post_code";
+        if (anonymizer == IBAN) return "iban";
+        if (anonymizer == DEFAULT_RETAIN_LENGTH) return "default_retain_length";
+        if (anonymizer == DEFAULT) return "default";
+        return String.valueOf(anonymizer);
+    }
+
     String anonymize(String key, Object value,  Map<String, Object> context);
 
+    /**
+     * Anonymizes a column of a batch of rows, replacing <code>values[i]</code>, the value of the column in
+     * <code>rows[i]</code>, by its anonymized value. The synchronizer calls this once per anonymized column and batch,
+     * so implementations can set up once and anonymize the values in a tight loop. By default each value is anonymized
+     * on its own.
+     *
+     * @param count the number of values, the arrays may be longer
+     */
+    default void anonymizeColumn(String key, Object[] values, Map<String, Object>[] rows, int count) {
+        for (int i = 0; i < count; i++) {
+            values[i] = anonymize(key, values[i], rows[i]);
+        }
+    }
+
     static String hash(Object input) {
         if (input == null) {
             return null;
@@ -136,12 +188,11 @@ public interface FieldAnonymizer {
         return Long.toString(hashNumber(input));
     }
 
+    /**
+     * Hashes the string representation of the input with the engine selected by {@link HashEngine#use(HashEngine)}.
+     */
     static long hashNumber(Object input) {
-        try {
-            return Math.abs(new BigInteger(MessageDigest.getInstance("md5").digest(Stream.of(input).map(Object::toString).collect(joining()).getBytes(Charset.defaultCharset()))).longValue());
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
+        return HashingAnonymizer.hashNumber(input, HashEngine.current());
     }
 
     static String hash(List<String> candidates, Object input) {
@@ -151,7 +202,11 @@ public interface FieldAnonymizer {
         if (input.equals("")) {
             return "";
         }
-        return Stream.of(input).map(s->candidates.get((int) (Math.abs(hashNumber(s) % candidates.size())))).collect(joining(" "));
+        return pick(candidates, hashNumber(input));
+    }
+
+    static String pick(List<String> candidates, long hash) {
+        return candidates.get((int) Math.abs(hash % candidates.size()));
     }
 
     static boolean isLike(String key, String pattern) {
@@ -1,34 +1,192 @@
 package de.kune.mysqlsync.anonymizer;
 
-import java.util.HashMap;
+import de.kune.mysqlsync.DatabaseUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
-import java.util.regex.Matcher;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
+/**
+ * Builds values from a template with <code>${column}</code> placeholders, replaced by the values of the columns of the
+ * row or <code>NULL</code>. Placeholders may apply functions to a column, e.g. <code>${hash(email)}</code> or
+ * <code>${lower(hash(email))}</code>; supported are hash, lower, upper and trim.
+ * <p>
+ * The template is parsed once. Placeholders are resolved to column indexes once per result set, or per batch of rows
+ * sharing their columns, and substituted values are not expanded again.
+ */
 public class GenericAnonymizer implements FieldAnonymizer {
 
     public static final Pattern EXPRESSION_PATTERN = Pattern.compile("(?<expr>\\$\\{(?<key>.*?)})");
+
+    private static final String NULL = "NULL";
+
     private final String expression;
+    private final String[] literals;
+    private final Placeholder[] placeholders;
+    private final String[] columns;
+    private final int literalLength;
+    private volatile ResolvedColumns resolved;
+
+    /**
+     * A column value passed through functions.
+     */
+    private static final class Placeholder {
+        private final int column;
+        private final List<UnaryOperator<Object>> functions;
+
+        private Placeholder(int column, List<UnaryOperator<Object>> functions) {
+            this.column = column;
+            this.functions = functions;
+        }
+    }
+
+    /**
+     * The indexes of the template columns in the rows of one result set.
+     */
+    private static final class ResolvedColumns {
+        private final DatabaseUtil.Row row;
+        private final int[] indexes;
+
+        private ResolvedColumns(DatabaseUtil.Row row, int[] indexes) {
+            this.row = row;
+            this.indexes = indexes;
+        }
+    }
 
     public GenericAnonymizer(String expression) {
         this.expression = expression;
+        List<String> literals = new ArrayList<>();
+        List<Placeholder> placeholders = new ArrayList<>();
+        List<String> columns = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int length = 0;
+        int i = 0;
+        while (i < expression.length()) {
+            int start = expression.indexOf("${", i);
+            int end = start < 0 ? -1 : expression.indexOf('}', start + 2);
+            if (end < 0) {
+                literal.append(expression, i, expression.length());
+                break;
+            }
+            literal.append(expression, i, start);
+            literals.add(literal.toString());
+            length += literal.length();
+            literal.setLength(0);
+            placeholders.add(parse(expression.substring(start + 2, end), columns));
+            i = end + 1;
+        }
+        literals.add(literal.toString());
+        this.literals = literals.toArray(new String[0]);
+        this.placeholders = placeholders.toArray(new Placeholder[0]);
+        this.columns = columns.toArray(new String[0]);
+        this.literalLength = length + literal.length();
+    }
+
+    private static Placeholder parse(String key, List<String> columns) {
+        List<UnaryOperator<Object>> functions = new ArrayList<>();
+        String argument = key;
+        while (argument.endsWith(")") && argument.indexOf('(') > 0) {
+            int open = argument.indexOf('(');
+            UnaryOperator<Object> function = function(argument.substring(0, open).trim());
+            if (function == null) {
+                break;
+            }
+            functions.add(0, function);
+            argument = argument.substring(open + 1, argument.length() - 1).trim();
+        }
+        int column = columns.indexOf(argument);
+        if (column < 0) {
+            column = columns.size();
+            columns.add(argument);
+        }
+        return new Placeholder(column, functions);
+    }
+
+    private static UnaryOperator<Object> function(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "hash":
+                return FieldAnonymizer::hash;
+            case "lower":
+                return v -> v == null ? null : v.toString().toLowerCase(Locale.ROOT);
+            case "upper":
+                return v -> v == null ? null : v.toString().toUpperCase(Locale.ROOT);
+            case "trim":
+                return v -> v == null ? null : v.toString().trim();
+        }
+        return null;
     }
 
     @Override
     public String anonymize(String key, Object value, Map<String, Object> context) {
-        String result = eval(expression, key, value, context);
-        return result;
+        Object[] values = new Object[columns.length];
+        if (context instanceof DatabaseUtil.Row) {
+            DatabaseUtil.Row row = (DatabaseUtil.Row) context;
+            int[] indexes = resolve(row);
+            for (int i = 0; i < indexes.length; i++) {
+                values[i] = indexes[i] < 0 ? null : row.get(indexes[i]);
+            }
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = context.get(columns[i]);
+            }
+        }
+        return render(values);
     }
 
-    private String eval(String expression, String key, Object value, Map<String, Object> context) {
-        String x = expression;
-        Matcher matcher = EXPRESSION_PATTERN.matcher(x);
-        while (matcher.find()) {
-            x = x.replace(matcher.group("expr"), Optional.ofNullable(context.get(matcher.group("key"))).map(Object::toString).orElse("NULL"));
-            matcher = EXPRESSION_PATTERN.matcher(x);
+    @Override
+    public void anonymizeColumn(String key, Object[] values, Map<String, Object>[] rows, int count) {
+        if (count == 0 || !(rows[0] instanceof DatabaseUtil.Row)) {
+            FieldAnonymizer.super.anonymizeColumn(key, values, rows, count);
+            return;
+        }
+        DatabaseUtil.Row first = (DatabaseUtil.Row) rows[0];
+        int[] indexes = resolve(first);
+        Object[] columnValues = new Object[columns.length];
+        for (int i = 0; i < count; i++) {
+            if (rows[i] != first && !(rows[i] instanceof DatabaseUtil.Row && first.hasSameColumns((DatabaseUtil.Row) rows[i]))) {
+                values[i] = anonymize(key, values[i], rows[i]);
+                continue;
+            }
+            DatabaseUtil.Row row = (DatabaseUtil.Row) rows[i];
+            for (int c = 0; c < indexes.length; c++) {
+                columnValues[c] = indexes[c] < 0 ? null : row.get(indexes[c]);
+            }
+            values[i] = render(columnValues);
         }
-        return x;
+    }
+
+    private String render(Object[] values) {
+        StringBuilder result = new StringBuilder(literalLength + 16 * placeholders.length);
+        for (int i = 0; i < placeholders.length; i++) {
+            result.append(literals[i]);
+            Object v = values[placeholders[i].column];
+            for (UnaryOperator<Object> function : placeholders[i].functions) {
+                v = function.apply(v);
+            }
+            result.append(v == null ? NULL : v.toString());
+        }
+        return result.append(literals[placeholders.length]).toString();
+    }
+
+    private int[] resolve(DatabaseUtil.Row row) {
+        ResolvedColumns r = resolved;
+        if (r == null || r.row != row) {
+            int[] indexes = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                indexes[i] = row.indexOf(columns[i]);
+            }
+            r = new ResolvedColumns(row, indexes);
+            resolved = r;
+        }
+        return r.indexes;
+    }
+
+    @Override
+    public String toString() {
+        return "generic(" + expression + ")";
     }
 
 }
@@ -0,0 +1,76 @@
+package de.kune.mysqlsync.anonymizer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Maps the string representation of a value to a 64 bit hash for the anonymizers. Implementations keep their state
+ * per thread, so hashing does not allocate.
+ * <p>
+ * The engine used by {@link FieldAnonymizer#hashNumber(Object)} is configured with {@link #use(HashEngine)}. It
+ * defaults to {@link #md5()}, which produces the outputs of earlier versions. Earlier versions hashed the bytes of the
+ * platform charset, so on platforms with another default charset than UTF-8 the outputs of values with non-ASCII
+ * characters differ.
+ */
+@FunctionalInterface
+public interface HashEngine {
+
+    long hash(String value);
+
+    /**
+     * The MD5 hash of the UTF-8 bytes, taking the last 8 bytes of the digest as big endian long like earlier versions
+     * did.
+     */
+    static HashEngine md5() {
+        return Md5HashEngine.INSTANCE;
+    }
+
+    /**
+     * SipHash-2-4 of the UTF-8 bytes keyed with a secret salt. Much faster than MD5, and the outputs cannot be
+     * reproduced without the salt.
+     */
+    static HashEngine sipHash(String salt) {
+        try {
+            byte[] key = MessageDigest.getInstance("SHA-256").digest(salt.getBytes(StandardCharsets.UTF_8));
+            return new SipHashEngine(Arrays.copyOf(key, 16));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Memoizes the results of an engine in a direct-mapped cache per thread, which pays off for values that repeat
+     * often, like cities. A value evicts the value cached in its slot.
+     *
+     * @param capacity the number of cached values per thread, rounded up to a power of two
+     */
+    static HashEngine cached(HashEngine engine, int capacity) {
+        return new CachingHashEngine(engine, capacity);
+    }
+
+    static HashEngine forName(String name, String salt) {
+        switch (name.toLowerCase()) {
+            case "md5":
+                return md5();
+            case "siphash":
+                if (salt == null) {
+                    throw new IllegalArgumentException("siphash requires a salt");
+                }
+                return sipHash(salt);
+        }
+        throw new IllegalArgumentException("Unknown hash engine " + name);
+    }
+
+    /**
+     * Selects the engine of all anonymizers.
+     */
+    static void use(HashEngine engine) {
+        CurrentHashEngine.engine = engine;
+    }
+
+    static HashEngine current() {
+        return CurrentHashEngine.engine;
+    }
+}
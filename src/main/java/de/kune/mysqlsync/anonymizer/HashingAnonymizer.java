@@ -0,0 +1,40 @@
+package de.kune.mysqlsync.anonymizer;
+
+import java.util.Map;
+
+/**
+ * An anonymizer deriving values from the hash of the value only. A batch of values is hashed with the engine looked up
+ * once.
+ */
+@FunctionalInterface
+interface HashingAnonymizer extends FieldAnonymizer {
+
+    String anonymize(Object value, HashEngine engine);
+
+    @Override
+    default String anonymize(String key, Object value, Map<String, Object> context) {
+        return anonymize(value, HashEngine.current());
+    }
+
+    @Override
+    default void anonymizeColumn(String key, Object[] values, Map<String, Object>[] rows, int count) {
+        HashEngine engine = HashEngine.current();
+        for (int i = 0; i < count; i++) {
+            values[i] = anonymize(values[i], engine);
+        }
+    }
+
+    static long hashNumber(Object input, HashEngine engine) {
+        return Math.abs(engine.hash(input.toString()));
+    }
+
+    static String hash(Object input, HashEngine engine) {
+        if (input == null) {
+            return null;
+        }
+        if (input.equals("")) {
+            return "";
+        }
+        return Long.toString(hashNumber(input, engine));
+    }
+}
@@ -0,0 +1,55 @@
+package de.kune.mysqlsync.anonymizer;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The legacy MD5 engine with a digest per thread.
+ */
+final class Md5HashEngine implements HashEngine {
+
+    static final Md5HashEngine INSTANCE = new Md5HashEngine();
+
+    private static final class State {
+        private final MessageDigest md5;
+        private final Utf8Buffer input = new Utf8Buffer();
+        private final byte[] digest = new byte[16];
+
+        private State() {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private Md5HashEngine() {
+    }
+
+    @Override
+    public long hash(String value) {
+        State state = STATE.get();
+        Utf8Buffer input = state.input.encode(value);
+        state.md5.update(input.bytes, 0, input.length);
+        try {
+            state.md5.digest(state.digest, 0, 16);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        // the low 64 bits of the digest read as big endian two's complement number
+        long result = 0;
+        for (int i = 8; i < 16; i++) {
+            result = (result << 8) | (state.digest[i] & 0xFF);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "md5";
+    }
+}
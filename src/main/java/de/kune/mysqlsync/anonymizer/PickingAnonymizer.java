@@ -0,0 +1,39 @@
+package de.kune.mysqlsync.anonymizer;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces values by one of a list of candidates picked by the hash of the value.
+ */
+final class PickingAnonymizer implements HashingAnonymizer {
+
+    private final String[] candidates;
+
+    PickingAnonymizer(List<String> candidates) {
+        this.candidates = candidates.toArray(new String[0]);
+    }
+
+    @Override
+    public String anonymize(Object value, HashEngine engine) {
+        if (value == null) {
+            return null;
+        }
+        if (value.equals("")) {
+            return "";
+        }
+        return candidates[(int) Math.abs(HashingAnonymizer.hashNumber(value, engine) % candidates.length)];
+    }
+
+    @Override
+    public void anonymizeColumn(String key, Object[] values, Map<String, Object>[] rows, int count) {
+        HashEngine engine = HashEngine.current();
+        String[] candidates = this.candidates;
+        for (int i = 0; i < count; i++) {
+            Object value = values[i];
+            if (value != null && !value.equals("")) {
+                values[i] = candidates[(int) Math.abs(Math.abs(engine.hash(value.toString())) % candidates.length)];
+            }
+        }
+    }
+}
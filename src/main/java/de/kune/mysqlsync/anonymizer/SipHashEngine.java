@@ -0,0 +1,74 @@
+package de.kune.mysqlsync.anonymizer;
+
+/**
+ * SipHash-2-4 with a 128 bit key.
+ */
+final class SipHashEngine implements HashEngine {
+
+    private static final ThreadLocal<Utf8Buffer> INPUT = ThreadLocal.withInitial(Utf8Buffer::new);
+
+    private final long k0, k1;
+
+    SipHashEngine(byte[] key) {
+        this.k0 = readLongLE(key, 0);
+        this.k1 = readLongLE(key, 8);
+    }
+
+    @Override
+    public long hash(String value) {
+        Utf8Buffer input = INPUT.get().encode(value);
+        return hash(input.bytes, input.length);
+    }
+
+    long hash(byte[] data, int length) {
+        long v0 = 0x736f6d6570736575L ^ k0;
+        long v1 = 0x646f72616e646f6dL ^ k1;
+        long v2 = 0x6c7967656e657261L ^ k0;
+        long v3 = 0x7465646279746573L ^ k1;
+        int end = length - (length & 7);
+        for (int i = 0; i < end; i += 8) {
+            long m = readLongLE(data, i);
+            v3 ^= m;
+            for (int r = 0; r < 2; r++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+        long m = ((long) length) << 56;
+        for (int i = end; i < length; i++) {
+            m |= (data[i] & 0xFFL) << (8 * (i - end));
+        }
+        v3 ^= m;
+        for (int r = 0; r < 2; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= m;
+        v2 ^= 0xff;
+        for (int r = 0; r < 4; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private static long readLongLE(byte[] b, int offset) {
+        long result = 0;
+        for (int i = 7; i >= 0; i--) {
+            result = (result << 8) | (b[offset + i] & 0xFFL);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "siphash";
+    }
+}
@@ -0,0 +1,48 @@
+package de.kune.mysqlsync.anonymizer;
+
+import java.util.Map;
+
+/**
+ * Replaces values by their token in a domain of the current {@link TokenVault}. Columns sharing a domain, e.g. the email
+ * addresses of several tables, get the same token for the same value, and different values never get the same token.
+ */
+public class TokenAnonymizer implements FieldAnonymizer {
+
+    private final String domain;
+
+    public TokenAnonymizer(String domain) {
+        this.domain = domain;
+    }
+
+    @Override
+    public String anonymize(String key, Object value, Map<String, Object> context) {
+        if (value == null) {
+            return null;
+        }
+        String s = value.toString();
+        if (s.isEmpty()) {
+            return "";
+        }
+        return Long.toString(TokenVault.current().token(domain, s));
+    }
+
+    @Override
+    public void anonymizeColumn(String key, Object[] values, Map<String, Object>[] rows, int count) {
+        TokenVault vault = TokenVault.current();
+        // holds the lock of the vault for the batch instead of acquiring it per value
+        synchronized (vault) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] != null) {
+                    String s = values[i].toString();
+                    values[i] = s.isEmpty() ? "" : Long.toString(vault.token(domain, s));
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "token(" + domain + ")";
+    }
+
+}
@@ -0,0 +1,283 @@
+package de.kune.mysqlsync.anonymizer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Assigns tokens to values per domain, e.g. all email addresses, so equal values get equal tokens across tables and
+ * runs and different values of a domain never share a token.
+ * <p>
+ * A token is the hash of the value computed by the current {@link HashEngine}, the same number the default anonymizer
+ * produces. If the hash is already the token of another value of the domain, the value is hashed again with a counter
+ * until a free token is found. The
+ * assignments are kept in an open addressing hash table, memory-mapped from a file if the vault is persistent, so later
+ * runs reuse the tokens instead of computing them again and collisions are resolved the same way.
+ * <p>
+ * The table stores keyed 128 bit fingerprints of the values, not the values themselves. The fingerprint key is
+ * generated when the file is created; the file still allows recognizing known values and must be protected like the
+ * data. A file holds up to about 11 million values.
+ */
+public final class TokenVault implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(TokenVault.class.getName());
+
+    private static final int MAGIC = 0x4D53_5456;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final long INITIAL_CAPACITY = 1 << 16;
+    // a single mapping is limited to 2 GB
+    private static final long MAX_CAPACITY = 1L << 25;
+    private static final long REVERSE = 0x9E37_79B9_7F4A_7C15L;
+
+    private static volatile TokenVault current;
+
+    private final Path path;
+    private FileChannel channel;
+    private ByteBuffer table;
+    private long capacity;
+    private long size;
+    private final SipHashEngine fingerprint1, fingerprint2;
+    private final Utf8Buffer input = new Utf8Buffer();
+    private long collisions;
+
+    private TokenVault(Path path, FileChannel channel, ByteBuffer table) {
+        this.path = path;
+        this.channel = channel;
+        this.table = table;
+        if (table.getInt(0) != MAGIC || table.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a token vault: " + path);
+        }
+        this.capacity = table.getLong(8);
+        this.size = table.getLong(16);
+        byte[] key = new byte[32];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = table.get(24 + i);
+        }
+        this.fingerprint1 = new SipHashEngine(Arrays.copyOfRange(key, 0, 16));
+        this.fingerprint2 = new SipHashEngine(Arrays.copyOfRange(key, 16, 32));
+    }
+
+    /**
+     * Opens the vault file or creates it if it does not exist.
+     */
+    public static TokenVault open(Path path) {
+        try {
+            boolean exists = Files.exists(path) && Files.size(path) > 0;
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer table;
+            if (exists) {
+                table = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            } else {
+                table = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + INITIAL_CAPACITY * SLOT_SIZE);
+                initialize(table, INITIAL_CAPACITY, newKey());
+            }
+            TokenVault result = new TokenVault(path, channel, table);
+            LOGGER.info("Opened token vault " + path + " with " + result.size / 2 + " tokens");
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open token vault " + path, e);
+        }
+    }
+
+    /**
+     * Creates a vault kept in memory only, the tokens are consistent within one run.
+     */
+    public static TokenVault inMemory() {
+        ByteBuffer table = ByteBuffer.allocate((int) (HEADER_SIZE + INITIAL_CAPACITY * SLOT_SIZE));
+        initialize(table, INITIAL_CAPACITY, newKey());
+        return new TokenVault(null, null, table);
+    }
+
+    /**
+     * Selects the vault of the token anonymizers.
+     */
+    public static void use(TokenVault vault) {
+        current = vault;
+    }
+
+    /**
+     * @return the vault selected with {@link #use(TokenVault)} or an in-memory vault if none was selected
+     */
+    public static TokenVault current() {
+        TokenVault result = current;
+        if (result == null) {
+            synchronized (TokenVault.class) {
+                if (current == null) {
+                    LOGGER.info("No token vault configured, tokens are not persisted");
+                    current = inMemory();
+                }
+                result = current;
+            }
+        }
+        return result;
+    }
+
+    private static byte[] newKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    private static void initialize(ByteBuffer table, long capacity, byte[] key) {
+        table.putInt(0, MAGIC);
+        table.putInt(4, VERSION);
+        table.putLong(8, capacity);
+        table.putLong(16, 0);
+        for (int i = 0; i < key.length; i++) {
+            table.put(24 + i, key[i]);
+        }
+    }
+
+    /**
+     * Returns the token of a value in a domain, assigning a new token if the value has none yet.
+     *
+     * @return the token, non-negative like {@link FieldAnonymizer#hashNumber(Object)}
+     */
+    public synchronized long token(String domain, String value) {
+        Utf8Buffer bytes = input.encode(domain + '\u0000' + value);
+        long fp1 = fingerprint1.hash(bytes.bytes, bytes.length);
+        long fp2 = fingerprint2.hash(bytes.bytes, bytes.length);
+        long slot = find(fp1, fp2);
+        if (slot >= 0) {
+            return table.getLong((int) offset(slot) + 16);
+        }
+        bytes = input.encode(domain);
+        long domainKey = fingerprint1.hash(bytes.bytes, bytes.length) ^ REVERSE;
+        long token = Math.abs(HashEngine.current().hash(value));
+        for (int attempt = 1; find(domainKey, token) >= 0; attempt++) {
+            collisions++;
+            token = Math.abs(HashEngine.current().hash(value + '\u0000' + attempt));
+        }
+        ensureCapacity(2);
+        put(fp1, fp2, token, 0);
+        put(domainKey, token, fp1, fp2);
+        return token;
+    }
+
+    private long offset(long slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private long home(long k1, long k2) {
+        long h = (k1 ^ Long.rotateLeft(k2, 29)) * 0x9E37_79B9_7F4A_7C15L;
+        return (h >>> 16) & (capacity - 1);
+    }
+
+    private long find(long k1, long k2) {
+        if (k1 == 0 && k2 == 0) {
+            k2 = 1;
+        }
+        for (long slot = home(k1, k2); ; slot = (slot + 1) & (capacity - 1)) {
+            int o = (int) offset(slot);
+            long s1 = table.getLong(o);
+            long s2 = table.getLong(o + 8);
+            if (s1 == 0 && s2 == 0) {
+                return -1;
+            }
+            if (s1 == k1 && s2 == k2) {
+                return slot;
+            }
+        }
+    }
+
+    private void put(long k1, long k2, long v1, long v2) {
+        if (k1 == 0 && k2 == 0) {
+            k2 = 1;
+        }
+        long slot = home(k1, k2);
+        while (table.getLong((int) offset(slot)) != 0 || table.getLong((int) offset(slot) + 8) != 0) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        int o = (int) offset(slot);
+        table.putLong(o, k1);
+        table.putLong(o + 8, k2);
+        table.putLong(o + 16, v1);
+        table.putLong(o + 24, v2);
+        size++;
+        table.putLong(16, size);
+    }
+
+    private void ensureCapacity(int additional) {
+        if ((size + additional) * 10 <= capacity * 7) {
+            return;
+        }
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Token vault " + (path == null ? "" : path + " ") + "is full");
+        }
+        long newCapacity = capacity * 2;
+        ByteBuffer old = table;
+        long oldCapacity = capacity;
+        try {
+            FileChannel newChannel = null;
+            Path tmp = null;
+            if (path == null) {
+                table = ByteBuffer.allocate((int) (HEADER_SIZE + newCapacity * SLOT_SIZE));
+            } else {
+                tmp = path.resolveSibling(path.getFileName() + ".tmp");
+                newChannel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                table = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + newCapacity * SLOT_SIZE);
+            }
+            for (int i = 0; i < 24 + 32; i++) {
+                table.put(i, old.get(i));
+            }
+            capacity = newCapacity;
+            size = 0;
+            table.putLong(8, capacity);
+            for (long slot = 0; slot < oldCapacity; slot++) {
+                int o = (int) (HEADER_SIZE + slot * SLOT_SIZE);
+                long k1 = old.getLong(o);
+                long k2 = old.getLong(o + 8);
+                if (k1 != 0 || k2 != 0) {
+                    put(k1, k2, old.getLong(o + 16), old.getLong(o + 24));
+                }
+            }
+            if (path != null) {
+                ((MappedByteBuffer) table).force();
+                channel.close();
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = newChannel;
+            }
+            LOGGER.fine("Grew token vault to " + capacity + " slots");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow token vault " + path, e);
+        }
+    }
+
+    public synchronized long size() {
+        return size / 2;
+    }
+
+    /**
+     * @return the number of tokens that had to be rehashed because they belonged to another value
+     */
+    public synchronized long getCollisions() {
+        return collisions;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            ((MappedByteBuffer) table).force();
+            channel.close();
+            LOGGER.info("Closed token vault " + path + " with " + size / 2 + " tokens, " + collisions + " collisions resolved in this run");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close token vault " + path, e);
+        } finally {
+            channel = null;
+        }
+    }
+}
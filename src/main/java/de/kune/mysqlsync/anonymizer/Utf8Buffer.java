@@ -0,0 +1,45 @@
+package de.kune.mysqlsync.anonymizer;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer holding the UTF-8 encoding of a string, unpaired surrogates are encoded as '?' like
+ * {@link String#getBytes(java.nio.charset.Charset)} does.
+ */
+final class Utf8Buffer {
+
+    byte[] bytes = new byte[256];
+    int length;
+
+    Utf8Buffer encode(String s) {
+        int n = s.length();
+        if (bytes.length < n * 3) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, n * 3));
+        }
+        byte[] b = bytes;
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                b[p++] = (byte) (0xF0 | (codePoint >> 18));
+                b[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        length = p;
+        return this;
+    }
+}
@@ -0,0 +1,78 @@
+package de.kune.mysqlsync;
+
+import de.kune.mysqlsync.anonymizer.FieldAnonymizer;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AnonymizationPlanTest {
+
+    private static final Map<Pattern, FieldAnonymizer> ANONYMIZERS = new LinkedHashMap<>();
+
+    static {
+        ANONYMIZERS.put(Pattern.compile("customer\\.first_name"), FieldAnonymizer.FIRST_NAME);
+        ANONYMIZERS.put(Pattern.compile(".*\\.(first_)?name"), FieldAnonymizer.FULL_NAME);
+        ANONYMIZERS.put(Pattern.compile(".*\\.iban"), FieldAnonymizer.IBAN);
+    }
+
+    @Test
+    public void resolves_the_first_matching_pattern_per_column() {
+        AnonymizationPlan plan = AnonymizationPlan.create("customer", asList("id", "first_name", "name", "iban"), ANONYMIZERS);
+        assertThat(plan.getTable()).isEqualTo("customer");
+        assertThat(plan.isEmpty()).isFalse();
+        assertThat(plan.getAnonymizedColumns()).containsExactly(1, 2, 3);
+        assertThat(plan.get(0)).isNull();
+        assertThat(plan.get(1)).isSameAs(FieldAnonymizer.FIRST_NAME);
+        assertThat(plan.get(2)).isSameAs(FieldAnonymizer.FULL_NAME);
+        assertThat(plan.get("first_name")).isSameAs(FieldAnonymizer.FIRST_NAME);
+        assertThat(plan.get("id")).isNull();
+
+        AnonymizationPlan other = AnonymizationPlan.create("supplier", asList("first_name"), ANONYMIZERS);
+        assertThat(other.get("first_name")).isSameAs(FieldAnonymizer.FULL_NAME);
+    }
+
+    @Test
+    public void anonymizes_only_planned_columns() {
+        AnonymizationPlan plan = AnonymizationPlan.create("customer", asList("id", "first_name"), ANONYMIZERS);
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1L);
+        row.put("first_name", "Jane");
+        assertThat(plan.anonymize("id", 1L, row)).isEqualTo(1L);
+        assertThat(plan.anonymize("first_name", "Jane", row)).isEqualTo(FieldAnonymizer.FIRST_NAME.anonymize("first_name", "Jane", row));
+        assertThat(plan.anonymize("unknown", "x", row)).isEqualTo("x");
+    }
+
+    @Test
+    public void looks_up_rows_by_index_only_if_their_columns_match() throws SQLException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", 1L);
+        result.put("first_name", "Jane");
+        List<DatabaseUtil.Row> rows = new ArrayList<>();
+        DatabaseUtil.query(new FakeDataSource((c, sql) -> singletonList(result)).dataSource(), "SELECT",
+                (row, context) -> rows.add((DatabaseUtil.Row) row), true);
+
+        assertThat(AnonymizationPlan.create("customer", asList("id", "first_name"), ANONYMIZERS).isIndexedLike(rows.get(0))).isTrue();
+        assertThat(AnonymizationPlan.create("customer", asList("first_name", "id"), ANONYMIZERS).isIndexedLike(rows.get(0))).isFalse();
+        assertThat(AnonymizationPlan.create("customer", asList("id"), ANONYMIZERS).isIndexedLike(rows.get(0))).isFalse();
+    }
+
+    @Test
+    public void describes_the_plan_for_dry_runs() {
+        assertThat(AnonymizationPlan.create("customer", asList("id", "first_name", "iban"), ANONYMIZERS).toString())
+                .isEqualTo("customer:"
+                        + "\n  first_name <- first_name (customer\\.first_name)"
+                        + "\n  iban <- iban (.*\\.iban)");
+        assertThat(AnonymizationPlan.create("orders", asList("id", "total"), ANONYMIZERS).toString())
+                .isEqualTo("orders: no anonymized columns");
+        assertThat(AnonymizationPlan.create("orders", asList("id"), ANONYMIZERS).isEmpty()).isTrue();
+    }
+}
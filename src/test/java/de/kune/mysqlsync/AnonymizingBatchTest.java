@@ -0,0 +1,111 @@
+package de.kune.mysqlsync;
+
+import de.kune.mysqlsync.anonymizer.FieldAnonymizer;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AnonymizingBatchTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    /**
+     * Upper-cases values and records the size of each batch.
+     */
+    private final FieldAnonymizer upper = new FieldAnonymizer() {
+        @Override
+        public String anonymize(String key, Object value, Map<String, Object> context) {
+            return value == null ? null : value.toString().toUpperCase();
+        }
+
+        @Override
+        public void anonymizeColumn(String key, Object[] values, Map<String, Object>[] rows, int count) {
+            events.add("batch of " + count);
+            FieldAnonymizer.super.anonymizeColumn(key, values, rows, count);
+        }
+    };
+
+    private AnonymizationPlan plan(String... columns) {
+        return AnonymizationPlan.create("t", asList(columns), Collections.singletonMap(Pattern.compile("t\\.name"), upper));
+    }
+
+    private static List<Map<String, Object>> rows(String... names) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i + 1L);
+            row.put("name", names[i]);
+            result.add(row);
+        }
+        return result;
+    }
+
+    private AnonymizingBatch.Consumer recorder() {
+        return (row, anonymized, context) -> events.add(row.get("id") + ": " + row.get("name")
+                + (anonymized == null ? "" : " -> " + anonymized[1]) + (context.isLastRow() ? " (last)" : ""));
+    }
+
+    private static void query(List<Map<String, Object>> rows, DatabaseUtil.RowConsumer consumer) throws SQLException {
+        DatabaseUtil.query(new FakeDataSource((c, sql) -> rows).dataSource(), "SELECT", consumer, true);
+    }
+
+    @Test
+    public void anonymizes_full_batches_column_by_column() throws SQLException {
+        query(rows("a", "b", "c", "d", "e"), AnonymizingBatch.of(plan("id", "name"), 2, recorder()));
+        assertThat(events).containsExactly(
+                "batch of 2", "1: a -> A", "2: b -> B",
+                "batch of 2", "3: c -> C", "4: d -> D",
+                "batch of 1", "5: e -> E (last)");
+    }
+
+    @Test
+    public void passes_the_batch_on_with_the_last_row_of_a_result_set() throws SQLException {
+        DatabaseUtil.RowConsumer batch = AnonymizingBatch.of(plan("id", "name"), 150, recorder());
+        query(rows("a", "b"), batch);
+        events.add("end of first result");
+        query(rows("c", null), batch);
+        assertThat(events).containsExactly(
+                "batch of 2", "1: a -> A", "2: b -> B (last)",
+                "end of first result",
+                "batch of 2", "1: c -> C", "2: null -> null (last)");
+    }
+
+    @Test
+    public void passes_rows_in_another_column_order_on_one_by_one() throws SQLException {
+        DatabaseUtil.RowConsumer batch = AnonymizingBatch.of(plan("name", "id"), 150, recorder());
+        query(rows("a", "b"), batch);
+        Map<String, Object> plain = new LinkedHashMap<>(rows("c").get(0));
+        batch.accept(plain, new DatabaseUtil.ResultContext(true, true, 1, true));
+        assertThat(events).containsExactly("1: a", "2: b (last)", "1: c (last)");
+    }
+
+    @Test
+    public void passes_rows_without_anonymized_columns_on() throws SQLException {
+        DatabaseUtil.RowConsumer batch = AnonymizingBatch.of(plan("id"), 150, (row, anonymized, context) -> events.add(row.get("id") + " " + anonymized));
+        assertThat(batch).isNotInstanceOf(AnonymizingBatch.class);
+        query(rows("a", "b"), batch);
+        assertThat(events).containsExactly("1 null", "2 null");
+    }
+
+    @Test
+    public void anonymizes_batches_in_the_transform_stage_of_a_pipeline() throws SQLException {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        try (RowPipeline<String> pipeline = new RowPipeline<>("t", 2,
+                next -> AnonymizingBatch.of(plan("id", "name"), 2, (row, anonymized, context) -> next.accept(row.get("id") + " -> " + anonymized[1], context)),
+                (row, context) -> written.add(row + (context.isLastRow() ? " (last)" : "")))) {
+            query(rows("a", "b", "c", "d", "e"), pipeline);
+            pipeline.await();
+            assertThat(written).containsExactly("1 -> A", "2 -> B", "3 -> C", "4 -> D", "5 -> E (last)");
+        }
+        assertThat(events).containsExactly("batch of 2", "batch of 2", "batch of 1");
+    }
+}
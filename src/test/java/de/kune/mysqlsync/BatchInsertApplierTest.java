@@ -0,0 +1,120 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchInsertApplierTest {
+
+    private final List<String> calls = new ArrayList<>();
+
+    /**
+     * A connection recording the prepared statements and the calls on them.
+     */
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("prepareStatement")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            calls.add("prepare " + args[0]);
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class}, (p, m, a) -> {
+                StringBuilder call = new StringBuilder(m.getName());
+                for (Object arg : a == null ? new Object[0] : a) {
+                    call.append(' ').append(arg instanceof byte[] ? Arrays.toString((byte[]) arg) : arg);
+                }
+                calls.add(call.toString());
+                return m.getName().equals("executeBatch") ? new int[0] : null;
+            });
+        });
+    }
+
+    @Test
+    public void prepares_one_insert_per_table() throws SQLException {
+        try (BatchInsertApplier applier = new BatchInsertApplier(connection(), 10, false)) {
+            applier.start("t", asList("id", "name"));
+            applier.apply(asList(1L, "a"));
+            applier.finish();
+            applier.start("t", asList("id", "name"));
+            applier.apply(asList(2L, "b"));
+            applier.finish();
+        }
+        assertThat(calls).containsExactly(
+                "prepare INSERT INTO t (id,name) VALUES (?,?)",
+                "setObject 1 1", "setString 2 a", "addBatch",
+                "executeBatch",
+                "setObject 1 2", "setString 2 b", "addBatch",
+                "executeBatch",
+                "close");
+    }
+
+    @Test
+    public void binds_values_by_type() throws SQLException {
+        try (BatchInsertApplier applier = new BatchInsertApplier(connection(), 10, false)) {
+            applier.start("t", asList("a", "b", "c", "d", "e", "f", "g"));
+            applier.apply(asList(null, 7, true, new BigDecimal("1.50"), new byte[]{0, 39}, "it's", 2.5d));
+        }
+        assertThat(calls).containsSubsequence(
+                "setNull 1 " + Types.NULL,
+                "setObject 2 7",
+                "setObject 3 true",
+                "setObject 4 1.50",
+                "setBytes 5 [0, 39]",
+                "setString 6 it's",
+                "setString 7 2.5",
+                "addBatch",
+                "executeBatch",
+                "close");
+    }
+
+    @Test
+    public void executes_full_batches_and_the_rest_on_finish() throws SQLException {
+        try (BatchInsertApplier applier = new BatchInsertApplier(connection(), 2, false)) {
+            applier.start("t", asList("id"));
+            for (long id = 1; id <= 5; id++) {
+                applier.apply(asList(id));
+            }
+            assertThat(calls.stream().filter("executeBatch"::equals)).hasSize(2);
+            applier.finish();
+            assertThat(calls.stream().filter("executeBatch"::equals)).hasSize(3);
+            applier.finish();
+            assertThat(calls.stream().filter("executeBatch"::equals)).hasSize(3);
+        }
+    }
+
+    @Test
+    public void flushes_and_closes_the_statement_of_the_previous_table() throws SQLException {
+        try (BatchInsertApplier applier = new BatchInsertApplier(connection(), 10, false)) {
+            applier.start("a", asList("id"));
+            applier.apply(asList(1L));
+            applier.start("b", asList("id"));
+            applier.apply(asList(2L));
+        }
+        assertThat(calls).containsExactly(
+                "prepare INSERT INTO a (id) VALUES (?)",
+                "setObject 1 1", "addBatch",
+                "executeBatch", "close",
+                "prepare INSERT INTO b (id) VALUES (?)",
+                "setObject 1 2", "addBatch",
+                "executeBatch", "close");
+    }
+
+    @Test
+    public void upserts_rows_with_the_same_key() throws SQLException {
+        try (BatchInsertApplier applier = new BatchInsertApplier(connection(), 10, true)) {
+            applier.start("t", asList("id", "name"));
+            applier.apply(asList(1L, "a"));
+        }
+        assertThat(calls).startsWith("prepare INSERT INTO t (id,name) VALUES (?,?) ON DUPLICATE KEY UPDATE id=VALUES(id),name=VALUES(name)");
+    }
+}
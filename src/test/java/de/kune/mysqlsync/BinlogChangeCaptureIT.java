@@ -0,0 +1,133 @@
+package de.kune.mysqlsync;
+
+import com.mysql.cj.jdbc.MysqlDataSource;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.testcontainers.containers.MySQLContainer;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static de.kune.mysqlsync.TestUtil.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinlogChangeCaptureIT {
+
+    private static final String SOURCE_SCHEMA = "test_source_schema";
+    private static final String TARGET_SCHEMA = "test_target_schema";
+    @ClassRule
+    public static MySQLContainer sourceDatabase = (MySQLContainer) new MySQLContainer().withUsername("test").withPassword("test").withDatabaseName(SOURCE_SCHEMA)
+            .withCommand("--log-bin=mysql-bin", "--server-id=1", "--binlog-format=ROW");
+    @ClassRule
+    public static MySQLContainer targetDatabase = new MySQLContainer().withUsername("test").withPassword("test").withDatabaseName(TARGET_SCHEMA);
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final static Map<String, String> CUSTOMER_UPDATED = new LinkedHashMap<String, String>() {{
+        put("id", "1");
+        put("creationDate", "2019-07-12 10:52:11");
+        put("lastModifiedDate", "2019-07-12 10:59:28");
+        put("customerNumber", "564232");
+        put("emailAddress", "someone@somewhereelse.com");
+        put("firstname", "Hans");
+        put("lastname", "Hansen");
+        put("title", "DR");
+        put("gender", "MALE");
+        put("uuid", "56b579e1-a482-11e9-aa9f-0242ac110004");
+        put("newsletter", "1");
+        put("version", "0");
+    }};
+
+    private DataSourceSynchronizer synchronizer;
+    private Path stateFile;
+
+    @Before
+    public void before() throws Exception {
+        init(sourceDatabase, SOURCE_SCHEMA, "create_schema", "insert");
+        init(targetDatabase, TARGET_SCHEMA, "create_schema");
+        synchronizer = DataSourceSynchronizer.builder().source(dataSource(sourceDatabase)).target(dataSource(targetDatabase)).build();
+        stateFile = folder.getRoot().toPath().resolve("binlog.properties");
+    }
+
+    private BinlogChangeCapture capture() {
+        return BinlogChangeCapture.builder()
+                .hostname(sourceDatabase.getContainerIpAddress())
+                .port(sourceDatabase.getMappedPort(3306))
+                .user("root")
+                .password(sourceDatabase.getPassword())
+                .stateFile(stateFile)
+                .batch(1, 100)
+                .build();
+    }
+
+    private static DataSource rootDataSource(MySQLContainer database) throws SQLException {
+        MysqlDataSource ds = (MysqlDataSource) dataSource(database);
+        ds.setUser("root");
+        return ds;
+    }
+
+    private Thread follow(BinlogChangeCapture capture, AtomicReference<Exception> failure) {
+        Thread thread = new Thread(() -> {
+            try {
+                synchronizer.captureChanges(SOURCE_SCHEMA, TARGET_SCHEMA, capture);
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.call()) {
+            assertThat(System.currentTimeMillis()).as("condition met in time").isLessThan(deadline);
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    public void applies_updates_and_deletes() throws Exception {
+        BinlogChangeCapture capture = capture();
+        capture.markStart(rootDataSource(sourceDatabase));
+        synchronizer.sync(SOURCE_SCHEMA, TARGET_SCHEMA, null, false, false, false, false, false, false, 50);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread thread = follow(capture, failure);
+        run(sourceDatabase, SOURCE_SCHEMA, "update", "delete");
+        await(() -> queryAll(targetDatabase, TARGET_SCHEMA, "only_primary_key").isEmpty());
+        await(() -> queryAll(targetDatabase, TARGET_SCHEMA, "customer").contains(CUSTOMER_UPDATED));
+        capture.stop();
+        thread.join();
+        assertThat(failure.get()).isNull();
+        assertThat(capture.getAppliedRows()).isGreaterThanOrEqualTo(2);
+        assertThat(capture.getLagMillis()).isGreaterThanOrEqualTo(0);
+        assertThat(stateFile).exists();
+    }
+
+    @Test
+    public void continues_at_saved_position() throws Exception {
+        BinlogChangeCapture capture = capture();
+        capture.markStart(rootDataSource(sourceDatabase));
+        synchronizer.sync(SOURCE_SCHEMA, TARGET_SCHEMA, null, false, false, false, false, false, false, 50);
+        run(sourceDatabase, SOURCE_SCHEMA, "delete");
+        BinlogChangeCapture resumed = capture();
+        assertThat(resumed.hasState()).isTrue();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread thread = follow(resumed, failure);
+        await(() -> queryAll(targetDatabase, TARGET_SCHEMA, "only_primary_key").isEmpty());
+        resumed.stop();
+        thread.join();
+        assertThat(failure.get()).isNull();
+        List<Map<String, String>> customers = queryAll(targetDatabase, TARGET_SCHEMA, "customer");
+        assertThat(customers).hasSize(1);
+    }
+}
@@ -0,0 +1,58 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BinlogChangeCaptureTest {
+
+    private static String key(String dataType, Serializable value) {
+        return BinlogChangeCapture.toValue(new BinlogChangeCapture.Column("k", dataType, false), value);
+    }
+
+    private static long micros(int year, int month, int day, int hour, int minute, int second, int micro) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC) * 1_000_000 + micro;
+    }
+
+    @Test
+    public void datetime_keys_are_date_time_literals() {
+        assertThat(key("datetime", micros(2024, 2, 29, 13, 5, 9, 0))).isEqualTo("'2024-02-29 13:05:09'");
+        assertThat(key("datetime", micros(2024, 2, 29, 13, 5, 9, 120_000))).isEqualTo("'2024-02-29 13:05:09.120000'");
+        assertThat(key("datetime", micros(1969, 12, 31, 23, 59, 59, 500_000))).isEqualTo("'1969-12-31 23:59:59.500000'");
+        assertThat(key("datetime", micros(1000, 1, 1, 0, 0, 0, 0))).isEqualTo("'1000-01-01 00:00:00'");
+    }
+
+    @Test
+    public void date_keys_are_date_literals() {
+        assertThat(key("date", micros(2024, 2, 29, 0, 0, 0, 0))).isEqualTo("'2024-02-29'");
+    }
+
+    @Test
+    public void timestamp_keys_are_instants() {
+        assertThat(key("timestamp", 1_700_000_000_000_000L)).isEqualTo("FROM_UNIXTIME(1700000000)");
+        assertThat(key("timestamp", 1_700_000_000_123_456L)).isEqualTo("FROM_UNIXTIME(1700000000.123456)");
+    }
+
+    @Test
+    public void time_keys_are_time_literals() {
+        assertThat(key("time", 45_296_000_000L)).isEqualTo("'12:34:56'");
+        assertThat(key("time", 3_020_399_000_001L)).isEqualTo("'838:59:59.000001'");
+        assertThat(key("time", -1_500_000L)).isEqualTo("'-00:00:01.500000'");
+    }
+
+    @Test
+    public void other_keys() {
+        assertThat(key("bigint", 42L)).isEqualTo("42");
+        assertThat(key("year", 2024)).isEqualTo("2024");
+        assertThat(key("decimal", new BigDecimal("1.50"))).isEqualTo("1.50");
+        assertThat(key("varchar", "abc".getBytes(StandardCharsets.UTF_8))).isEqualTo(DatabaseUtil.toValue("abc"));
+        assertThat(BinlogChangeCapture.toValue(new BinlogChangeCapture.Column("k", "int", true), -1)).isEqualTo("4294967295");
+        assertThat(BinlogChangeCapture.toValue(new BinlogChangeCapture.Column("k", "bigint", true), -1L)).isEqualTo("18446744073709551615");
+    }
+}
@@ -0,0 +1,125 @@
+package de.kune.mysqlsync;
+
+import com.github.luben.zstd.ZstdInputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CheckpointJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String rows(String table, int from, int to) {
+        StringBuilder result = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            result.append("INSERT INTO `").append(table).append("` VALUES (").append(i).append(", 'row ").append(i).append("');\n");
+        }
+        return result.toString();
+    }
+
+    private static String decompress(Path file, OutputCodec codec) throws IOException {
+        try (InputStream raw = Files.newInputStream(file);
+             InputStream in = codec == null ? raw : codec == OutputCodec.GZIP ? new GZIPInputStream(raw)
+                     : codec == OutputCodec.ZSTD ? new ZstdInputStream(raw) : new LZ4FrameInputStream(raw)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                result.write(buffer, 0, n);
+            }
+            return new String(result.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Writes a header and two chunks with checkpoints, loses a third chunk and garbage written behind the checkpoint,
+     * and resumes the output from the journal.
+     */
+    private void assertResumes(OutputCodec codec, int threads) throws IOException {
+        Path journalFile = folder.getRoot().toPath().resolve("journal-" + codec + "-" + threads + ".properties");
+        String output = folder.getRoot().toPath().resolve("out-" + codec + "-" + threads + ".sql").toString();
+        String header = "SET FOREIGN_KEY_CHECKS=0;\n";
+
+        CheckpointJournal journal = CheckpointJournal.create(journalFile, "source", "target", false, 100, new Date(1000));
+        SqlOutput out = SqlOutput.open(output, codec, OutputCodec.DEFAULT_LEVEL, threads, 0);
+        out.print(header);
+        journal.outputWritten(output, out.checkpoint());
+        out.print(rows("a", 0, 100));
+        journal.chunkDone("a", CheckpointJournal.Position.afterKey(asList("99")), output, out.checkpoint());
+        out.print(rows("a", 100, 5000));
+        journal.chunkDone("a", CheckpointJournal.Position.afterKey(asList("4999")), output, out.checkpoint());
+        // the run fails while writing the next chunk
+        out.print(rows("a", 5000, 5100));
+        out.close();
+        Files.write(Paths.get(output), "torn write".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        CheckpointJournal resumed = CheckpointJournal.resume(journalFile, "source", "target", false, 100);
+        assertThat(resumed.getCreationDate()).isEqualTo(new Date(1000));
+        assertThat(resumed.isDone("a")).isFalse();
+        assertThat(resumed.getPosition("a").getKey()).containsExactly("4999");
+        long offset = resumed.getOffset(output);
+        assertThat(offset).isLessThan(Files.size(Paths.get(output)));
+        try (SqlOutput continued = SqlOutput.resume(output, offset, codec, OutputCodec.DEFAULT_LEVEL, threads, 0)) {
+            continued.print(rows("a", 5000, 6000));
+            resumed.tableDone("a", output, continued.checkpoint());
+            continued.print(rows("b", 0, 10));
+        }
+        assertThat(resumed.isDone("a")).isTrue();
+        assertThat(resumed.getPosition("a")).isNull();
+
+        assertThat(decompress(Paths.get(output), codec)).as("%s with %d threads", codec, threads)
+                .isEqualTo(header + rows("a", 0, 6000) + rows("b", 0, 10));
+        resumed.finish();
+        assertThat(journalFile).doesNotExist();
+    }
+
+    @Test
+    public void resumes_plain_output() throws IOException {
+        assertResumes(null, 1);
+    }
+
+    @Test
+    public void resumes_gzip_output() throws IOException {
+        assertResumes(OutputCodec.GZIP, 1);
+        assertResumes(OutputCodec.GZIP, 4);
+    }
+
+    @Test
+    public void resumes_zstd_output() throws IOException {
+        assertResumes(OutputCodec.ZSTD, 1);
+        assertResumes(OutputCodec.ZSTD, 4);
+    }
+
+    @Test
+    public void resumes_lz4_output() throws IOException {
+        assertResumes(OutputCodec.LZ4, 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refuses_to_resume_with_other_settings() {
+        Path journalFile = folder.getRoot().toPath().resolve("journal.properties");
+        CheckpointJournal.create(journalFile, "source", "target", false, 100, new Date());
+        CheckpointJournal.resume(journalFile, "source", "target", true, 100);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refuses_to_resume_output_shorter_than_its_checkpoint() throws IOException {
+        String output = folder.newFile("short.sql").toString();
+        SqlOutput.resume(output, 10, null, OutputCodec.DEFAULT_LEVEL, 1, 0);
+    }
+}
@@ -0,0 +1,142 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConsistentSnapshotTest {
+
+    private static final String LOCK = "FLUSH TABLES WITH READ LOCK";
+    private static final String ISOLATION = "SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ";
+    private static final String TRANSACTION = "START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY";
+
+    private boolean lockable = true;
+    private boolean binlog = true;
+
+    private final FakeDataSource source = new FakeDataSource(this::answer);
+
+    private List<Map<String, Object>> answer(int connection, String sql) throws SQLException {
+        if (sql.equals(LOCK) && !lockable) {
+            throw new SQLException("Access denied; you need the RELOAD privilege for this operation");
+        }
+        if (sql.equals("SHOW MASTER STATUS")) {
+            throw new SQLException("You have an error in your SQL syntax");
+        }
+        if (sql.equals("SHOW BINARY LOG STATUS")) {
+            if (!binlog) {
+                return Collections.emptyList();
+            }
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("File", "binlog.000003");
+            status.put("Position", 157L);
+            return singletonList(status);
+        }
+        return sql.startsWith("SELECT") ? singletonList(Collections.singletonMap("connection", (Object) connection)) : null;
+    }
+
+    private static String query(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("SELECT 1")) {
+            assertThat(rs.next()).isTrue();
+            return rs.getString("connection");
+        }
+    }
+
+    @Test
+    public void starts_all_transactions_under_a_global_read_lock() throws SQLException {
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open(source.dataSource(), 3)) {
+            assertThat(snapshot.getBinlogStatus()).containsEntry("File", "binlog.000003").containsEntry("Position", "157");
+        }
+        assertThat(source.getEvents()).containsExactly(
+                "1: " + LOCK,
+                "2: " + ISOLATION, "2: " + TRANSACTION,
+                "3: " + ISOLATION, "3: " + TRANSACTION,
+                "4: " + ISOLATION, "4: " + TRANSACTION,
+                "2: SHOW MASTER STATUS", "2: SHOW BINARY LOG STATUS",
+                "1: UNLOCK TABLES", "1: close",
+                "2: commit", "2: close", "3: commit", "3: close", "4: commit", "4: close");
+    }
+
+    @Test
+    public void falls_back_to_one_connection_without_the_lock_privilege() throws SQLException {
+        lockable = false;
+        binlog = false;
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open(source.dataSource(), 3)) {
+            assertThat(snapshot.getBinlogStatus()).isNull();
+            try (Connection connection = snapshot.getConnection()) {
+                assertThat(query(connection)).isEqualTo("2");
+            }
+            try (Connection connection = snapshot.getConnection()) {
+                assertThat(query(connection)).isEqualTo("2");
+            }
+        }
+        assertThat(source.getConnections()).isEqualTo(2);
+        assertThat(source.getEvents()).doesNotContain("1: UNLOCK TABLES").contains("1: close", "2: commit", "2: close");
+    }
+
+    @Test
+    public void records_no_binlog_position_without_the_lock() throws SQLException {
+        lockable = false;
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open(source.dataSource(), 3)) {
+            assertThat(snapshot.getBinlogStatus()).isNull();
+        }
+        assertThat(source.getEvents()).containsExactly(
+                "1: " + LOCK,
+                "2: " + ISOLATION, "2: " + TRANSACTION,
+                "1: close",
+                "2: commit", "2: close");
+    }
+
+    @Test
+    public void hands_out_idle_connections_and_keeps_their_transactions() throws SQLException {
+        try (ConsistentSnapshot snapshot = ConsistentSnapshot.open(source.dataSource(), 2)) {
+            source.getEvents().clear();
+            Connection first = snapshot.getConnection();
+            Connection second = snapshot.getConnection();
+            assertThat(query(first)).isEqualTo("2");
+            assertThat(query(second)).isEqualTo("3");
+
+            first.setAutoCommit(true);
+            first.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            first.commit();
+            first.close();
+            // returned once only, a second release would overflow the queue of idle connections
+            first.close();
+            assertThat(first.isClosed()).isTrue();
+            assertThat(source.getEvents()).containsExactly("2: SELECT 1", "3: SELECT 1");
+
+            try (Connection again = snapshot.getConnection()) {
+                assertThat(again.isClosed()).isFalse();
+                assertThat(query(again)).isEqualTo("2");
+            }
+            second.close();
+        }
+        assertThat(source.getEvents()).endsWith("2: commit", "2: close", "3: commit", "3: close");
+    }
+
+    @Test
+    public void closes_the_connections_if_a_transaction_cannot_be_started() {
+        FakeDataSource failing = new FakeDataSource((connection, sql) -> {
+            if (sql.equals(TRANSACTION) && connection == 3) {
+                throw new SQLException("Lock wait timeout exceeded");
+            }
+            return null;
+        });
+        try {
+            ConsistentSnapshot.open(failing.dataSource(), 2);
+            throw new AssertionError("expected the snapshot to fail");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).isEqualTo("Lock wait timeout exceeded");
+        }
+        assertThat(failing.getEvents()).contains("1: UNLOCK TABLES", "1: close", "2: close", "3: close");
+    }
+}
@@ -0,0 +1,150 @@
+package de.kune.mysqlsync;
+
+import com.mysql.cj.jdbc.MysqlDataSource;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataSourceSynchronizerTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    private final Statement stmt = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+        if (method.getName().equals("getConnection")) {
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (c, m, a) -> {
+                events.add(m.getName());
+                return null;
+            });
+        }
+        if (method.getName().equals("executeLargeUpdate")) {
+            events.add((String) args[0]);
+            return 0L;
+        }
+        throw new UnsupportedOperationException(method.getName());
+    });
+
+    private final RowApplier applier = new RowApplier() {
+        @Override
+        public void start(String table, Collection<String> columns) {
+            events.add("start " + table + " " + columns);
+        }
+
+        @Override
+        public void apply(List<Object> values) {
+            events.add("apply");
+        }
+
+        @Override
+        public void flush() {
+            events.add("flush");
+        }
+
+        @Override
+        public void finish() {
+            events.add("finish");
+        }
+
+        @Override
+        public void close() {
+            events.add("close");
+        }
+    };
+
+    private static DataSourceSynchronizer synchronizer(CommitGranularity granularity, int rows) {
+        return DataSourceSynchronizer.builder().source(new MysqlDataSource()).commit(granularity, rows).build();
+    }
+
+    private static DatabaseUtil.ResultContext row(int row) {
+        return new DatabaseUtil.ResultContext(false, false, row, true);
+    }
+
+    @Test
+    public void commit_within_chunk_finishes_and_restarts_the_applier() throws SQLException {
+        DataSourceSynchronizer synchronizer = synchronizer(CommitGranularity.ROWS, 200);
+        for (int row = 150; row <= 600; row += 150) {
+            synchronizer.commitRows(stmt, applier, "t", asList("a", "b"), row(row), row - 150);
+        }
+        assertThat(events).containsExactly(
+                "finish", "commit", "start t [a, b]",
+                "finish", "commit", "start t [a, b]",
+                "finish", "commit", "start t [a, b]");
+    }
+
+    @Test
+    public void commit_within_chunk_without_applier() throws SQLException {
+        synchronizer(CommitGranularity.ROWS, 100).commitRows(stmt, null, "t", Collections.singletonList("a"), row(150), 0);
+        assertThat(events).containsExactly("commit");
+    }
+
+    @Test
+    public void no_commit_within_chunk_by_default() throws SQLException {
+        DataSourceSynchronizer synchronizer = synchronizer(CommitGranularity.CHUNK, 0);
+        for (int row = 150; row <= 600; row += 150) {
+            synchronizer.commitRows(stmt, applier, "t", asList("a", "b"), row(row), row - 150);
+        }
+        assertThat(events).isEmpty();
+    }
+
+    private static DataSourceSynchronizer synchronizer(FakeDataSource source) {
+        return DataSourceSynchronizer.builder().source(source.dataSource()).build();
+    }
+
+    private static Map<String, Object> customer(long id, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+
+    @Test
+    public void applies_changes_by_upserting_existing_rows_before_deleting_the_others() throws SQLException {
+        FakeDataSource source = new FakeDataSource((c, sql) -> asList(customer(1, "Ada"), customer(3, "Grace")));
+        synchronizer(source).applyChanges("s", "customer", singletonList("id"), new LinkedHashSet<>(asList("id", "name")),
+                asList(singletonList("1"), singletonList("2"), singletonList("3")), stmt, new StringBuilder());
+        assertThat(source.getEvents()).containsExactly("1: SELECT id, name FROM s.customer WHERE id IN (1, 2, 3)", "1: close");
+        assertThat(events).containsExactly(
+                "LOCK TABLES customer WRITE;",
+                "/*!40000 ALTER TABLE customer DISABLE KEYS */;",
+                "INSERT customer (id,name) VALUES (1,'Ada') , (3,'Grace')" + DataSourceSynchronizer.onDuplicateKeyUpdate(asList("id", "name")) + ";",
+                "commit",
+                "/*!40000 ALTER TABLE customer ENABLE KEYS */;",
+                "UNLOCK TABLES;",
+                "DELETE FROM customer WHERE id IN (1, 2, 3) AND NOT (id IN (1, 3));");
+    }
+
+    @Test
+    public void applies_changes_of_deleted_rows_as_deletes_only() throws SQLException {
+        FakeDataSource source = new FakeDataSource((c, sql) -> Collections.emptyList());
+        synchronizer(source).applyChanges("s", "customer", singletonList("id"), new LinkedHashSet<>(asList("id", "name")),
+                asList(singletonList("1"), singletonList("2")), stmt, new StringBuilder());
+        assertThat(events).containsExactly("DELETE FROM customer WHERE id IN (1, 2);");
+    }
+
+    @Test
+    public void applies_changes_of_existing_rows_as_upserts_only() throws SQLException {
+        FakeDataSource source = new FakeDataSource((c, sql) -> singletonList(customer(1, "Ada")));
+        synchronizer(source).applyChanges("s", "customer", singletonList("id"), new LinkedHashSet<>(asList("id", "name")),
+                singletonList(singletonList("1")), stmt, new StringBuilder());
+        assertThat(events).noneMatch(e -> e.startsWith("DELETE")).contains("commit");
+    }
+
+    @Test
+    public void upserts_replace_all_inserted_columns() {
+        assertThat(DataSourceSynchronizer.onDuplicateKeyUpdate(asList("id", "first-name", "total")))
+                .isEqualTo(" ON DUPLICATE KEY UPDATE id=VALUES(id),`first-name`=VALUES(`first-name`),total=VALUES(total)");
+    }
+}
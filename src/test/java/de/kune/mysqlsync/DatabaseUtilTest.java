@@ -0,0 +1,38 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DatabaseUtilTest {
+
+    @Test
+    public void row_values_by_column_name() throws SQLException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", 5L);
+        result.put("count", 3);
+        result.put("ratio", 0.5d);
+        result.put("name", "x");
+        result.put("missing", null);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        DatabaseUtil.query(new FakeDataSource((c, sql) -> singletonList(result)).dataSource(), "SELECT", (row, context) -> {
+            assertThat(row.get("id")).isEqualTo(5L);
+            assertThat(row.get("count")).isEqualTo(3);
+            assertThat(row.get("ratio")).isEqualTo(0.5d);
+            assertThat(row.get("name")).isEqualTo("x");
+            assertThat(row.get("missing")).isNull();
+            assertThat(row.get("unknown")).isNull();
+            assertThat(row.containsKey("missing")).isTrue();
+            rows.add(((DatabaseUtil.Row) row).copy());
+        }, true);
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)).isEqualTo(result);
+    }
+}
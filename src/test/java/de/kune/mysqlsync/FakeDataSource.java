@@ -0,0 +1,219 @@
+package de.kune.mysqlsync;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory stand-in for a MySQL data source. Queries and statements are answered by a handler and recorded as
+ * <code>connection: sql</code>, together with the commits and closes of the connections, numbered from 1.
+ */
+final class FakeDataSource {
+
+    @FunctionalInterface
+    interface Handler {
+        /**
+         * @return the rows of the result, each mapping column names to values, or null for statements without result
+         */
+        List<Map<String, Object>> answer(int connection, String sql) throws SQLException;
+    }
+
+    private final Handler handler;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    FakeDataSource(Handler handler) {
+        this.handler = handler;
+    }
+
+    List<String> getEvents() {
+        return events;
+    }
+
+    int getConnections() {
+        return connections.get();
+    }
+
+    DataSource dataSource() {
+        return proxy(DataSource.class, (proxy, method, args) -> {
+            if (method.getName().equals("getConnection")) {
+                return connection(connections.incrementAndGet());
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    private Connection connection(int id) {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createStatement":
+                    return statement(id, null);
+                case "prepareStatement":
+                    return statement(id, (String) args[0]);
+                case "commit":
+                case "rollback":
+                case "close":
+                    events.add(id + ": " + method.getName());
+                    return null;
+                case "getMetaData":
+                    return proxy(DatabaseMetaData.class, (p, m, a) -> m.getName().equals("getURL") ? "jdbc:mysql://fake:3306/" : defaultValue(m.getReturnType()));
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private Statement statement(int id, String prepared) {
+        Object[] parameters = new Object[16];
+        Class<? extends Statement> type = prepared == null ? Statement.class : PreparedStatement.class;
+        return proxy(type, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setObject":
+                case "setString":
+                case "setLong":
+                    parameters[(Integer) args[0] - 1] = args[1];
+                    return null;
+                case "executeQuery":
+                    return resultSet(run(id, prepared == null ? (String) args[0] : bind(prepared, parameters)));
+                case "execute":
+                    return run(id, prepared == null ? (String) args[0] : bind(prepared, parameters)) != null;
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                    run(id, prepared == null ? (String) args[0] : bind(prepared, parameters));
+                    return defaultValue(method.getReturnType());
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private List<Map<String, Object>> run(int id, String sql) throws SQLException {
+        events.add(id + ": " + sql);
+        return handler.answer(id, sql);
+    }
+
+    private static String bind(String sql, Object[] parameters) {
+        StringBuilder result = new StringBuilder();
+        int parameter = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                result.append(DatabaseUtil.toValue(parameters[parameter++]));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static ResultSet resultSet(List<Map<String, Object>> rows) {
+        List<Map<String, Object>> result = rows == null ? Collections.emptyList() : rows;
+        List<String> columns = result.isEmpty() ? Collections.emptyList() : new ArrayList<>(result.get(0).keySet());
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return columns.size();
+                case "getColumnName":
+                case "getColumnLabel":
+                    return columns.get((Integer) args[0] - 1);
+                case "getColumnType":
+                    return sqlType(result.get(0).get(columns.get((Integer) args[0] - 1)));
+                case "isSigned":
+                    return true;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    return ++row[0] < result.size();
+                case "isFirst":
+                    return row[0] == 0;
+                case "getMetaData":
+                    return metaData;
+                case "wasNull":
+                    return wasNull[0];
+                case "getObject":
+                case "getString":
+                case "getLong":
+                case "getDouble":
+                case "getTimestamp":
+                    Object value = args[0] instanceof Integer ? result.get(row[0]).get(columns.get((Integer) args[0] - 1)) : result.get(row[0]).get(args[0]);
+                    wasNull[0] = value == null;
+                    if (method.getName().equals("getString")) {
+                        return value == null ? null : value.toString();
+                    }
+                    if (value == null || method.getName().equals("getObject") || method.getName().equals("getTimestamp")) {
+                        return value == null ? defaultValue(method.getReturnType()) : value;
+                    }
+                    return method.getName().equals("getLong") ? (Object) ((Number) value).longValue() : (Object) ((Number) value).doubleValue();
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    private static int sqlType(Object value) {
+        if (value instanceof Integer) {
+            return Types.INTEGER;
+        }
+        if (value instanceof Long) {
+            return Types.BIGINT;
+        }
+        if (value instanceof Double) {
+            return Types.DOUBLE;
+        }
+        if (value instanceof Timestamp) {
+            return Types.TIMESTAMP;
+        }
+        return Types.VARCHAR;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeDataSource.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return type.getSimpleName();
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeysetCursorTest {
+
+    private static String a(String name) {
+        return DatabaseUtil.armor(name);
+    }
+
+    private static Map<String, Object> row(Object a, Object b, String value) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("a", a);
+        row.put("b", b);
+        row.put("value", value);
+        return row;
+    }
+
+    private static void consumeLastRow(KeysetCursor cursor, Map<String, Object> row) throws SQLException {
+        cursor.track((r, context) -> {
+        }).accept(row, new DatabaseUtil.ResultContext(true, true, 1, true));
+    }
+
+    @Test
+    public void no_condition_before_the_first_row() {
+        KeysetCursor cursor = new KeysetCursor(singletonList("id"));
+        assertThat(cursor.isStarted()).isFalse();
+        assertThat(cursor.seekCondition()).isNull();
+    }
+
+    @Test
+    public void seek_condition_of_a_single_column() throws SQLException {
+        KeysetCursor cursor = new KeysetCursor(singletonList("a"));
+        consumeLastRow(cursor, row(42L, null, "row"));
+        assertThat(cursor.seekCondition()).isEqualTo(a("a") + " > 42");
+        assertThat(cursor.orderBy()).isEqualTo(a("a"));
+    }
+
+    @Test
+    public void seek_condition_of_a_composite_key() throws SQLException {
+        KeysetCursor cursor = new KeysetCursor(asList("a", "b", "value"));
+        consumeLastRow(cursor, row(1L, "x", "2024-02-29"));
+        assertThat(cursor.seekCondition()).isEqualTo(a("a") + " >= 1 AND ("
+                + a("a") + " > 1"
+                + " OR (" + a("a") + " = 1 AND " + a("b") + " > 'x')"
+                + " OR (" + a("a") + " = 1 AND " + a("b") + " = 'x' AND " + a("value") + " > '2024-02-29'))");
+        assertThat(cursor.orderBy()).isEqualTo(a("a") + ", " + a("b") + ", " + a("value"));
+    }
+
+    @Test
+    public void remembers_the_key_of_the_last_row_of_a_chunk() throws SQLException {
+        KeysetCursor cursor = new KeysetCursor(asList("a", "b"));
+        List<String> consumed = new ArrayList<>();
+        DatabaseUtil.RowConsumer consumer = cursor.track((row, context) -> consumed.add((String) row.get("value")));
+        consumer.accept(row(1L, "x", "first"), new DatabaseUtil.ResultContext(true, false, 1, true));
+        assertThat(cursor.isStarted()).isFalse();
+        consumer.accept(row(2L, "it's", "last"), new DatabaseUtil.ResultContext(false, true, 2, true));
+        assertThat(consumed).containsExactly("first", "last");
+        assertThat(cursor.getLastKey()).containsExactly("2", DatabaseUtil.toValue("it's"));
+        assertThat(cursor.seekCondition()).isEqualTo(a("a") + " >= 2 AND (" + a("a") + " > 2 OR ("
+                + a("a") + " = 2 AND " + a("b") + " > " + DatabaseUtil.toValue("it's") + "))");
+    }
+
+    @Test
+    public void renders_key_values_as_literals() throws SQLException {
+        KeysetCursor cursor = new KeysetCursor(asList("b", "a"));
+        consumeLastRow(cursor, row(7L, LocalDate.of(2024, 2, 29), "row"));
+        assertThat(cursor.seekCondition()).isEqualTo(a("b") + " >= " + DatabaseUtil.toValue(LocalDate.of(2024, 2, 29))
+                + " AND (" + a("b") + " > " + DatabaseUtil.toValue(LocalDate.of(2024, 2, 29))
+                + " OR (" + a("b") + " = " + DatabaseUtil.toValue(LocalDate.of(2024, 2, 29)) + " AND " + a("a") + " > 7))");
+    }
+
+    @Test
+    public void resumes_behind_the_key_of_an_earlier_cursor() throws SQLException {
+        KeysetCursor earlier = new KeysetCursor(asList("a", "b"));
+        earlier.track((row, context) -> {
+        }).accept(row(7L, "y", "row"), new DatabaseUtil.ResultContext(true, true, 1, true));
+
+        KeysetCursor resumed = new KeysetCursor(asList("a", "b"));
+        resumed.seek(earlier.getLastKey());
+        assertThat(resumed.isStarted()).isTrue();
+        assertThat(resumed.seekCondition()).isEqualTo(earlier.seekCondition())
+                .isEqualTo(a("a") + " >= 7 AND (" + a("a") + " > 7 OR (" + a("a") + " = 7 AND " + a("b") + " > 'y'))");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refuses_keys_of_other_columns() {
+        new KeysetCursor(asList("a", "b")).seek(singletonList("1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refuses_keys_with_null_values() {
+        new KeysetCursor(asList("a", "b")).seek(asList("1", null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refuses_to_remember_a_row_with_a_null_key_value() throws SQLException {
+        consumeLastRow(new KeysetCursor(asList("a", "b")), row(1, null, "x"));
+    }
+}
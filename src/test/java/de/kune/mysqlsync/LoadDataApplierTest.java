@@ -0,0 +1,120 @@
+package de.kune.mysqlsync;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class LoadDataApplierTest {
+
+    private final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+    private final List<byte[]> loaded = Collections.synchronizedList(new ArrayList<>());
+    private volatile SQLException loadFailure;
+
+    /**
+     * A connection whose LOAD DATA statements read the whole local infile stream.
+     */
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("createStatement")) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            InputStream[] in = new InputStream[1];
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{JdbcStatement.class}, (p, m, a) -> {
+                switch (m.getName()) {
+                    case "unwrap":
+                        return p;
+                    case "setLocalInfileInputStream":
+                        in[0] = (InputStream) a[0];
+                        return null;
+                    case "executeLargeUpdate":
+                        statements.add((String) a[0]);
+                        ByteArrayOutputStream data = new ByteArrayOutputStream();
+                        byte[] buffer = new byte[8192];
+                        for (int n; (n = in[0].read(buffer)) >= 0; ) {
+                            data.write(buffer, 0, n);
+                        }
+                        loaded.add(data.toByteArray());
+                        if (loadFailure != null) {
+                            throw loadFailure;
+                        }
+                        return 0L;
+                    default:
+                        return null;
+                }
+            });
+        });
+    }
+
+    @Test
+    public void loads_the_rows_of_each_chunk() throws SQLException {
+        try (LoadDataApplier applier = new LoadDataApplier(connection())) {
+            applier.start("t", asList("id", "name"));
+            applier.apply(asList(1L, "a"));
+            applier.apply(asList(2L, "b"));
+            applier.finish();
+            applier.start("t", asList("id", "name"));
+            applier.apply(asList(3L, "c"));
+            applier.finish();
+        }
+        assertThat(statements).containsExactly(
+                "LOAD DATA LOCAL INFILE 'stream' INTO TABLE t CHARACTER SET utf8mb4"
+                        + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (id,name)",
+                "LOAD DATA LOCAL INFILE 'stream' INTO TABLE t CHARACTER SET utf8mb4"
+                        + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (id,name)");
+        assertThat(new String(loaded.get(0), UTF_8)).isEqualTo("1\ta\n2\tb\n");
+        assertThat(new String(loaded.get(1), UTF_8)).isEqualTo("3\tc\n");
+    }
+
+    @Test
+    public void escapes_values_as_tab_separated_text() throws SQLException {
+        try (LoadDataApplier applier = new LoadDataApplier(connection())) {
+            applier.start("t", asList("a", "b", "c", "d", "e", "f", "g", "h"));
+            applier.apply(asList(null, "x\ty", "c:\\dir", "nul\u0000", "two\r\nlines", new byte[]{'\t', '\\', 0, (byte) 0xff}, true, "\u00e4"));
+            applier.finish();
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        byte[] text = "\\N\tx\\ty\tc:\\\\dir\tnul\\0\ttwo\\r\\nlines\t\\t\\\\\\0".getBytes(UTF_8);
+        expected.write(text, 0, text.length);
+        expected.write(0xff);
+        text = "\t1\t\u00e4\n".getBytes(UTF_8);
+        expected.write(text, 0, text.length);
+        assertThat(loaded.get(0)).isEqualTo(expected.toByteArray());
+    }
+
+    @Test
+    public void reports_the_failure_of_the_load() {
+        loadFailure = new SQLException("Duplicate entry '1' for key 'PRIMARY'");
+        try (LoadDataApplier applier = new LoadDataApplier(connection())) {
+            applier.start("t", asList("id"));
+            applier.apply(asList(1L));
+            applier.finish();
+            fail("expected the failure of the load");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).isEqualTo("Duplicate entry '1' for key 'PRIMARY'");
+        }
+    }
+
+    @Test
+    public void aborts_an_unfinished_load_on_close() throws SQLException {
+        try (LoadDataApplier applier = new LoadDataApplier(connection())) {
+            applier.start("t", asList("id"));
+            applier.apply(asList(1L));
+            // the chunk fails before its last row
+        }
+        assertThat(statements).hasSize(1);
+        assertThat(loaded).isEmpty();
+    }
+}
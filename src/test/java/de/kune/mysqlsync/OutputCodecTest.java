@@ -0,0 +1,119 @@
+package de.kune.mysqlsync;
+
+import com.github.luben.zstd.ZstdInputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutputCodecTest {
+
+    private static byte[] statements(int from, int to) {
+        StringBuilder result = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            result.append("INSERT INTO `t` VALUES (").append(i).append(", 'row ").append(i * 7919 % 1000).append("');\n");
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compresses the data flushing after every 1000 statements, as the writers do at the end of a chunk.
+     */
+    private static byte[] compress(OutputCodec codec, int level, int threads, int longWindowLog, byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = codec.wrap(compressed, level, threads, longWindowLog)) {
+            int start = 0;
+            int statements = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == '\n') {
+                    out.write(data, start, i + 1 - start);
+                    if (++statements % 1000 == 0) {
+                        out.flush();
+                    }
+                    start = i + 1;
+                }
+            }
+            out.write(data, start, data.length - start);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress(OutputCodec codec, byte[] compressed) throws IOException {
+        InputStream raw = new ByteArrayInputStream(compressed);
+        try (InputStream in = codec == OutputCodec.GZIP ? new GZIPInputStream(raw)
+                : codec == OutputCodec.ZSTD ? new ZstdInputStream(raw) : new LZ4FrameInputStream(raw)) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                result.write(buffer, 0, n);
+            }
+            return result.toByteArray();
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = new byte[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    @Test
+    public void round_trips_all_codecs() throws IOException {
+        byte[] data = statements(0, 20_000);
+        for (OutputCodec codec : OutputCodec.values()) {
+            byte[] compressed = compress(codec, OutputCodec.DEFAULT_LEVEL, 1, 0, data);
+            assertThat(compressed.length).as("%s", codec).isLessThan(data.length / 4);
+            assertThat(decompress(codec, compressed)).as("%s", codec).isEqualTo(data);
+        }
+    }
+
+    @Test
+    public void round_trips_levels_and_threads() throws IOException {
+        byte[] data = statements(0, 20_000);
+        assertThat(decompress(OutputCodec.GZIP, compress(OutputCodec.GZIP, 1, 4, 0, data))).isEqualTo(data);
+        assertThat(decompress(OutputCodec.ZSTD, compress(OutputCodec.ZSTD, 19, 4, 0, data))).isEqualTo(data);
+        assertThat(decompress(OutputCodec.ZSTD, compress(OutputCodec.ZSTD, -5, 1, 27, data))).isEqualTo(data);
+        assertThat(decompress(OutputCodec.LZ4, compress(OutputCodec.LZ4, 9, 1, 0, data))).isEqualTo(data);
+    }
+
+    @Test
+    public void reads_concatenated_frames_as_one_stream() throws IOException {
+        byte[] first = statements(0, 1000);
+        byte[] second = statements(1000, 2000);
+        for (OutputCodec codec : OutputCodec.values()) {
+            byte[] compressed = concat(compress(codec, OutputCodec.DEFAULT_LEVEL, 1, 0, first),
+                    compress(codec, OutputCodec.DEFAULT_LEVEL, 1, 0, second));
+            assertThat(decompress(codec, compressed)).as("%s", codec).isEqualTo(concat(first, second));
+        }
+    }
+
+    @Test
+    public void flushes_end_the_blocks_of_block_based_codecs() throws IOException {
+        byte[] data = statements(0, 1000);
+        for (OutputCodec codec : new OutputCodec[]{OutputCodec.ZSTD, OutputCodec.LZ4}) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = codec.wrap(compressed, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+                out.write(data);
+                int written = compressed.size();
+                out.flush();
+                assertThat(compressed.size()).as("%s", codec).isGreaterThan(written);
+            }
+        }
+    }
+
+    @Test
+    public void finds_codecs_by_name() {
+        assertThat(OutputCodec.forName(" zstd ")).isEqualTo(OutputCodec.ZSTD);
+        assertThat(OutputCodec.forName("Lz4")).isEqualTo(OutputCodec.LZ4);
+        assertThat(OutputCodec.GZIP.getExtension()).isEqualTo(".gz");
+    }
+}
@@ -0,0 +1,103 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelChunkReaderTest {
+
+    private static final Pattern RANGE = Pattern.compile("`?id`? >= (-?\\d+)(?: AND `?id`? < (-?\\d+))?");
+
+    /**
+     * Asserts that the ranges are contiguous from the minimum on and only the last one is open ended.
+     */
+    private static void assertContiguous(List<String> ranges, String minimum) {
+        BigInteger next = new BigInteger(minimum);
+        for (int i = 0; i < ranges.size(); i++) {
+            Matcher matcher = RANGE.matcher(ranges.get(i));
+            assertThat(matcher.matches()).as(ranges.get(i)).isTrue();
+            assertThat(new BigInteger(matcher.group(1))).isEqualTo(next);
+            if (i == ranges.size() - 1) {
+                assertThat(matcher.group(2)).as("last range is open ended").isNull();
+            } else {
+                next = new BigInteger(matcher.group(2));
+            }
+        }
+    }
+
+    @Test
+    public void splits_positive_keys() {
+        List<String> ranges = ParallelChunkReader.splitRange("id", "bigint", "1", "100", 100, 10);
+        assertThat(ranges).hasSize(10);
+        assertThat(ranges.get(0)).matches("`?id`? >= 1 AND `?id`? < 11");
+        assertThat(ranges.get(9)).matches("`?id`? >= 91");
+        assertContiguous(ranges, "1");
+    }
+
+    @Test
+    public void splits_negative_keys() {
+        List<String> ranges = ParallelChunkReader.splitRange("id", "bigint", "-1000", "-1", 1000, 250);
+        assertThat(ranges).hasSize(4);
+        assertContiguous(ranges, "-1000");
+    }
+
+    @Test
+    public void splits_keys_spanning_zero() {
+        List<String> ranges = ParallelChunkReader.splitRange("id", "bigint", "-50", "49", 100, 25);
+        assertThat(ranges).hasSize(4);
+        assertContiguous(ranges, "-50");
+    }
+
+    @Test
+    public void splits_full_signed_bigint_span() {
+        List<String> ranges = ParallelChunkReader.splitRange("id", "bigint", String.valueOf(Long.MIN_VALUE), String.valueOf(Long.MAX_VALUE), 1000, 100);
+        assertThat(ranges).hasSize(10);
+        assertContiguous(ranges, String.valueOf(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void splits_unsigned_bigint_keys() {
+        List<String> ranges = ParallelChunkReader.splitRange("id", "bigint", "0", "18446744073709551615", 1000, 100);
+        assertThat(ranges).hasSize(10);
+        assertContiguous(ranges, "0");
+    }
+
+    @Test
+    public void single_key_is_one_range() {
+        assertThat(ParallelChunkReader.splitRange("id", "bigint", "5", "5", 1000, 10)).hasSize(1).allMatch(r -> r.matches("`?id`? >= 5"));
+    }
+
+    @Test
+    public void ranges_are_limited_by_the_number_of_keys() {
+        List<String> ranges = ParallelChunkReader.splitRange("id", "bigint", "1", "3", 1000, 1);
+        assertThat(ranges).hasSize(3);
+        assertContiguous(ranges, "1");
+    }
+
+    @Test
+    public void ranges_are_capped() {
+        List<String> ranges = ParallelChunkReader.splitRange("id", "bigint", String.valueOf(Long.MIN_VALUE), String.valueOf(Long.MAX_VALUE), Long.MAX_VALUE, 1);
+        assertThat(ranges).hasSize(ParallelChunkReader.MAX_RANGES);
+        assertContiguous(ranges, String.valueOf(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void non_integral_or_missing_keys_are_not_split() {
+        assertThat(ParallelChunkReader.splitRange("id", "varchar", "1", "100", 1000, 10)).isEmpty();
+        assertThat(ParallelChunkReader.splitRange("id", "decimal", "1", "100", 1000, 10)).isEmpty();
+        assertThat(ParallelChunkReader.splitRange("id", null, "1", "100", 1000, 10)).isEmpty();
+        assertThat(ParallelChunkReader.splitRange("id", "bigint", null, null, 0, 10)).isEmpty();
+    }
+
+    @Test
+    public void splits_keys_of_all_integer_types() {
+        for (String type : new String[]{"tinyint", "smallint", "mediumint", "int", "BIGINT"}) {
+            assertThat(ParallelChunkReader.splitRange("id", type, "1", "100", 100, 10)).as(type).hasSize(10);
+        }
+    }
+}
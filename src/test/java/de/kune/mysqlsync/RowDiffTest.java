@@ -0,0 +1,173 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RowDiffTest {
+
+    private static final Pattern RANGE = Pattern.compile("BETWEEN (-?\\d+) AND (-?\\d+)");
+
+    private final TreeMap<Long, String> sourceRows = new TreeMap<>();
+    private final TreeMap<Long, String> targetRows = new TreeMap<>();
+    private final List<List<String>> inserted = new ArrayList<>();
+    private final List<List<String>> updated = new ArrayList<>();
+    private final List<List<String>> deleted = new ArrayList<>();
+    private int leaves;
+    private String keyType = "bigint";
+
+    /**
+     * Answers the queries of a {@link RowDiff} like MySQL would for a table with the primary key <code>id</code>,
+     * hashing a row by its value.
+     */
+    private static List<Map<String, Object>> answer(NavigableMap<Long, String> table, String sql) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (sql.contains("min(")) {
+            result.put("lo", table.isEmpty() ? null : table.firstKey());
+            result.put("hi", table.isEmpty() ? null : table.lastKey());
+            return singletonList(result);
+        }
+        Matcher matcher = RANGE.matcher(sql);
+        assertThat(matcher.find()).as(sql).isTrue();
+        NavigableMap<Long, String> range = table.subMap(Long.parseLong(matcher.group(1)), true, Long.parseLong(matcher.group(2)), true);
+        if (sql.contains("count(*)")) {
+            result.put("cnt", (long) range.size());
+            result.put("crc", range.values().stream().mapToLong(RowDiffTest::hash).sum());
+            return singletonList(result);
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        range.forEach((id, value) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", id);
+            row.put("row_hash", hash(value));
+            rows.add(row);
+        });
+        return rows;
+    }
+
+    private static long hash(String value) {
+        return value.hashCode() & 0xffffffffL;
+    }
+
+    private RowDiff rowDiff(long leafRows) {
+        return new RowDiff(new FakeDataSource((c, sql) -> sql.contains("INFORMATION_SCHEMA.COLUMNS")
+                ? singletonList(Collections.singletonMap("DATA_TYPE", (Object) keyType))
+                : answer(sourceRows, sql)).dataSource(), "s",
+                new FakeDataSource((c, sql) -> answer(targetRows, sql)).dataSource(), "t",
+                "table", singletonList("id"), singletonList("value"), leafRows);
+    }
+
+    private boolean diff(RowDiff rowDiff) throws SQLException {
+        return rowDiff.diff((i, u, d) -> {
+            leaves++;
+            inserted.addAll(i);
+            updated.addAll(u);
+            deleted.addAll(d);
+        });
+    }
+
+    private void fill(long from, long to) {
+        for (long id = from; id <= to; id++) {
+            sourceRows.put(id, "row " + id);
+            targetRows.put(id, "row " + id);
+        }
+    }
+
+    @Test
+    public void equal_tables_have_no_differences() throws SQLException {
+        fill(1, 1000);
+        RowDiff rowDiff = rowDiff(50);
+        assertThat(diff(rowDiff)).isTrue();
+        assertThat(leaves).isZero();
+        assertThat(rowDiff.toString()).startsWith("1 ranges compared, 0 leaf ranges transferred");
+    }
+
+    @Test
+    public void finds_inserted_updated_and_deleted_rows_in_differing_leaves_only() throws SQLException {
+        fill(1, 1000);
+        targetRows.remove(10L);
+        targetRows.put(500L, "changed");
+        targetRows.put(2000L, "deleted from the source");
+        RowDiff rowDiff = rowDiff(50);
+        assertThat(diff(rowDiff)).isTrue();
+        assertThat(inserted).containsExactly(singletonList("10"));
+        assertThat(updated).containsExactly(singletonList("500"));
+        assertThat(deleted).containsExactly(singletonList("2000"));
+        assertThat(leaves).isEqualTo(3);
+        assertThat(rowDiff.toString()).contains("3 leaf ranges transferred, 1 rows inserted, 1 updated, 1 deleted");
+    }
+
+    @Test
+    public void compares_empty_tables() throws SQLException {
+        assertThat(diff(rowDiff(50))).isTrue();
+        assertThat(leaves).isZero();
+    }
+
+    @Test
+    public void halves_the_full_bigint_range() throws SQLException {
+        for (long id : new long[]{Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE}) {
+            sourceRows.put(id, "row " + id);
+            targetRows.put(id, "row " + id);
+        }
+        targetRows.put(Long.MAX_VALUE, "changed");
+        targetRows.remove(Long.MIN_VALUE);
+        assertThat(diff(rowDiff(1))).isTrue();
+        assertThat(inserted).containsExactly(singletonList(String.valueOf(Long.MIN_VALUE)));
+        assertThat(updated).containsExactly(singletonList(String.valueOf(Long.MAX_VALUE)));
+        assertThat(deleted).isEmpty();
+    }
+
+    @Test
+    public void refuses_keys_that_are_not_integral() throws SQLException {
+        // character keys that look like numbers compare as strings
+        keyType = "varchar";
+        fill(1, 1000);
+        targetRows.remove(10L);
+        assertThat(diff(rowDiff(50))).isFalse();
+        assertThat(leaves).isZero();
+        assertThat(inserted).isEmpty();
+    }
+
+    @Test
+    public void refuses_unsigned_keys_beyond_a_long() throws SQLException {
+        Map<String, Object> bounds = new LinkedHashMap<>();
+        bounds.put("lo", "0");
+        bounds.put("hi", "18446744073709551615");
+        FakeDataSource database = new FakeDataSource((c, sql) -> sql.contains("INFORMATION_SCHEMA.COLUMNS")
+                ? singletonList(Collections.singletonMap("DATA_TYPE", (Object) "bigint"))
+                : singletonList(bounds));
+        RowDiff rowDiff = new RowDiff(database.dataSource(), "s", database.dataSource(), "t", "table", singletonList("id"), singletonList("value"), 50);
+        assertThat(diff(rowDiff)).isFalse();
+        assertThat(database.getEvents()).noneMatch(e -> e.contains("row_hash"));
+    }
+
+    @Test
+    public void key_condition_of_a_single_column() {
+        assertThat(RowDiff.keyCondition(singletonList("id"), asList(singletonList("1"), singletonList("'x'"))))
+                .isEqualTo(DatabaseUtil.armor("id") + " IN (1, 'x')");
+    }
+
+    @Test
+    public void key_condition_of_a_composite_key() {
+        assertThat(RowDiff.keyCondition(asList("a", "b"), asList(asList("1", "2"), asList("3", "NULL"))))
+                .isEqualTo("(" + DatabaseUtil.armor("a") + ", " + DatabaseUtil.armor("b") + ") IN ((1, 2), (3, NULL))");
+    }
+
+    @Test
+    public void key_condition_of_no_keys_is_empty() {
+        assertThat(RowDiff.keyCondition(singletonList("id"), Collections.emptyList())).isEqualTo(DatabaseUtil.armor("id") + " IN ()");
+    }
+}
@@ -0,0 +1,158 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class RowPipelineTest {
+
+    private static Map<String, Object> row(long id) {
+        return Collections.singletonMap("id", id);
+    }
+
+    private static DatabaseUtil.ResultContext context(long id, long last) {
+        return new DatabaseUtil.ResultContext(id == 1, id == last, (int) id, true);
+    }
+
+    @Test
+    public void writes_the_rows_in_the_order_they_were_read() throws SQLException {
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        List<String> expected = new ArrayList<>();
+        try (RowPipeline<String> pipeline = new RowPipeline<>("t", 4,
+                (row, context) -> "row " + row.get("id"),
+                (row, context) -> written.add(row + (context.isLastRow() ? " last" : "")))) {
+            for (long id = 1; id <= 1000; id++) {
+                pipeline.accept(row(id), context(id, 1000));
+                expected.add("row " + id + (id == 1000 ? " last" : ""));
+            }
+        }
+        assertThat(written).isEqualTo(expected);
+    }
+
+    @Test
+    public void waits_for_the_accepted_rows() throws SQLException {
+        List<Object> written = Collections.synchronizedList(new ArrayList<>());
+        try (RowPipeline<Object> pipeline = new RowPipeline<>("t", 4, (row, context) -> row.get("id"), (row, context) -> {
+            sleep(1);
+            written.add(row);
+        })) {
+            for (long id = 1; id <= 20; id++) {
+                pipeline.accept(row(id), context(id, 20));
+            }
+            pipeline.await();
+            assertThat(written).hasSize(20);
+            assertThat(pipeline.getStatistics()[2].getRows()).isEqualTo(20);
+        }
+    }
+
+    @Test
+    public void blocks_the_reader_while_the_queues_are_full() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong accepted = new AtomicLong();
+        Thread reader;
+        try (RowPipeline<Object> pipeline = new RowPipeline<>("t", 2, (row, context) -> row.get("id"), (row, context) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new SQLException(e);
+            }
+        })) {
+            reader = new Thread(() -> {
+                try {
+                    for (long id = 1; id <= 100; id++) {
+                        pipeline.accept(row(id), context(id, 100));
+                        accepted.incrementAndGet();
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            reader.start();
+            sleep(200);
+            // one row in the sink, one in the transform stage and two in each queue
+            assertThat(accepted.get()).isBetween(4L, 6L);
+            assertThat(reader.isAlive()).isTrue();
+            release.countDown();
+            reader.join(10_000);
+            assertThat(accepted.get()).isEqualTo(100);
+        }
+    }
+
+    @Test
+    public void reports_the_failure_of_a_stage_to_the_reader() {
+        try (RowPipeline<Object> pipeline = new RowPipeline<>("t", 2, (row, context) -> {
+            if (row.get("id").equals(3L)) {
+                throw new SQLException("cannot anonymize row 3");
+            }
+            return row;
+        }, (row, context) -> {
+        })) {
+            for (long id = 1; id <= 100; id++) {
+                pipeline.accept(row(id), context(id, 100));
+            }
+            pipeline.await();
+            fail("expected the failure of row 3");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).isEqualTo("cannot anonymize row 3");
+        }
+    }
+
+    @Test
+    public void skips_the_rows_behind_a_failed_row() throws SQLException {
+        List<Object> written = Collections.synchronizedList(new ArrayList<>());
+        RowPipeline<Object> pipeline = new RowPipeline<>("t", 100, (row, context) -> row.get("id"), (row, context) -> {
+            if (row.equals(2L)) {
+                throw new IllegalStateException("cannot write row 2");
+            }
+            written.add(row);
+        });
+        for (long id = 1; id <= 5; id++) {
+            pipeline.accept(row(id), context(id, 5));
+        }
+        try {
+            pipeline.close();
+            fail("expected the failure of row 2");
+        } catch (SQLException e) {
+            assertThat(e.getCause()).hasMessage("cannot write row 2");
+        }
+        assertThat(written).containsExactly(1L);
+    }
+
+    @Test
+    public void copies_reused_rows() throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (long id = 1; id <= 200; id++) {
+            rows.add(Collections.singletonMap("id", id));
+        }
+        List<Object> written = Collections.synchronizedList(new ArrayList<>());
+        try (RowPipeline<Object> pipeline = new RowPipeline<>("t", 4, (row, context) -> {
+            sleep(1);
+            return row.get("id");
+        }, (row, context) -> written.add(row))) {
+            // the query refills one row for all rows of the result
+            DatabaseUtil.query(new FakeDataSource((c, sql) -> rows).dataSource(), "SELECT", pipeline, true);
+        }
+        assertThat(written).hasSize(200);
+        for (int i = 0; i < written.size(); i++) {
+            assertThat(written.get(i)).isEqualTo(i + 1L);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package de.kune.mysqlsync;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlOutputTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String content(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writes_to_the_file_only_when_flushed() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("out.sql");
+        try (SqlOutput out = SqlOutput.open(file.toString(), null, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            out.print("INSERT INTO t VALUES (1);");
+            out.println("");
+            out.write("-- \u00e4".getBytes(StandardCharsets.UTF_8));
+            assertThat(Files.size(file)).isZero();
+            out.flush();
+            assertThat(content(file)).isEqualTo("INSERT INTO t VALUES (1);" + System.lineSeparator() + "-- \u00e4");
+            out.print("\n");
+            out.sync();
+            assertThat(content(file)).endsWith("\u00e4\n");
+        }
+    }
+
+    @Test
+    public void writes_data_bigger_than_the_buffers() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("big.sql");
+        byte[] large = new byte[5 * 1024 * 1024 + 17];
+        Arrays.fill(large, (byte) 'x');
+        try (SqlOutput out = SqlOutput.open(file.toString(), null, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            out.print("a");
+            out.write(large, 1, large.length - 1);
+            out.print("b");
+        }
+        byte[] written = Files.readAllBytes(file);
+        assertThat(written).hasSize(large.length + 1);
+        assertThat(written[0]).isEqualTo((byte) 'a');
+        assertThat(written[1]).isEqualTo((byte) 'x');
+        assertThat(written[written.length - 2]).isEqualTo((byte) 'x');
+        assertThat(written[written.length - 1]).isEqualTo((byte) 'b');
+    }
+
+    @Test
+    public void compresses_with_the_codec() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("out.sql.gz");
+        StringBuilder expected = new StringBuilder();
+        try (SqlOutput out = SqlOutput.open(file.toString(), OutputCodec.GZIP, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            for (int i = 0; i < 10_000; i++) {
+                String statement = "INSERT INTO t VALUES (" + i + ");\n";
+                out.print(statement);
+                expected.append(statement);
+                if (i % 1000 == 0) {
+                    out.flush();
+                }
+            }
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                result.write(buffer, 0, n);
+            }
+            assertThat(new String(result.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(expected.toString());
+        }
+    }
+
+    @Test
+    public void truncates_existing_files_and_closes_once() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("out.sql");
+        Files.write(file, "old content".getBytes(StandardCharsets.US_ASCII));
+        SqlOutput out = SqlOutput.open(file.toString(), null, OutputCodec.DEFAULT_LEVEL, 1, 0);
+        out.print("new");
+        out.close();
+        out.close();
+        assertThat(content(file)).isEqualTo("new");
+    }
+
+    @Test
+    public void checkpoints_the_length_of_the_written_file() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("out.sql");
+        try (SqlOutput out = SqlOutput.open(file.toString(), null, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            assertThat(out.checkpoint()).isZero();
+            out.print("INSERT INTO t VALUES (1);\n");
+            assertThat(out.checkpoint()).isEqualTo(26).isEqualTo(Files.size(file));
+            out.print("INSERT INTO t VALUES (2);\n");
+            assertThat(out.checkpoint()).isEqualTo(52);
+        }
+    }
+
+    @Test
+    public void resumes_at_the_checkpoint_discarding_later_writes() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("out.sql");
+        long checkpoint;
+        try (SqlOutput out = SqlOutput.open(file.toString(), null, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            out.print("kept;\n");
+            checkpoint = out.checkpoint();
+            out.print("lost;\n");
+        }
+        try (SqlOutput out = SqlOutput.resume(file.toString(), checkpoint, null, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            out.print("continued;\n");
+        }
+        assertThat(content(file)).isEqualTo("kept;\ncontinued;\n");
+    }
+
+    @Test
+    public void resumes_compressed_files_with_a_new_frame() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("out.sql.gz");
+        long checkpoint;
+        try (SqlOutput out = SqlOutput.open(file.toString(), OutputCodec.GZIP, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            out.print("kept;\n");
+            checkpoint = out.checkpoint();
+            assertThat(checkpoint).isEqualTo(Files.size(file));
+            out.print("lost;\n");
+            out.flush();
+        }
+        assertThat(Files.size(file)).isGreaterThan(checkpoint);
+        try (SqlOutput out = SqlOutput.resume(file.toString(), checkpoint, OutputCodec.GZIP, OutputCodec.DEFAULT_LEVEL, 1, 0)) {
+            out.print("continued;\n");
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                result.write(buffer, 0, n);
+            }
+            assertThat(new String(result.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("kept;\ncontinued;\n");
+        }
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void reports_files_that_cannot_be_opened() {
+        SqlOutput.open(folder.getRoot().toPath().resolve("missing").resolve("out.sql").toString(), null, OutputCodec.DEFAULT_LEVEL, 1, 0);
+    }
+}
@@ -0,0 +1,103 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static java.util.stream.Collectors.joining;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlValueEncoderTest {
+
+    /**
+     * The values rendered in golden/values.sql, one per line, followed by a tuple of all of them.
+     */
+    private static final Object[] VALUES = {
+            null,
+            0L,
+            -42L,
+            Long.MAX_VALUE,
+            Long.MIN_VALUE,
+            7,
+            Integer.MIN_VALUE,
+            true,
+            false,
+            new BigDecimal("123.4500"),
+            new BigDecimal("-0.001"),
+            "",
+            "plain",
+            "O'Brien",
+            "''",
+            "back\\slash",
+            "\\'",
+            "both ' and \\ mixed",
+            "line\nbreak\ttab\r",
+            "Gr\u00fc\u00dfe, na\u00efve fa\u00e7ade",
+            "\u20ac \u2713 \u4e2d\u6587",
+            "emoji \ud83d\ude00",
+            "lone \ud800 surrogate",
+            Timestamp.valueOf("2019-07-12 10:52:11"),
+            Timestamp.valueOf("2019-07-12 10:52:11.123"),
+            Date.valueOf("2019-07-12"),
+            new byte[0],
+            new byte[]{0, 1, 0x7f, (byte) 0x80, (byte) 0xab, (byte) 0xff},
+            1.5d,
+            2.5f,
+    };
+
+    @Test
+    public void encoder_output_matches_golden_file() throws IOException {
+        SqlValueEncoder encoder = new SqlValueEncoder(4);
+        for (Object value : VALUES) {
+            encoder.appendValue(value).appendSyntax('\n');
+        }
+        encoder.appendSyntax("  (");
+        for (int i = 0; i < VALUES.length; i++) {
+            if (i > 0) {
+                encoder.appendSyntax(',');
+            }
+            encoder.appendValue(VALUES[i]);
+        }
+        encoder.appendSyntax(")\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeTo(out);
+        assertThat(out.toByteArray()).isEqualTo(golden("values.sql"));
+    }
+
+    @Test
+    public void to_value_matches_golden_file() throws IOException {
+        StringBuilder sql = new StringBuilder();
+        for (Object value : VALUES) {
+            sql.append(DatabaseUtil.toValue(value)).append('\n');
+        }
+        sql.append("  (").append(Arrays.stream(VALUES).map(DatabaseUtil::toValue).collect(joining(","))).append(")\n");
+        assertThat(sql.toString().getBytes(StandardCharsets.UTF_8)).isEqualTo(golden("values.sql"));
+    }
+
+    @Test
+    public void reset_reuses_buffer() {
+        SqlValueEncoder encoder = new SqlValueEncoder(4);
+        encoder.appendValue("a rather long value that grows the buffer");
+        byte[] buffer = encoder.buffer();
+        assertThat(encoder.reset().appendValue(12L).toString()).isEqualTo("12");
+        assertThat(encoder.buffer()).isSameAs(buffer);
+    }
+
+    private static byte[] golden(String name) throws IOException {
+        try (InputStream in = SqlValueEncoderTest.class.getResourceAsStream("/golden/" + name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            for (int n; (n = in.read(chunk)) > 0; ) {
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TablePlannerTest {
+
+    private static TableEstimate table(String name, long bytes) {
+        return new TableEstimate(name, bytes / 100, bytes);
+    }
+
+    @Test
+    public void starts_the_biggest_tables_first() {
+        List<TableEstimate> estimates = asList(table("small", 10), new TableEstimate("b", 5, 50), table("big", 100), new TableEstimate("a", 5, 50), new TableEstimate("c", 9, 50));
+        assertThat(TablePlanner.plan(estimates, 2, t -> false).getTables()).containsExactly("big", "c", "a", "b", "small");
+    }
+
+    @Test
+    public void assigns_each_table_to_the_least_loaded_worker() {
+        List<TableEstimate> estimates = asList(table("a", 100), table("b", 60), table("c", 50), table("d", 40), table("e", 30), table("f", 20));
+        TablePlanner.Plan plan = TablePlanner.plan(estimates, 2, t -> true);
+        // no table is bigger than the share of a worker
+        assertThat(plan.getRanges()).isEmpty();
+        // 100 + 40 + 20 and 60 + 50 + 30
+        assertThat(plan.getMakespan()).isEqualTo(160);
+        assertThat(plan.toString()).contains("worker 1: [a, d, f]", "worker 2: [b, c, e]");
+    }
+
+    @Test
+    public void splits_tables_bigger_than_the_share_of_a_worker() {
+        List<TableEstimate> estimates = asList(table("big", 900), table("a", 100), table("b", 100), table("c", 100));
+        TablePlanner.Plan plan = TablePlanner.plan(estimates, 3, t -> true);
+        assertThat(plan.getRanges()).containsOnlyKeys("big").containsEntry("big", 3);
+        assertThat(plan.getMakespan()).isEqualTo(400);
+        assertThat(plan.getTables()).containsExactly("big", "a", "b", "c");
+    }
+
+    @Test
+    public void does_not_split_tables_without_key_ranges() {
+        List<TableEstimate> estimates = asList(table("big", 900), table("a", 100), table("b", 100), table("c", 100));
+        TablePlanner.Plan plan = TablePlanner.plan(estimates, 3, t -> !t.equals("big"));
+        assertThat(plan.getRanges()).isEmpty();
+        assertThat(plan.getMakespan()).isEqualTo(900);
+    }
+
+    @Test
+    public void does_not_split_for_a_single_worker() {
+        TablePlanner.Plan plan = TablePlanner.plan(asList(table("big", 900), table("a", 100)), 1, t -> true);
+        assertThat(plan.getRanges()).isEmpty();
+        assertThat(plan.getMakespan()).isEqualTo(1000);
+    }
+
+    @Test
+    public void splits_tables_for_more_workers_than_tables() {
+        TablePlanner.Plan plan = TablePlanner.plan(asList(table("a", 100), table("b", 100)), 8, t -> true);
+        assertThat(plan.getRanges()).containsEntry("a", 4).containsEntry("b", 4);
+        assertThat(plan.getMakespan()).isEqualTo(25);
+        assertThat(plan.toString()).contains("on 8 workers", "worker 8");
+    }
+
+    @Test
+    public void plans_a_single_table_on_all_workers() {
+        TablePlanner.Plan plan = TablePlanner.plan(singletonList(table("a", 100)), 4, t -> true);
+        assertThat(plan.getRanges()).containsEntry("a", 4);
+        assertThat(plan.getMakespan()).isEqualTo(25);
+    }
+
+    @Test
+    public void plans_no_tables() {
+        TablePlanner.Plan plan = TablePlanner.plan(Collections.emptyList(), 4, t -> true);
+        assertThat(plan.getTables()).isEmpty();
+        assertThat(plan.getMakespan()).isZero();
+    }
+}
@@ -0,0 +1,213 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TableSchedulerTest {
+
+    private static final List<String> TABLES = asList("a", "b", "c", "d", "e", "f", "g", "h");
+
+    /**
+     * A task recording the tables it synchronized and the max number of tables running at the same time.
+     */
+    private static final class FakeTask implements Consumer<String> {
+        private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxRunning = new AtomicInteger();
+        private final long millis;
+
+        private FakeTask(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public void accept(String table) {
+            started.add(table);
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void starts_the_tables_in_the_given_order() {
+        FakeTask task = new FakeTask(0);
+        try (TableScheduler scheduler = new TableScheduler(1, false, 0)) {
+            scheduler.run(TABLES, scheduler.getWorkers(), asList("source:3306", "target:3306"), task, () -> false);
+        }
+        assertThat(task.started).isEqualTo(TABLES);
+        assertThat(task.maxRunning.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void runs_the_tables_on_all_threads() {
+        CyclicBarrier allRunning = new CyclicBarrier(4);
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        try (TableScheduler scheduler = new TableScheduler(4, false, 0)) {
+            assertThat(scheduler.getWorkers()).isEqualTo(4);
+            scheduler.run(asList("a", "b", "c", "d"), scheduler.getWorkers(), asList("source:3306"), table -> {
+                started.add(table);
+                try {
+                    allRunning.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException("tables did not run at the same time", e);
+                }
+            }, () -> false);
+        }
+        assertThat(started).containsExactlyInAnyOrder("a", "b", "c", "d");
+    }
+
+    @Test
+    public void limits_the_tables_per_host() {
+        FakeTask task = new FakeTask(20);
+        try (TableScheduler scheduler = new TableScheduler(4, false, 2)) {
+            scheduler.run(TABLES, scheduler.getWorkers(), asList("target:3306", "source:3306"), task, () -> false);
+        }
+        assertThat(task.started).containsExactlyInAnyOrderElementsOf(TABLES);
+        assertThat(task.maxRunning.get()).isBetween(1, 2);
+    }
+
+    @Test
+    public void idle_workers_help_the_running_tables() {
+        Queue<Integer> work = new ConcurrentLinkedQueue<>(asList(1, 2, 3, 4, 5));
+        List<String> stolenBy = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch workDone = new CountDownLatch(5);
+        String[] bigTableThread = new String[1];
+        try (TableScheduler scheduler = new TableScheduler(3, false, 0)) {
+            scheduler.run(asList("big", "small"), scheduler.getWorkers(), asList("source:3306"), table -> {
+                if (table.equals("big")) {
+                    bigTableThread[0] = Thread.currentThread().getName();
+                    try {
+                        // the table is done once its ranges have been read by the other workers
+                        assertThat(workDone.await(10, TimeUnit.SECONDS)).isTrue();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, () -> {
+                Integer item = work.poll();
+                if (item == null) {
+                    return false;
+                }
+                stolenBy.add(Thread.currentThread().getName());
+                workDone.countDown();
+                return true;
+            });
+        }
+        assertThat(work).isEmpty();
+        assertThat(stolenBy).hasSize(5).doesNotContain(bigTableThread[0]);
+    }
+
+    @Test
+    public void workers_beyond_the_tables_help_a_single_table() {
+        Queue<Integer> work = new ConcurrentLinkedQueue<>(asList(1, 2, 3, 4, 5, 6));
+        List<String> stolenBy = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch workDone = new CountDownLatch(6);
+        try (TableScheduler scheduler = new TableScheduler(3, false, 0)) {
+            scheduler.run(asList("big"), 3, asList("source:3306"), table -> {
+                try {
+                    assertThat(workDone.await(10, TimeUnit.SECONDS)).isTrue();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }, () -> {
+                if (work.poll() == null) {
+                    return false;
+                }
+                stolenBy.add(Thread.currentThread().getName());
+                // give the other helper a chance to steal too
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                workDone.countDown();
+                return true;
+            });
+        }
+        assertThat(work).isEmpty();
+        assertThat(new HashSet<>(stolenBy)).hasSize(2);
+    }
+
+    @Test
+    public void starts_no_more_workers_than_requested() {
+        FakeTask task = new FakeTask(20);
+        try (TableScheduler scheduler = new TableScheduler(4, false, 0)) {
+            scheduler.run(TABLES, 2, asList("source:3306"), task, () -> false);
+        }
+        assertThat(task.started).containsExactlyInAnyOrderElementsOf(TABLES);
+        assertThat(task.maxRunning.get()).isBetween(1, 2);
+    }
+
+    @Test
+    public void skips_the_remaining_tables_after_a_failure() {
+        FakeTask task = new FakeTask(0);
+        try (TableScheduler scheduler = new TableScheduler(1, false, 0)) {
+            scheduler.run(TABLES, scheduler.getWorkers(), asList("source:3306"), table -> {
+                task.accept(table);
+                if (table.equals("c")) {
+                    throw new IllegalStateException("table c failed");
+                }
+            }, () -> false);
+            throw new AssertionError("expected the failure of table c");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("table c failed");
+        }
+        assertThat(task.started).containsExactly("a", "b", "c");
+    }
+
+    @Test
+    public void reports_all_failures() {
+        CyclicBarrier bothRunning = new CyclicBarrier(2);
+        try (TableScheduler scheduler = new TableScheduler(3, false, 0)) {
+            scheduler.run(asList("a", "b", "c"), scheduler.getWorkers(), asList("source:3306"), table -> {
+                if (table.equals("c")) {
+                    return;
+                }
+                try {
+                    bothRunning.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                throw new IllegalStateException("table " + table + " failed");
+            }, () -> false);
+            throw new AssertionError("expected the failures of tables a and b");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).matches("table [ab] failed");
+            assertThat(e.getSuppressed()).hasSize(1);
+            assertThat(e.getSuppressed()[0].getMessage()).matches("table [ab] failed").isNotEqualTo(e.getMessage());
+        }
+    }
+
+    @Test
+    public void wraps_errors_of_tables() {
+        try (TableScheduler scheduler = new TableScheduler(1, false, 0)) {
+            scheduler.run(asList("a"), scheduler.getWorkers(), asList("source:3306"), table -> {
+                throw new OutOfMemoryError("table a");
+            }, () -> false);
+            throw new AssertionError("expected the error of table a");
+        } catch (RuntimeException e) {
+            assertThat(e.getCause()).isInstanceOf(OutOfMemoryError.class).hasMessage("table a");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package de.kune.mysqlsync;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TargetSessionPoolTest {
+
+    private final FakeDataSource target = new FakeDataSource((connection, sql) -> null);
+
+    private static CompletableFuture<TargetSessionPool.Session> acquireLater(TargetSessionPool pool) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.acquire();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void opens_sessions_on_demand_and_reuses_released_ones() throws SQLException {
+        try (TargetSessionPool pool = new TargetSessionPool(target.dataSource(), "target-schema", 2)) {
+            TargetSessionPool.Session first = pool.acquire();
+            first.getBuffer().append("INSERT INTO");
+            pool.release(first);
+            assertThat(pool.acquire()).isSameAs(first);
+            assertThat(first.getBuffer()).isEmpty();
+            TargetSessionPool.Session second = pool.acquire();
+            assertThat(second).isNotSameAs(first);
+            assertThat(target.getConnections()).isEqualTo(2);
+        }
+        assertThat(target.getEvents()).containsExactly("1: USE `target-schema`", "2: USE `target-schema`", "1: close", "2: close");
+    }
+
+    @Test
+    public void waits_for_a_released_session() throws Exception {
+        try (TargetSessionPool pool = new TargetSessionPool(target.dataSource(), "target", 1)) {
+            TargetSessionPool.Session session = pool.acquire();
+            CompletableFuture<TargetSessionPool.Session> waiting = acquireLater(pool);
+            try {
+                waiting.get(100, TimeUnit.MILLISECONDS);
+                throw new AssertionError("expected to wait for the session");
+            } catch (TimeoutException expected) {
+                // the pool is exhausted
+            }
+            pool.release(session);
+            assertThat(waiting.get(5, TimeUnit.SECONDS)).isSameAs(session);
+        }
+        assertThat(target.getConnections()).isEqualTo(1);
+    }
+
+    @Test
+    public void closes_discarded_sessions_and_opens_new_ones_for_waiting_tables() throws Exception {
+        try (TargetSessionPool pool = new TargetSessionPool(target.dataSource(), "target", 1)) {
+            TargetSessionPool.Session failed = pool.acquire();
+            CompletableFuture<TargetSessionPool.Session> waiting = acquireLater(pool);
+            pool.discard(failed);
+            TargetSessionPool.Session next = waiting.get(5, TimeUnit.SECONDS);
+            assertThat(next).isNotSameAs(failed);
+            assertThat(target.getEvents()).containsExactly("1: USE target", "1: close", "2: USE target");
+            pool.release(next);
+        }
+        // the discarded session is closed once only
+        assertThat(target.getEvents()).containsExactly("1: USE target", "1: close", "2: USE target", "2: close");
+    }
+
+    @Test
+    public void frees_the_slot_of_a_session_that_cannot_be_opened() throws SQLException, InterruptedException, ExecutionException, TimeoutException {
+        boolean[] refuse = {true};
+        FakeDataSource refusing = new FakeDataSource((connection, sql) -> {
+            if (refuse[0]) {
+                throw new SQLException("Unknown database 'target'");
+            }
+            return null;
+        });
+        try (TargetSessionPool pool = new TargetSessionPool(refusing.dataSource(), "target", 1)) {
+            try {
+                pool.acquire();
+                throw new AssertionError("expected the session to fail");
+            } catch (SQLException e) {
+                assertThat(e.getMessage()).isEqualTo("Unknown database 'target'");
+            }
+            refuse[0] = false;
+            assertThat(acquireLater(pool).get(5, TimeUnit.SECONDS)).isNotNull();
+        }
+        assertThat(refusing.getEvents()).containsExactly("1: USE target", "1: close", "2: USE target", "2: close");
+    }
+}
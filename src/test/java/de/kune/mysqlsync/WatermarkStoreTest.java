@@ -0,0 +1,63 @@
+package de.kune.mysqlsync;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WatermarkStoreTest {
+
+    private static final LocalDateTime MARK = LocalDateTime.of(2024, 2, 29, 13, 5, 9);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void converts_column_values() {
+        assertThat(WatermarkStore.toDateTime(null)).isNull();
+        assertThat(WatermarkStore.toDateTime(MARK)).isEqualTo(MARK);
+        assertThat(WatermarkStore.toDateTime(Timestamp.valueOf(MARK.withNano(123_456_000)))).isEqualTo(MARK.withNano(123_456_000));
+        assertThat(WatermarkStore.toDateTime(java.sql.Date.valueOf("2024-02-29"))).isEqualTo(MARK.toLocalDate().atStartOfDay());
+        assertThat(WatermarkStore.toDateTime(LocalDate.of(2024, 2, 29))).isEqualTo(MARK.toLocalDate().atStartOfDay());
+    }
+
+    @Test
+    public void parses_dates_and_date_times_as_mysql_prints_them() {
+        assertThat(WatermarkStore.toDateTime("2024-02-29")).isEqualTo(MARK.toLocalDate().atStartOfDay());
+        assertThat(WatermarkStore.toDateTime("2024-02-29 13:05:09")).isEqualTo(MARK);
+        assertThat(WatermarkStore.toDateTime(" 2024-02-29 13:05:09.5 ")).isEqualTo(MARK.withNano(500_000_000));
+        assertThat(WatermarkStore.toDateTime("2024-02-29 13:05:09.000001")).isEqualTo(MARK.withNano(1_000));
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void refuses_malformed_dates() {
+        WatermarkStore.toDateTime("2024-2-30");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refuses_malformed_date_times() {
+        WatermarkStore.toDateTime("2024-02-29T13:05:09");
+    }
+
+    @Test
+    public void keeps_marks_across_runs() {
+        Path file = folder.getRoot().toPath().resolve("watermarks.properties");
+        WatermarkStore store = WatermarkStore.open(file);
+        assertThat(store.get("target", "orders")).isNull();
+        store.set("target", "orders", MARK);
+        store.set("target", "customers", MARK.withNano(1_000));
+        assertThat(file.resolveSibling("watermarks.properties.tmp")).doesNotExist();
+
+        WatermarkStore reopened = WatermarkStore.open(file);
+        assertThat(reopened.get("target", "orders")).isEqualTo(MARK);
+        assertThat(reopened.get("target", "customers")).isEqualTo(MARK.withNano(1_000));
+        assertThat(reopened.get("other", "orders")).isNull();
+    }
+}
@@ -0,0 +1,124 @@
+package de.kune.mysqlsync.anonymizer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.lang.String.format;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FieldAnonymizerTest {
+
+    private static final int VALUES = 30_000;
+    private static final int BATCH_SIZE = 150;
+
+    @After
+    public void resetEngineAndVault() {
+        HashEngine.use(HashEngine.md5());
+        TokenVault.use(null);
+    }
+
+    /**
+     * @return names, numbers, German and other IBANs, short and empty strings and nulls
+     */
+    private static List<Object> values() {
+        Random random = new Random(42);
+        List<Object> result = new ArrayList<>(VALUES);
+        for (int i = 0; i < VALUES; i++) {
+            switch (i % 10) {
+                case 0:
+                    result.add(null);
+                    break;
+                case 1:
+                    result.add("");
+                    break;
+                case 2:
+                    result.add(random.nextLong());
+                    break;
+                case 3:
+                    result.add(format("DE%02d%018d", random.nextInt(100), Math.abs(random.nextLong() % 1000000000000000000L)));
+                    break;
+                case 4:
+                    result.add("GB" + random.nextInt(Integer.MAX_VALUE));
+                    break;
+                case 5:
+                    result.add(String.valueOf((char) ('a' + random.nextInt(26))));
+                    break;
+                default:
+                    result.add("value " + random.nextInt() + " \u00e4\u00df");
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, FieldAnonymizer> builtIns() {
+        Map<String, FieldAnonymizer> result = new LinkedHashMap<>();
+        for (String name : new String[]{"city", "first_name", "last_name", "full_name", "street", "street_number",
+                "phone", "post_code", "iban", "default_retain_length", "default", "token(email)", "generic(${c}-${c})"}) {
+            result.put(name, FieldAnonymizer.findByName(name));
+        }
+        return result;
+    }
+
+    /**
+     * Anonymizes the values column by column in batches, as the synchronizer does, and one by one, and compares the
+     * results.
+     */
+    private static void assertColumnsEqualValues(List<Object> values) {
+        for (Map.Entry<String, FieldAnonymizer> e : builtIns().entrySet()) {
+            TokenVault.use(TokenVault.inMemory());
+            List<Object> expected = new ArrayList<>(values.size());
+            for (Object value : values) {
+                expected.add(e.getValue().anonymize("c", value, Collections.singletonMap("c", value)));
+            }
+
+            TokenVault.use(TokenVault.inMemory());
+            List<Object> actual = new ArrayList<>(values.size());
+            for (int start = 0; start < values.size(); start += BATCH_SIZE) {
+                int count = Math.min(BATCH_SIZE, values.size() - start);
+                Object[] column = new Object[BATCH_SIZE];
+                @SuppressWarnings("unchecked")
+                Map<String, Object>[] rows = new Map[BATCH_SIZE];
+                for (int i = 0; i < count; i++) {
+                    column[i] = values.get(start + i);
+                    rows[i] = Collections.singletonMap("c", column[i]);
+                }
+                e.getValue().anonymizeColumn("c", column, rows, count);
+                for (int i = 0; i < count; i++) {
+                    actual.add(column[i]);
+                }
+            }
+            assertThat(actual).as(e.getKey()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void anonymizes_columns_as_values_with_md5() {
+        assertColumnsEqualValues(values());
+    }
+
+    @Test
+    public void anonymizes_columns_as_values_with_siphash() {
+        HashEngine.use(HashEngine.sipHash("salt"));
+        assertColumnsEqualValues(values());
+    }
+
+    @Test
+    public void computes_the_check_digits_of_german_ibans_as_before() {
+        for (Object value : values()) {
+            if (value instanceof String && ((String) value).startsWith("DE")) {
+                // the check digits as computed before batches were anonymized
+                long number = FieldAnonymizer.hashNumber(value) % 1000000000000000000L;
+                String checksum = format("%02d", BigInteger.valueOf(98).subtract(new BigInteger(number + "131400").mod(BigInteger.valueOf(97))).intValue());
+                assertThat(FieldAnonymizer.IBAN.anonymize("iban", value, null)).isEqualTo(format("DE%s%018d", checksum, number));
+            }
+        }
+    }
+}
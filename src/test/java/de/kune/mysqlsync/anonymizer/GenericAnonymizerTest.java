@@ -0,0 +1,88 @@
+package de.kune.mysqlsync.anonymizer;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GenericAnonymizerTest {
+
+    private static Map<String, Object> row(Object... columnsAndValues) {
+        Map<String, Object> result = new HashMap<>();
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            result.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+        return result;
+    }
+
+    private static String anonymize(String template, Map<String, Object> row) {
+        return new GenericAnonymizer(template).anonymize("t.c", null, row);
+    }
+
+    @Test
+    public void replaces_placeholders_by_column_values() {
+        Map<String, Object> row = row("id", 42L, "name", "Max", "nothing", null);
+        assertThat(anonymize("user-${id}@example.com", row)).isEqualTo("user-42@example.com");
+        assertThat(anonymize("${name}${name} ${id}", row)).isEqualTo("MaxMax 42");
+        assertThat(anonymize("${nothing}/${missing}", row)).isEqualTo("NULL/NULL");
+        assertThat(anonymize("no placeholders", row)).isEqualTo("no placeholders");
+        assertThat(anonymize("", row)).isEmpty();
+    }
+
+    @Test
+    public void does_not_expand_substituted_values() {
+        assertThat(anonymize("${a}-${b}", row("a", "${b}", "b", "x"))).isEqualTo("${b}-x");
+    }
+
+    @Test
+    public void applies_functions() {
+        Map<String, Object> row = row("email", " Max@Example.COM ", "empty", "", "nothing", null);
+        assertThat(anonymize("${lower(email)}", row)).isEqualTo(" max@example.com ");
+        assertThat(anonymize("${upper(email)}", row)).isEqualTo(" MAX@EXAMPLE.COM ");
+        assertThat(anonymize("${trim(email)}", row)).isEqualTo("Max@Example.COM");
+        assertThat(anonymize("${hash(email)}", row)).isEqualTo(FieldAnonymizer.hash(" Max@Example.COM "));
+        assertThat(anonymize("${hash(empty)}|${lower(nothing)}|${hash(nothing)}", row)).isEqualTo("|NULL|NULL");
+    }
+
+    @Test
+    public void nests_functions_from_the_inside_out() {
+        Map<String, Object> row = row("email", " Max@Example.COM ");
+        assertThat(anonymize("${lower(trim(email))}", row)).isEqualTo("max@example.com");
+        assertThat(anonymize("${UPPER( trim(email) )}", row("email", "a "))).isEqualTo("A");
+        assertThat(anonymize("${hash(trim(email))}", row)).isEqualTo(FieldAnonymizer.hash("Max@Example.COM"));
+    }
+
+    @Test
+    public void unknown_functions_are_column_names() {
+        assertThat(anonymize("${reverse(email)}", row("reverse(email)", "x", "email", "y"))).isEqualTo("x");
+        assertThat(anonymize("${lower(reverse(email))}", row("reverse(email)", "X"))).isEqualTo("x");
+    }
+
+    @Test
+    public void malformed_placeholders() {
+        Map<String, Object> row = row("a", "1", "", "empty", "hash(a", "unbalanced");
+        assertThat(anonymize("${a", row)).as("unterminated").isEqualTo("${a");
+        assertThat(anonymize("x ${a} ${a", row)).as("unterminated after a placeholder").isEqualTo("x 1 ${a");
+        assertThat(anonymize("${}", row)).as("empty").isEqualTo("empty");
+        assertThat(anonymize("${hash(a}", row)).as("unbalanced").isEqualTo("unbalanced");
+        assertThat(anonymize("${${a}}", row)).as("nested").isEqualTo("NULL}");
+        assertThat(anonymize("$a} {a} $", row)).as("no placeholder").isEqualTo("$a} {a} $");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void anonymizes_a_column_of_rows() {
+        GenericAnonymizer anonymizer = new GenericAnonymizer("${upper(name)}-${id}");
+        Map<String, Object>[] rows = new Map[]{row("id", 1, "name", "a"), row("id", 2, "name", null), row("id", 3, "name", "c")};
+        Object[] values = {"x", "y", "z"};
+        anonymizer.anonymizeColumn("t.c", values, rows, 2);
+        assertThat(values).containsExactly("A-1", "NULL-2", "z");
+    }
+
+    @Test
+    public void describes_the_template() {
+        assertThat(new GenericAnonymizer("${id}")).hasToString("generic(${id})");
+    }
+}
@@ -0,0 +1,101 @@
+package de.kune.mysqlsync.anonymizer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashEngineTest {
+
+    private static final String[] VALUES = {"", "a", "Max Mustermann", "DE89370400440532013000", "12345",
+            "M\u00fcller", "Stra\u00dfe", "\u6771\u4eac", "\ud83d\ude00 emoji", "unpaired \ud83d surrogate",
+            "a string longer than the initial buffer of the engines: " + new String(new char[300]).replace('\0', '\u00e9')};
+
+    /**
+     * {@link SipHashEngine} output for the key 00 01 .. 0f and the messages 00, 00 01, .. of the lengths 0 to 15, from
+     * the reference implementation.
+     */
+    private static final long[] SIPHASH_VECTORS = {
+            0x726fdb47dd0e0e31L, 0x74f839c593dc67fdL, 0x0d6c8009d9a94f5aL, 0x85676696d7fb7e2dL,
+            0xcf2794e0277187b7L, 0x18765564cd99a68dL, 0xcbc9466e58fee3ceL, 0xab0200f58b01d137L,
+            0x93f5f5799a932462L, 0x9e0082df0ba9e4b0L, 0x7a5dbbc594ddb9f3L, 0xf4b32f46226bada7L,
+            0x751e8fbc860ee5fbL, 0x14ea5627c0843d90L, 0xf723ca908e7af2eeL, 0xa129ca6149be45e5L};
+
+    /**
+     * The hash number of earlier versions, on a platform with UTF-8 as default charset.
+     */
+    private static long baselineHashNumber(Object input) throws NoSuchAlgorithmException {
+        return Math.abs(new BigInteger(MessageDigest.getInstance("md5").digest(input.toString().getBytes(StandardCharsets.UTF_8))).longValue());
+    }
+
+    @After
+    public void resetEngine() {
+        HashEngine.use(HashEngine.md5());
+    }
+
+    @Test
+    public void md5_produces_the_hash_numbers_of_earlier_versions() throws NoSuchAlgorithmException {
+        for (String value : VALUES) {
+            assertThat(HashingAnonymizer.hashNumber(value, HashEngine.md5())).as(value).isEqualTo(baselineHashNumber(value));
+            assertThat(FieldAnonymizer.hashNumber(value)).as(value).isEqualTo(baselineHashNumber(value));
+        }
+        assertThat(FieldAnonymizer.hashNumber(4711L)).isEqualTo(baselineHashNumber(4711L));
+    }
+
+    @Test
+    public void siphash_matches_the_reference_vectors() {
+        byte[] key = new byte[16];
+        byte[] message = new byte[SIPHASH_VECTORS.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) i;
+        }
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        SipHashEngine engine = new SipHashEngine(key);
+        for (int length = 0; length < SIPHASH_VECTORS.length; length++) {
+            assertThat(engine.hash(message, length)).as("length %d", length).isEqualTo(SIPHASH_VECTORS[length]);
+        }
+    }
+
+    @Test
+    public void siphash_of_strings_hashes_their_utf8_bytes() {
+        SipHashEngine engine = (SipHashEngine) HashEngine.sipHash("salt");
+        for (String value : VALUES) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            assertThat(engine.hash(value)).as(value).isEqualTo(engine.hash(bytes, bytes.length));
+        }
+    }
+
+    @Test
+    public void siphash_depends_on_the_salt() {
+        assertThat(HashEngine.sipHash("salt").hash("value")).isEqualTo(HashEngine.sipHash("salt").hash("value"))
+                .isNotEqualTo(HashEngine.sipHash("pepper").hash("value"));
+    }
+
+    @Test
+    public void cached_engine_returns_the_results_of_the_engine() {
+        HashEngine cached = HashEngine.cached(HashEngine.md5(), 4);
+        for (int round = 0; round < 3; round++) {
+            for (String value : VALUES) {
+                assertThat(cached.hash(value)).as(value).isEqualTo(HashEngine.md5().hash(value));
+            }
+        }
+    }
+
+    @Test
+    public void engines_by_name() {
+        assertThat(HashEngine.forName("MD5", null)).isSameAs(HashEngine.md5());
+        assertThat(HashEngine.forName("siphash", "salt").hash("value")).isEqualTo(HashEngine.sipHash("salt").hash("value"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void siphash_requires_a_salt() {
+        HashEngine.forName("siphash", null);
+    }
+}
@@ -0,0 +1,122 @@
+package de.kune.mysqlsync.anonymizer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenVaultTest {
+
+    // more values than fit into the initial table at 70% load, two entries per value
+    private static final int VALUES = 30_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void resetEngine() {
+        HashEngine.use(HashEngine.md5());
+    }
+
+    /**
+     * Hashes all values starting with "collide" to the same number and all others to their string hash code.
+     */
+    private static final HashEngine COLLIDING = value -> value.startsWith("collide") && value.indexOf('\u0000') < 0 ? 7 : value.hashCode();
+
+    @Test
+    public void tokens_are_the_hashes_of_the_values() {
+        TokenVault vault = TokenVault.inMemory();
+        assertThat(vault.token("email", "max@example.com")).isEqualTo(FieldAnonymizer.hashNumber("max@example.com"));
+        assertThat(vault.token("email", "max@example.com")).isEqualTo(FieldAnonymizer.hashNumber("max@example.com"));
+        assertThat(vault.size()).isEqualTo(1);
+        assertThat(vault.getCollisions()).isZero();
+    }
+
+    @Test
+    public void rehashes_tokens_of_other_values() {
+        HashEngine.use(COLLIDING);
+        TokenVault vault = TokenVault.inMemory();
+        assertThat(vault.token("email", "collide-a")).isEqualTo(7);
+        long b = vault.token("email", "collide-b");
+        long c = vault.token("email", "collide-c");
+        assertThat(b).isEqualTo(Math.abs(("collide-b" + '\u0000' + 1).hashCode()));
+        assertThat(c).isEqualTo(Math.abs(("collide-c" + '\u0000' + 1).hashCode()));
+        assertThat(vault.getCollisions()).isEqualTo(2);
+
+        assertThat(vault.token("email", "collide-b")).isEqualTo(b);
+        assertThat(vault.token("email", "collide-a")).isEqualTo(7);
+        assertThat(vault.getCollisions()).isEqualTo(2);
+        // domains do not share tokens
+        assertThat(vault.token("phone", "collide-b")).isEqualTo(7);
+    }
+
+    @Test
+    public void rehashes_until_a_token_is_free() {
+        // the first rehash of a value collides with the token of another value as well
+        HashEngine.use(value -> value.equals("b") || value.equals("b\u00001") ? 7 : value.equals("a") ? 7 : value.hashCode());
+        TokenVault vault = TokenVault.inMemory();
+        assertThat(vault.token("d", "a")).isEqualTo(7);
+        assertThat(vault.token("d", "b")).isEqualTo(Math.abs(("b" + '\u0000' + 2).hashCode()));
+        assertThat(vault.getCollisions()).isEqualTo(2);
+    }
+
+    @Test
+    public void grows_past_the_load_limit() {
+        TokenVault vault = TokenVault.inMemory();
+        Set<Long> tokens = new HashSet<>();
+        for (int i = 0; i < VALUES; i++) {
+            tokens.add(vault.token("domain", "value " + i));
+        }
+        assertThat(vault.size()).isEqualTo(VALUES);
+        assertThat(tokens).hasSize(VALUES);
+        for (int i = 0; i < VALUES; i++) {
+            assertThat(vault.token("domain", "value " + i)).isEqualTo(FieldAnonymizer.hashNumber("value " + i));
+        }
+        assertThat(vault.size()).isEqualTo(VALUES);
+    }
+
+    @Test
+    public void keeps_tokens_across_runs() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("tokens.vault");
+        HashEngine.use(COLLIDING);
+        long[] tokens = new long[VALUES];
+        long collided;
+        try (TokenVault vault = TokenVault.open(file)) {
+            assertThat(vault.token("email", "collide-a")).isEqualTo(7);
+            collided = vault.token("email", "collide-b");
+            for (int i = 0; i < VALUES; i++) {
+                tokens[i] = vault.token("domain", "value " + i);
+            }
+        }
+        assertThat(file.resolveSibling("tokens.vault.tmp")).doesNotExist();
+        assertThat(Files.size(file)).isGreaterThan(64 + 2L * VALUES * 32);
+
+        // stored tokens are looked up, not hashed again
+        HashEngine.use(value -> 42);
+        try (TokenVault vault = TokenVault.open(file)) {
+            assertThat(vault.size()).isEqualTo(VALUES + 2);
+            assertThat(vault.token("email", "collide-a")).isEqualTo(7);
+            assertThat(vault.token("email", "collide-b")).isEqualTo(collided);
+            for (int i = 0; i < VALUES; i++) {
+                assertThat(vault.token("domain", "value " + i)).isEqualTo(tokens[i]);
+            }
+            assertThat(vault.token("email", "new")).isEqualTo(42);
+            assertThat(vault.getCollisions()).isZero();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refuses_other_files() throws IOException {
+        Path file = folder.newFile("other").toPath();
+        Files.write(file, new byte[128]);
+        TokenVault.open(file);
+    }
+}
@@ -0,0 +1,33 @@
+null
+0
+-42
+9223372036854775807
+-9223372036854775808
+7
+-2147483648
+true
+false
+123.4500
+-0.001
+''
+'plain'
+'O''Brien'
+''''''
+'back\\slash'
+'\\'''
+'both '' and \\ mixed'
+'line
+break	tab'
+'Grüße, naïve façade'
+'€ ✓ 中文'
+'emoji 😀'
+'lone ? surrogate'
+'2019-07-12 10:52:11.0'
+'2019-07-12 10:52:11.123'
+'2019-07-12'
+X''
+X'00017F80ABFF'
+'1.5'
+'2.5'
+  (null,0,-42,9223372036854775807,-9223372036854775808,7,-2147483648,true,false,123.4500,-0.001,'','plain','O''Brien','''''','back\\slash','\\''','both '' and \\ mixed','line
+break	tab','Grüße, naïve façade','€ ✓ 中文','emoji 😀','lone ? surrogate','2019-07-12 10:52:11.0','2019-07-12 10:52:11.123','2019-07-12',X'',X'00017F80ABFF','1.5','2.5')
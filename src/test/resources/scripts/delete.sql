@@ -0,0 +1 @@
+delete from only_primary_key where customerNumber='564232';